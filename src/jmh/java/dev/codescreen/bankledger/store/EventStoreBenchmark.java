@@ -0,0 +1,131 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.util.CurrencyConverter;
+import dev.codescreen.bankledger.util.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory EventStore hot paths against accounts with a given history length.
+ *
+ * Every account is pre-filled with historyLength events in four currencies, a quarter of them debits, and has a
+ * snapshot taken 90% into its history. replayedBalance is the balance computation the controller used before the
+ * running balance (snapshot plus a converted fold over the events since it), runningBalance is what it does now.
+ * offHeap compares account logs holding event objects with logs encoding them in off-heap columns.
+ * Thread count is a JMH option, e.g. -Djmh.args="EventStoreBenchmark -t 8 -p users=64"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EventStoreBenchmark {
+
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "JPY"};
+
+    @Param({"10", "1000", "100000"})
+    public int historyLength;
+
+    @Param({"1", "64"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private EventStore eventStore;
+    private CurrencyConverter currencyConverter;
+    private String[] userIds;
+    private final BigDecimal amount = new BigDecimal("10.00");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        currencyConverter = new CurrencyConverter();
+        Map<String, BigDecimal> rates = new HashMap<>();
+        rates.put("USD", BigDecimal.ONE);
+        rates.put("EUR", new BigDecimal("0.9213"));
+        rates.put("GBP", new BigDecimal("0.7874"));
+        rates.put("JPY", new BigDecimal("151.37"));
+        currencyConverter.updateRates(rates);
+
+        eventStore = new EventStore(null, null, null, null, offHeap, 1);
+        userIds = new String[users];
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int u = 0; u < users; u++) {
+            String userId = "user" + u;
+            userIds[u] = userId;
+            long balance = 0;
+            for (int i = 0; i < historyLength; i++) {
+                String currency = CURRENCIES[i % CURRENCIES.length];
+                LocalDateTime timestamp = start.plusSeconds(i);
+                long effect = currencyConverter.convertToMoney(currency, EventStore.BASE_CURRENCY, amount).getMinorUnits();
+                if (i % 4 == 3) {
+                    AuthorizationEvent debit = new AuthorizationEvent(userId, amount, currency, ResponseCode.DECLINED, timestamp);
+                    eventStore.authorize(userId, debit, effect);
+                } else {
+                    eventStore.addEvent(userId, new LoadEvent(userId, amount, currency, timestamp), effect);
+                }
+                if (i == historyLength * 9 / 10) {
+                    eventStore.updateSnapshot(userId, BigDecimal.valueOf(eventStore.getBalance(userId), 2), timestamp);
+                }
+            }
+        }
+    }
+
+    private String randomUser() {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    @Benchmark
+    public long addEvent() {
+        String userId = randomUser();
+        return eventStore.addEvent(userId, new LoadEvent(userId, amount, "EUR"), 921);
+    }
+
+    @Benchmark
+    public List<Event> eventsSinceLastSnapshot() {
+        return eventStore.getEventsSinceLastSnapshot(randomUser());
+    }
+
+    @Benchmark
+    public Money runningBalance() {
+        return currencyConverter.convert(Money.ofMinor(eventStore.getBalance(randomUser()), EventStore.BASE_CURRENCY), "EUR");
+    }
+
+    @Benchmark
+    public BigDecimal replayedBalance() {
+        String userId = randomUser();
+        BigDecimal balance = eventStore.getLatestSnapshotBalance(userId);
+        for (Event event : eventStore.getEventsSinceLastSnapshot(userId)) {
+            if (event.getType() == DebitCredit.CREDIT) {
+                balance = balance.add(currencyConverter.convert(event.getCurrency(), EventStore.BASE_CURRENCY, event.getAmount()));
+            } else if (((AuthorizationEvent) event).getResponseCode() == ResponseCode.APPROVED) {
+                balance = balance.add(currencyConverter.convert(event.getCurrency(), EventStore.BASE_CURRENCY, event.getAmount().negate()));
+            }
+        }
+        return currencyConverter.convert(EventStore.BASE_CURRENCY, "EUR", balance);
+    }
+}
@@ -0,0 +1,101 @@
+package dev.codescreen.bankledger.store.wal;
+
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable loads served the way Tomcat would serve them, on its bounded platform-thread pool (200 threads, the
+ * server.tomcat.threads.max default) or on a virtual thread per request (spring.threads.virtual.enabled=true).
+ *
+ * One operation is a wave of inFlight concurrent requests, each blocked until the group commit covering its record
+ * has been fsynced. The platform pool can only have 200 requests waiting on a sync at a time, while virtual threads
+ * park all of them, so the gap widens as inFlight grows past the pool size.
+ * Example: -Djmh.args="ExecutionModeBenchmark -p inFlight=2000,10000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"200", "2000", "10000"})
+    public int inFlight;
+
+    @Param({"2"})
+    public long syncIntervalMs;
+
+    private Path directory;
+    private WriteAheadLog writeAheadLog;
+    private EventStore eventStore;
+    private ExecutorService executor;
+    private String[] userIds;
+    private final BigDecimal amount = new BigDecimal("10.00");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("execution-mode-benchmark");
+        writeAheadLog = new WriteAheadLog(directory, 64L << 20, syncIntervalMs, 4096);
+        eventStore = new EventStore(writeAheadLog);
+        executor = "virtual".equals(mode) ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        userIds = new String[inFlight];
+        for (int i = 0; i < inFlight; i++) {
+            userIds[i] = "user" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        writeAheadLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void wave() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(inFlight);
+        for (int i = 0; i < inFlight; i++) {
+            String userId = userIds[i];
+            executor.execute(() -> {
+                try {
+                    eventStore.addEvent(userId, new LoadEvent(userId, amount, "USD"), 1000);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
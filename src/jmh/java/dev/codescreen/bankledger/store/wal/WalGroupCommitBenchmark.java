@@ -0,0 +1,83 @@
+package dev.codescreen.bankledger.store.wal;
+
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable load throughput through EventStore as the group commit window changes.
+ *
+ * Every operation returns only once its record is fsynced, so with many request threads a wider window trades
+ * per-request latency for fewer, larger fsyncs. Example: -Djmh.args="WalGroupCommit -p syncIntervalMs=0,2,10"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class WalGroupCommitBenchmark {
+
+    @Param({"0", "1", "2", "5", "10"})
+    public long syncIntervalMs;
+
+    @Param({"1", "64", "1024"})
+    public int batchSize;
+
+    @Param({"1024"})
+    public int accounts;
+
+    private Path directory;
+    private WriteAheadLog writeAheadLog;
+    private EventStore eventStore;
+    private String[] userIds;
+    private final BigDecimal amount = new BigDecimal("10.00");
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wal-benchmark");
+        writeAheadLog = new WriteAheadLog(directory, 64L << 20, syncIntervalMs, batchSize);
+        eventStore = new EventStore(writeAheadLog);
+        userIds = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            userIds[i] = "user" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writeAheadLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long durableLoad() {
+        String userId = userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+        return eventStore.addEvent(userId, new LoadEvent(userId, amount, "USD"), 1000);
+    }
+}
@@ -0,0 +1,79 @@
+package dev.codescreen.bankledger.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single conversion through each CurrencyConverter entry point, against a rate table of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CurrencyConverterBenchmark {
+
+    @Param({"4", "160"})
+    public int currencies;
+
+    private CurrencyConverter currencyConverter;
+    private String[] codes;
+    private BigDecimal[] amounts;
+    private Money[] balances;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codes = new String[currencies];
+        Map<String, BigDecimal> rates = new HashMap<>();
+        String[] known = {"USD", "EUR", "GBP", "JPY"};
+        for (int i = 0; i < currencies; i++) {
+            codes[i] = i < known.length ? known[i] : "C" + i;
+            rates.put(codes[i], BigDecimal.valueOf(0.5 + i * 0.37));
+        }
+        currencyConverter = new CurrencyConverter();
+        currencyConverter.updateRates(rates);
+
+        amounts = new BigDecimal[1024];
+        balances = new Money[1024];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(1, 10_000_000), 2);
+            balances[i] = Money.ofMinor(amounts[i].unscaledValue().longValue(), "USD");
+        }
+    }
+
+    private String randomCode() {
+        return codes[ThreadLocalRandom.current().nextInt(codes.length)];
+    }
+
+    @Benchmark
+    public BigDecimal convertBigDecimal() {
+        return currencyConverter.convert(randomCode(), "USD", amounts[ThreadLocalRandom.current().nextInt(amounts.length)]);
+    }
+
+    @Benchmark
+    public Money convertToMoney() {
+        return currencyConverter.convertToMoney(randomCode(), "USD", amounts[ThreadLocalRandom.current().nextInt(amounts.length)]);
+    }
+
+    @Benchmark
+    public Money convertMoney() {
+        return currencyConverter.convert(balances[ThreadLocalRandom.current().nextInt(balances.length)], randomCode());
+    }
+}
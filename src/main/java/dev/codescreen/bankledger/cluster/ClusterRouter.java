@@ -0,0 +1,395 @@
+package dev.codescreen.bankledger.cluster;
+
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.store.EventCodec;
+import dev.codescreen.bankledger.store.EventRecord;
+import dev.codescreen.bankledger.store.EventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Which node serves each partition of the accounts, as far as this node knows, and the handoff of partitions
+ * when the membership changes.
+ *
+ * A node keeps serving a partition it is giving away until the new owner has taken its accounts, and keeps
+ * sending requests for a partition it is about to receive to the previous owner until the accounts arrived, so
+ * some node always serves every partition. Requests served here hold the partition's read lock while they run and
+ * a handoff takes the write lock, so a partition only pauses for its own transfer. Writes that are applied after
+ * the request let go of the lock, asynchronously or through the ingest pipeline, count as in flight between
+ * beginWrite and endWrite, and a handoff waits for them before it reads the partition. A request that reaches a
+ * node that already gave the partition away is sent on to the new owner.
+ *
+ * A handoff that fails is retried MAX_TRANSFER_ATTEMPTS times, then given up: the partition stays here and counts
+ * as failed until the membership is applied again. With a state file, the membership and the owner of every
+ * partition are written to it whenever they change and read back on startup, so a restarted node neither takes
+ * back partitions it handed over nor drops partitions it had not handed over yet, whatever its configuration says.
+ * start() then drops the recovered accounts of partitions that moved away and resumes the handoffs left.
+ */
+public class ClusterRouter implements AutoCloseable {
+
+    public static final String HOPS_HEADER = "X-Ledger-Hops";
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_TRANSFER_ATTEMPTS = 5;
+    private static final Duration TRANSFER_TIMEOUT = Duration.ofSeconds(15);
+    private static final long IN_FLIGHT_WAIT_MS = 5000;
+
+    private final String self;
+    private final int partitions;
+    private final int virtualNodes;
+    private final EventStore eventStore;
+    private final HttpClient httpClient;
+    private final AtomicReferenceArray<String> owners;
+    private final ReentrantReadWriteLock[] locks;
+    private final AtomicIntegerArray writesInFlight;
+    private final Path stateFile; // null when the membership is only kept in memory
+    private final AtomicInteger pendingTransfers = new AtomicInteger();
+    private final AtomicInteger failedTransfers = new AtomicInteger();
+    private final ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile List<String> nodes;
+    private volatile HashRing ring;
+
+    public ClusterRouter(String self, List<String> nodes, int partitions, int virtualNodes, EventStore eventStore, HttpClient httpClient) {
+        this(self, nodes, partitions, virtualNodes, eventStore, httpClient, null);
+    }
+
+    // The membership and owners in the state file, when there is one, take precedence over the nodes given
+    public ClusterRouter(String self, List<String> nodes, int partitions, int virtualNodes, EventStore eventStore, HttpClient httpClient,
+                         Path stateFile) {
+        List<String> state = readState(stateFile, partitions);
+        List<String> members = state == null ? List.copyOf(nodes) : List.of(state.get(0).split(","));
+        this.self = self;
+        this.partitions = partitions;
+        this.virtualNodes = virtualNodes;
+        this.eventStore = eventStore;
+        this.httpClient = httpClient;
+        this.stateFile = stateFile;
+        this.nodes = members;
+        this.ring = new HashRing(members, virtualNodes);
+        owners = new AtomicReferenceArray<>(partitions);
+        locks = new ReentrantReadWriteLock[partitions];
+        writesInFlight = new AtomicIntegerArray(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            owners.set(partition, state == null ? ring.ownerOf(partition) : state.get(partition + 1));
+            locks[partition] = new ReentrantReadWriteLock();
+        }
+    }
+
+    // Drops the recovered accounts of partitions another node owns, they moved away earlier, and hands over the
+    // partitions still here that the membership gives to another node
+    public void start() {
+        for (String userId : new ArrayList<>(eventStore.getUserIds())) {
+            if (!isLocal(partitionOf(userId))) {
+                eventStore.removeAccount(userId);
+            }
+        }
+        scheduleTransfers(ring);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public int partitionOf(String userId) {
+        return HashRing.partitionOf(userId, partitions);
+    }
+
+    public String ownerOf(int partition) {
+        return owners.get(partition);
+    }
+
+    public boolean isLocal(int partition) {
+        return self.equals(owners.get(partition));
+    }
+
+    // Held while a request for the partition is served here
+    public Lock readLock(int partition) {
+        return locks[partition].readLock();
+    }
+
+    // Called under the read lock of a local partition for a write that may be applied after the lock is released,
+    // endWrite must follow once it was applied or failed, from any thread
+    public void beginWrite(int partition) {
+        writesInFlight.incrementAndGet(partition);
+    }
+
+    public void endWrite(int partition) {
+        writesInFlight.decrementAndGet(partition);
+    }
+
+    public int getLocalPartitionCount() {
+        int count = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            if (isLocal(partition)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getPendingTransferCount() {
+        return pendingTransfers.get();
+    }
+
+    // Handoffs given up since the membership was last applied
+    public int getFailedTransferCount() {
+        return failedTransfers.get();
+    }
+
+    // Switches to the new membership and starts handing over the partitions this node no longer owns. Applying the
+    // same membership again retries the handoffs that failed.
+    public synchronized void changeMembership(List<String> newNodes) throws IOException {
+        HashRing newRing = new HashRing(newNodes, virtualNodes);
+        nodes = List.copyOf(newNodes);
+        ring = newRing;
+        for (int partition = 0; partition < partitions; partition++) {
+            String target = newRing.ownerOf(partition);
+            if (!isLocal(partition) && !self.equals(target)) {
+                owners.set(partition, target);
+            }
+            // a partition moving here stays with its previous owner until its accounts arrive
+        }
+        writeState();
+        failedTransfers.set(0);
+        scheduleTransfers(newRing);
+        logger.info("Cluster membership changed to {}, {} partitions to hand over", newNodes, pendingTransfers.get());
+    }
+
+    // Sends the membership to every other node of the old and new membership, returning the ones that failed
+    public List<String> propagateMembership(List<String> oldNodes, List<String> newNodes, byte[] body) {
+        Set<String> peers = new LinkedHashSet<>(oldNodes);
+        peers.addAll(newNodes);
+        peers.remove(self);
+        List<String> unreachable = new ArrayList<>();
+        for (String peer : peers) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(peer + "/cluster/nodes"))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "application/json")
+                    .header(HOPS_HEADER, "1")
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            try {
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 != 2) {
+                    unreachable.add(peer);
+                }
+            } catch (IOException e) {
+                unreachable.add(peer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unreachable.add(peer);
+            }
+        }
+        return unreachable;
+    }
+
+    // Takes over the accounts of a partition sent by its previous owner. A repeated transfer is acknowledged again.
+    public void acceptPartition(int partition, byte[] payload) throws IOException {
+        Lock lock = locks[partition].writeLock();
+        lock.lock();
+        try {
+            if (isLocal(partition)) {
+                return;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            int accounts = in.readInt();
+            for (int i = 0; i < accounts; i++) {
+                long balance = in.readLong();
+                List<Event> events = new ArrayList<>();
+                String userId = null;
+                for (int count = in.readInt(); count > 0; count--) {
+                    byte[] encoded = new byte[in.readInt()];
+                    in.readFully(encoded);
+                    EventRecord record = EventCodec.decode(ByteBuffer.wrap(encoded));
+                    userId = record.getUserId();
+                    events.add(record.getEvent());
+                }
+                eventStore.importAccount(userId, events, balance);
+            }
+            owners.set(partition, self);
+            writeState();
+        } finally {
+            lock.unlock();
+        }
+        logger.debug("Took over partition {}", partition);
+    }
+
+    // Every account of the partition with its whole history and balance, see acceptPartition
+    byte[] exportPartition(int partition) throws IOException {
+        List<String> userIds = new ArrayList<>();
+        for (String userId : eventStore.getUserIds()) {
+            if (partitionOf(userId) == partition) {
+                userIds.add(userId);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(userIds.size());
+        for (String userId : userIds) {
+            List<Event> events = eventStore.getEventsOfUser(userId);
+            if (events.isEmpty() || events.get(0).getSequence() != 0) {
+                throw new IOException("History of " + userId + " is not available to move, cold segments are required with the write-ahead log");
+            }
+            out.writeLong(eventStore.getBalance(userId));
+            out.writeInt(events.size());
+            for (Event event : events) {
+                ByteBuffer encoded = EventCodec.encode(userId, event, 0);
+                out.writeInt(encoded.remaining());
+                out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void scheduleTransfers(HashRing ring) {
+        for (int partition = 0; partition < partitions; partition++) {
+            if (isLocal(partition) && !self.equals(ring.ownerOf(partition))) {
+                pendingTransfers.incrementAndGet();
+                int moving = partition;
+                rebalancer.execute(() -> transfer(moving, 1));
+            }
+        }
+    }
+
+    // Hands the partition to its owner in the current ring, retried with a growing delay until it went through or
+    // MAX_TRANSFER_ATTEMPTS failed
+    private void transfer(int partition, int attempt) {
+        String target = ring.ownerOf(partition);
+        Lock lock = locks[partition].writeLock();
+        lock.lock();
+        try {
+            if (!isLocal(partition)) {
+                pendingTransfers.decrementAndGet();
+                return;
+            }
+            if (self.equals(target)) {
+                pendingTransfers.decrementAndGet(); // membership changed back in the meantime
+                return;
+            }
+            awaitWrites(partition);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(target + "/cluster/partitions/" + partition))
+                    .timeout(TRANSFER_TIMEOUT)
+                    .header("Content-Type", "application/octet-stream")
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(exportPartition(partition)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException(target + " answered " + response.statusCode() + ": " + response.body());
+            }
+            owners.set(partition, target);
+            writeState();
+            for (String userId : new ArrayList<>(eventStore.getUserIds())) {
+                if (partitionOf(userId) == partition) {
+                    eventStore.removeAccount(userId);
+                }
+            }
+            logger.debug("Handed partition {} over to {}", partition, target);
+            if (pendingTransfers.decrementAndGet() == 0) {
+                logger.info("Handed over every partition this node no longer owns");
+            }
+        } catch (IOException e) {
+            if (attempt < MAX_TRANSFER_ATTEMPTS) {
+                logger.warn("Failed to hand partition {} over to {}, retrying: {}", partition, target, e.getMessage());
+                rebalancer.schedule(() -> transfer(partition, attempt + 1), RETRY_DELAY_MS << (attempt - 1), TimeUnit.MILLISECONDS);
+            } else {
+                logger.error("Gave up handing partition {} over to {} after {} attempts, it stays here: {}", partition, target, attempt, e.getMessage());
+                failedTransfers.incrementAndGet();
+                pendingTransfers.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the partition's write lock, so no write starts while it waits
+    private void awaitWrites(int partition) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + IN_FLIGHT_WAIT_MS;
+        while (writesInFlight.get(partition) > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException(writesInFlight.get(partition) + " writes are still in flight");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    // Membership on the first line, then the owner of every partition, replaced atomically
+    private synchronized void writeState() throws IOException {
+        if (stateFile == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.join(",", nodes));
+        for (int partition = 0; partition < partitions; partition++) {
+            lines.add(owners.get(partition));
+        }
+        Path temporary = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Null when there is no state file yet
+    private static List<String> readState(Path stateFile, int partitions) {
+        if (stateFile == null || !Files.exists(stateFile)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+            if (lines.size() != partitions + 1) {
+                throw new IllegalStateException("Cluster state " + stateFile + " has " + (lines.size() - 1) + " partitions, not " + partitions);
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the cluster state " + stateFile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        rebalancer.shutdownNow();
+    }
+}
@@ -0,0 +1,423 @@
+package dev.codescreen.bankledger.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import dev.codescreen.bankledger.dto.Error;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UriUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Sends requests for accounts another node owns to that node, either proxying them or redirecting the client
+ * with a 307, which keeps the method and body. Requests for accounts owned here run under the read lock of the
+ * account's partition, and writes that go async stay in flight for the partition's handoff until they complete.
+ *
+ * Batches are split by owner: the items owned here are applied locally and the rest is proxied to the owners in
+ * one request each, whatever the routing mode, and the results are put back together in request order.
+ */
+@Component
+@ConditionalOnProperty(name = "ledger.cluster.enabled", havingValue = "true")
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+    private static final int MAX_HOPS = 3;
+    private static final Set<String> UNFORWARDED_HEADERS = Set.of("connection", "content-length", "date", "keep-alive", "transfer-encoding");
+
+    private final ClusterRouter router;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final boolean redirect;
+    private final int maxBatchItems;
+
+    public ClusterRoutingFilter(ClusterRouter router, HttpClient httpClient, ObjectMapper objectMapper,
+                                @Value("${ledger.cluster.routing:forward}") String routing,
+                                @Value("${ledger.batch.max-items:10000}") int maxBatchItems) {
+        this.router = router;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.redirect = "redirect".equals(routing);
+        this.maxBatchItems = maxBatchItems;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if ("GET".equals(method) && path.startsWith("/events/") && path.indexOf('/', 8) < 0) {
+            route(UriUtils.decode(path.substring(8), StandardCharsets.UTF_8), null, request, response, filterChain);
+        } else if ("GET".equals(method) && path.startsWith("/balance/") && path.indexOf('/', 9) < 0) {
+            route(UriUtils.decode(path.substring(9), StandardCharsets.UTF_8), null, request, response, filterChain);
+        } else if ("PUT".equals(method) && ("/load".equals(path) || "/authorization".equals(path))) {
+            byte[] body = request.getInputStream().readAllBytes();
+            route(userIdOf(readTree(body)), body, request, response, filterChain);
+        } else if ("PUT".equals(method) && ("/load/batch".equals(path) || "/authorization/batch".equals(path))) {
+            routeBatch(request.getInputStream().readAllBytes(), request, response, filterChain);
+        } else {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    private void route(String userId, byte[] body, HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpServletRequest local = body == null ? request : new CachedBodyRequest(request, body, request.getContentType());
+        if (userId == null) {
+            filterChain.doFilter(local, response); // rejected by validation
+            return;
+        }
+        int partition = router.partitionOf(userId);
+        Lock lock = router.readLock(partition);
+        lock.lock();
+        try {
+            if (router.isLocal(partition)) {
+                serve(partition, body != null, local, response, filterChain);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        String owner = router.ownerOf(partition);
+        String target = request.getRequestURI() + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+        if (redirect) {
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader("Location", owner + target);
+            return;
+        }
+        HttpResponse<byte[]> forwarded = forward(owner, target, request, body, request.getContentType(), response);
+        if (forwarded != null) {
+            copy(forwarded, response);
+        }
+    }
+
+    // A write the controller completes asynchronously ends when the async request completes, not when the chain returns
+    private void serve(int partition, boolean write, HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!write) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        router.beginWrite(partition);
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new WriteCompletion(router, partition));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                router.endWrite(partition);
+            }
+        }
+    }
+
+    private void routeBatch(byte[] body, HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        List<JsonNode> items = readItems(body);
+        if (items == null || items.size() > maxBatchItems) {
+            filterChain.doFilter(new CachedBodyRequest(request, body, request.getContentType()), response); // rejected as a whole
+            return;
+        }
+        Set<Integer> partitions = new TreeSet<>(); // locked in order
+        for (JsonNode item : items) {
+            String userId = userIdOf(item);
+            if (userId != null) {
+                partitions.add(router.partitionOf(userId));
+            }
+        }
+        Map<String, List<Integer>> itemsByOwner = new LinkedHashMap<>();
+        List<Integer> localItems = new ArrayList<>();
+        List<Lock> locks = new ArrayList<>();
+        JsonNode[] results = new JsonNode[items.size()];
+        try {
+            for (int partition : partitions) {
+                Lock lock = router.readLock(partition);
+                lock.lock();
+                locks.add(lock);
+            }
+            for (int i = 0; i < items.size(); i++) {
+                String userId = userIdOf(items.get(i));
+                int partition = userId == null ? -1 : router.partitionOf(userId);
+                if (partition < 0 || router.isLocal(partition)) {
+                    localItems.add(i);
+                } else {
+                    itemsByOwner.computeIfAbsent(router.ownerOf(partition), k -> new ArrayList<>()).add(i);
+                }
+            }
+            if (itemsByOwner.isEmpty()) {
+                filterChain.doFilter(new CachedBodyRequest(request, body, request.getContentType()), response);
+                return;
+            }
+            if (!localItems.isEmpty()) {
+                ContentCachingResponseWrapper captured = new ContentCachingResponseWrapper(response);
+                byte[] localBody = subBatch(items, localItems);
+                filterChain.doFilter(new CachedBodyRequest(request, localBody, MediaType.APPLICATION_JSON_VALUE), captured);
+                if (!collect(captured.getStatus(), captured.getContentAsByteArray(), localItems, results, response)) {
+                    return;
+                }
+            }
+        } finally {
+            for (Lock lock : locks) {
+                lock.unlock();
+            }
+        }
+        for (Map.Entry<String, List<Integer>> owner : itemsByOwner.entrySet()) {
+            HttpResponse<byte[]> forwarded = forward(owner.getKey(), request.getRequestURI(), request,
+                    subBatch(items, owner.getValue()), MediaType.APPLICATION_JSON_VALUE, response);
+            if (forwarded == null || !collect(forwarded.statusCode(), forwarded.body(), owner.getValue(), results, response)) {
+                return;
+            }
+        }
+        ArrayNode merged = objectMapper.createArrayNode();
+        for (JsonNode result : results) {
+            merged.add(result);
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getOutputStream().write(objectMapper.writeValueAsBytes(merged));
+    }
+
+    // Puts a part's results in place, or answers with the part's failure and returns false
+    private boolean collect(int status, byte[] body, List<Integer> indexes, JsonNode[] results, HttpServletResponse response) throws IOException {
+        JsonNode part = status == HttpStatus.OK.value() ? readTree(body) : null;
+        if (part == null || !part.isArray() || part.size() != indexes.size()) {
+            response.resetBuffer();
+            response.setStatus(status == HttpStatus.OK.value() ? HttpStatus.BAD_GATEWAY.value() : status);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(body);
+            return false;
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            results[indexes.get(i)] = part.get(i);
+        }
+        return true;
+    }
+
+    // Null when the owner could not be reached, after answering the client with a 503
+    private HttpResponse<byte[]> forward(String owner, String target, HttpServletRequest request, byte[] body, String contentType,
+                                         HttpServletResponse response) throws IOException {
+        int hops = hopsOf(request);
+        if (hops >= MAX_HOPS) {
+            unavailable(response, "Account is moving between nodes, retry later");
+            return null;
+        }
+        HttpRequest.Builder forwarded = HttpRequest.newBuilder(URI.create(owner + target))
+                .timeout(Duration.ofSeconds(30))
+                .header(ClusterRouter.HOPS_HEADER, String.valueOf(hops + 1))
+                .method(request.getMethod(), body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (contentType != null) {
+            forwarded.header("Content-Type", contentType);
+        }
+        if (request.getHeader("Accept") != null) {
+            forwarded.header("Accept", request.getHeader("Accept"));
+        }
+        try {
+            return httpClient.send(forwarded.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            unavailable(response, "Node " + owner + " is unreachable");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable(response, "Interrupted while forwarding the request");
+            return null;
+        }
+    }
+
+    // Times the request was already forwarded between nodes. The header comes from the client on the first hop, so
+    // a value that is not a count is taken as none.
+    private static int hopsOf(HttpServletRequest request) {
+        String header = request.getHeader(ClusterRouter.HOPS_HEADER);
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(header.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void copy(HttpResponse<byte[]> forwarded, HttpServletResponse response) throws IOException {
+        response.setStatus(forwarded.statusCode());
+        forwarded.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":") && !UNFORWARDED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        response.getOutputStream().write(forwarded.body());
+    }
+
+    private void unavailable(HttpServletResponse response, String message) throws IOException {
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        response.resetBuffer();
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getOutputStream().write(objectMapper.writeValueAsBytes(new Error(message, String.valueOf(status.value()))));
+    }
+
+    private byte[] subBatch(List<JsonNode> items, List<Integer> indexes) throws IOException {
+        ArrayNode batch = objectMapper.createArrayNode();
+        for (int index : indexes) {
+            batch.add(items.get(index));
+        }
+        return objectMapper.writeValueAsBytes(batch);
+    }
+
+    // Same formats the batch endpoints read, null when the body is malformed
+    private List<JsonNode> readItems(byte[] body) {
+        List<JsonNode> items = new ArrayList<>();
+        try (MappingIterator<JsonNode> values = objectMapper.readerFor(JsonNode.class).readValues(body)) {
+            while (values.hasNextValue()) {
+                items.add(values.nextValue());
+                if (items.size() > maxBatchItems) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return items;
+    }
+
+    private JsonNode readTree(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String userIdOf(JsonNode request) {
+        JsonNode userId = request == null ? null : request.get("userId");
+        return userId != null && userId.isTextual() ? userId.asText() : null;
+    }
+
+    private static final class WriteCompletion implements AsyncListener {
+        private final ClusterRouter router;
+        private final int partition;
+
+        private WriteCompletion(ClusterRouter router, int partition) {
+            this.router = router;
+            this.partition = partition;
+        }
+
+        // Also follows a timeout or an error
+        @Override
+        public void onComplete(AsyncEvent event) {
+            router.endWrite(partition);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    // A request whose body was already read, handed down the chain with the body to read again
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+        private final String contentType;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body, String contentType) {
+            super(request);
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "Content-Type".equalsIgnoreCase(name) ? contentType : super.getHeader(name);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.codescreen.bankledger.cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning partitions to nodes.
+ *
+ * Every node is placed at virtualNodes points of the ring and a partition belongs to the first node point at or
+ * after its own. Adding a node therefore only moves the partitions that now fall on the new node's points, about
+ * 1/N of them, and every other partition keeps its owner.
+ */
+public final class HashRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final TreeMap<Integer, String> points = new TreeMap<>();
+
+    public HashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public String ownerOf(int partition) {
+        Map.Entry<Integer, String> point = points.ceilingEntry(hash("partition-" + partition));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public static int partitionOf(String userId, int partitions) {
+        return Math.floorMod(hash(userId), partitions);
+    }
+
+    private static int hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
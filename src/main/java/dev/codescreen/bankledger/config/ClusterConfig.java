@@ -0,0 +1,45 @@
+package dev.codescreen.bankledger.config;
+
+import dev.codescreen.bankledger.cluster.ClusterRouter;
+import dev.codescreen.bankledger.store.EventStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+
+// Cluster mode, accounts are partitioned by userId over the nodes and requests are routed to the owning node
+@Configuration
+@ConditionalOnProperty(name = "ledger.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    @Bean
+    public HttpClient clusterHttpClient() {
+        return HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ClusterRouter clusterRouter(EventStore eventStore, HttpClient clusterHttpClient,
+                                       @Value("${ledger.cluster.self}") String self,
+                                       @Value("${ledger.cluster.nodes}") List<String> nodes,
+                                       @Value("${ledger.cluster.partitions:256}") int partitions,
+                                       @Value("${ledger.cluster.virtual-nodes:64}") int virtualNodes,
+                                       @Value("${ledger.wal.enabled:false}") boolean durable,
+                                       @Value("${ledger.cluster.directory:data/cluster}") String directory) throws IOException {
+        // the membership only has to outlive a restart when the accounts do
+        Path stateFile = null;
+        if (durable) {
+            stateFile = Files.createDirectories(Paths.get(directory)).resolve("state");
+        }
+        ClusterRouter router = new ClusterRouter(self, nodes, partitions, virtualNodes, eventStore, clusterHttpClient, stateFile);
+        router.start();
+        return router;
+    }
+}
@@ -0,0 +1,31 @@
+package dev.codescreen.bankledger.config;
+
+import dev.codescreen.bankledger.cluster.ClusterRouter;
+import dev.codescreen.bankledger.gateway.BinaryGateway;
+import dev.codescreen.bankledger.replication.ReplicationNode;
+import dev.codescreen.bankledger.service.TransactionService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+// Binary TCP gateway for loads and authorizations, next to the HTTP endpoints
+@Configuration
+@ConditionalOnProperty(name = "ledger.gateway.enabled", havingValue = "true")
+public class GatewayConfig {
+
+    @Bean(destroyMethod = "close")
+    public BinaryGateway binaryGateway(TransactionService transactionService, ObjectProvider<ClusterRouter> clusterRouter,
+                                       ObjectProvider<ReplicationNode> replicationNode,
+                                       @Value("${ledger.gateway.port:9290}") int port,
+                                       @Value("${ledger.gateway.max-frame-bytes:4096}") int maxFrameBytes,
+                                       @Value("${ledger.gateway.max-in-flight:1024}") int maxInFlight) throws IOException {
+        BinaryGateway gateway = new BinaryGateway(port, maxFrameBytes, maxInFlight, transactionService, clusterRouter.getIfAvailable(),
+                replicationNode.getIfAvailable());
+        gateway.start();
+        return gateway;
+    }
+}
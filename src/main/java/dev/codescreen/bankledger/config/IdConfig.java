@@ -0,0 +1,22 @@
+package dev.codescreen.bankledger.config;
+
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.util.IdGenerator;
+import dev.codescreen.bankledger.util.TimeOrderedIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Transaction ids, replaced by defining another IdGenerator bean
+@Configuration
+public class IdConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(IdGenerator.class)
+    public IdGenerator idGenerator(@Value("${ledger.ids.node:0}") int node, EventStore eventStore) {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(node);
+        generator.seed(eventStore.highestTransactionId()); // the store has recovered by now
+        return generator;
+    }
+}
@@ -0,0 +1,103 @@
+package dev.codescreen.bankledger.config;
+
+import dev.codescreen.bankledger.enums.ReplicationRole;
+import dev.codescreen.bankledger.replication.ReplicationNode;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.IngestPipeline;
+import dev.codescreen.bankledger.store.TimeIndex;
+import dev.codescreen.bankledger.store.cold.ColdSegmentStore;
+import dev.codescreen.bankledger.store.snapshot.SnapshotStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+public class StoreConfig {
+
+    // Durable mode, every acknowledged event is fsynced to the log before the response is sent
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "ledger.wal.enabled", havingValue = "true")
+    public WriteAheadLog writeAheadLog(@Value("${ledger.wal.directory:data/wal}") String directory,
+                                       @Value("${ledger.wal.segment-size-bytes:67108864}") long segmentSizeBytes,
+                                       @Value("${ledger.wal.sync-interval-ms:2}") long syncIntervalMillis,
+                                       @Value("${ledger.wal.batch-size:256}") int batchSize) throws IOException {
+        return new WriteAheadLog(Paths.get(directory), segmentSizeBytes, syncIntervalMillis, batchSize);
+    }
+
+    // Snapshots bound recovery to the log written since the last one, so they only make sense with the log
+    @Bean
+    @ConditionalOnProperty(name = "ledger.wal.enabled", havingValue = "true")
+    public SnapshotStore snapshotStore(@Value("${ledger.snapshot.directory:data/snapshots}") String directory,
+                                       @Value("${ledger.snapshot.retained:2}") int retained) throws IOException {
+        return new SnapshotStore(Paths.get(directory), retained);
+    }
+
+    // Events a snapshot covers move to compressed segments on disk, so the heap only holds recent history
+    @Bean
+    @ConditionalOnExpression("${ledger.wal.enabled:false} and ${ledger.cold.enabled:true}")
+    public ColdSegmentStore coldSegmentStore(@Value("${ledger.cold.directory:data/cold}") String directory) throws IOException {
+        return new ColdSegmentStore(Paths.get(directory));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ledger.index.enabled", havingValue = "true")
+    public TimeIndex timeIndex(@Value("${ledger.index.retention-minutes:1440}") long retentionMinutes) {
+        return new TimeIndex(retentionMinutes);
+    }
+
+    @Bean
+    public EventStore eventStore(ObjectProvider<WriteAheadLog> writeAheadLog,
+                                 ObjectProvider<SnapshotStore> snapshotStore,
+                                 ObjectProvider<ColdSegmentStore> coldSegmentStore,
+                                 ObjectProvider<TimeIndex> timeIndex,
+                                 @Value("${ledger.events.off-heap:false}") boolean offHeap,
+                                 @Value("${ledger.recovery.threads:0}") int recoveryThreads) throws IOException {
+        int threads = recoveryThreads > 0 ? recoveryThreads : Runtime.getRuntime().availableProcessors();
+        EventStore eventStore = new EventStore(writeAheadLog.getIfAvailable(), snapshotStore.getIfAvailable(),
+                coldSegmentStore.getIfAvailable(), timeIndex.getIfAvailable(), offHeap, threads);
+        eventStore.recover();
+        return eventStore;
+    }
+
+    // Leader-follower replication of the write-ahead log, followers serve reads and can be promoted
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${ledger.replication.role:none}' != 'none'")
+    public ReplicationNode replicationNode(EventStore eventStore, ObjectProvider<WriteAheadLog> writeAheadLog,
+                                           @Value("${ledger.replication.role}") String role,
+                                           @Value("${ledger.replication.leader:localhost:9190}") String leader,
+                                           @Value("${ledger.replication.port:9190}") int port,
+                                           @Value("${ledger.replication.directory:data/replication}") String directory) throws IOException {
+        ReplicationRole replicationRole = ReplicationRole.valueOf(role.toUpperCase());
+        if (replicationRole == ReplicationRole.LEADER && writeAheadLog.getIfAvailable() == null) {
+            throw new IllegalStateException("A replication leader needs ledger.wal.enabled=true");
+        }
+        // a follower without its own log holds nothing after a restart, so it has to stream from the start anyway
+        Path positionFile = null;
+        if (writeAheadLog.getIfAvailable() != null) {
+            positionFile = Files.createDirectories(Paths.get(directory)).resolve("position");
+        }
+        ReplicationNode replicationNode = new ReplicationNode(eventStore, writeAheadLog.getIfAvailable(), replicationRole, leader, port, positionFile);
+        replicationNode.start();
+        return replicationNode;
+    }
+
+    // Optional single writer per shard of users, writes then never contend on an account and batch their durability wait
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "ledger.ingest.enabled", havingValue = "true")
+    public IngestPipeline ingestPipeline(EventStore eventStore,
+                                         @Value("${ledger.ingest.shards:0}") int shards,
+                                         @Value("${ledger.ingest.queue-capacity:4096}") int queueCapacity,
+                                         @Value("${ledger.ingest.batch-size:256}") int batchSize) {
+        int writers = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        return new IngestPipeline(eventStore, writers, queueCapacity, batchSize);
+    }
+}
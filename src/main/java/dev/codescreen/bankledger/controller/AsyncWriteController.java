@@ -0,0 +1,36 @@
+package dev.codescreen.bankledger.controller;
+
+import dev.codescreen.bankledger.dto.AuthorizationRequest;
+import dev.codescreen.bankledger.dto.LoadRequest;
+import dev.codescreen.bankledger.service.TransactionService;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+// Loads and authorizations as async servlet requests: the request thread returns once the event is applied and the
+// response is written when the write-ahead log has made it durable, so no thread is held during the group commit
+@RestController
+@ConditionalOnProperty(name = "ledger.web.async", havingValue = "true")
+public class AsyncWriteController {
+
+    private final TransactionService transactionService;
+
+    public AsyncWriteController(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @PutMapping("/load")
+    public CompletableFuture<ResponseEntity<?>> handleLoad(@Valid @RequestBody LoadRequest request) {
+        return transactionService.loadAsync(request);
+    }
+
+    @PutMapping("/authorization")
+    public CompletableFuture<ResponseEntity<?>> handleAuthorization(@Valid @RequestBody AuthorizationRequest request) {
+        return transactionService.authorizeAsync(request);
+    }
+}
@@ -0,0 +1,71 @@
+package dev.codescreen.bankledger.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.codescreen.bankledger.cluster.ClusterRouter;
+import dev.codescreen.bankledger.dto.Error;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Membership of the cluster, and the endpoint nodes hand partitions over through.
+ */
+@RestController
+@ConditionalOnProperty(name = "ledger.cluster.enabled", havingValue = "true")
+public class ClusterController {
+
+    private final ClusterRouter router;
+    private final ObjectMapper objectMapper;
+
+    public ClusterController(ClusterRouter router, ObjectMapper objectMapper) {
+        this.router = router;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/cluster")
+    public ResponseEntity<?> getCluster() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("self", router.getSelf());
+        response.put("nodes", router.getNodes());
+        response.put("localPartitions", router.getLocalPartitionCount());
+        response.put("pendingTransfers", router.getPendingTransferCount());
+        response.put("failedTransfers", router.getFailedTransferCount());
+        return ResponseEntity.ok(response);
+    }
+
+    // Applies the new list of nodes here and, unless a peer sent it, on every other old and new node, which then
+    // hand over the partitions they no longer own in the background
+    @PutMapping("/cluster/nodes")
+    public ResponseEntity<?> changeMembership(@RequestBody List<String> nodes,
+                                              @RequestHeader(value = ClusterRouter.HOPS_HEADER, required = false) String hops) throws IOException {
+        if (nodes.isEmpty()) {
+            return ResponseEntity.badRequest().body(new Error("A cluster needs at least one node", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        List<String> oldNodes = router.getNodes();
+        router.changeMembership(nodes);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("nodes", nodes);
+        if (hops == null) {
+            response.put("unreachable", router.propagateMembership(oldNodes, nodes, objectMapper.writeValueAsBytes(nodes)));
+        }
+        return ResponseEntity.accepted().body(response);
+    }
+
+    @PutMapping(value = "/cluster/partitions/{partition}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> acceptPartition(@PathVariable int partition, @RequestBody byte[] payload) throws IOException {
+        router.acceptPartition(partition, payload);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,114 @@
+package dev.codescreen.bankledger.controller;
+
+import dev.codescreen.bankledger.metrics.LatencyHistogram;
+import dev.codescreen.bankledger.metrics.LedgerMetrics;
+import dev.codescreen.bankledger.replication.ReplicationNode;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.util.CurrencyConverter;
+import dev.codescreen.bankledger.util.IdempotencyCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Serves every metric in the Prometheus text exposition format, so the endpoint can be scraped as is.
+ */
+@RestController
+public class MetricsController {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final LedgerMetrics ledgerMetrics;
+    private final EventStore eventStore;
+    private final CurrencyConverter currencyConverter;
+    private final IdempotencyCache idempotencyCache;
+    private final ReplicationNode replicationNode; // null when replication is off
+
+    public MetricsController(LedgerMetrics ledgerMetrics, EventStore eventStore, CurrencyConverter currencyConverter,
+                             IdempotencyCache idempotencyCache, ObjectProvider<ReplicationNode> replicationNode) {
+        this.ledgerMetrics = ledgerMetrics;
+        this.eventStore = eventStore;
+        this.currencyConverter = currencyConverter;
+        this.idempotencyCache = idempotencyCache;
+        this.replicationNode = replicationNode.getIfAvailable();
+    }
+
+    @GetMapping(value = "/metrics", produces = CONTENT_TYPE)
+    public String getMetrics() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "ledger_request_duration_seconds", "summary", "Time to handle a request, by method and endpoint");
+        for (Map.Entry<String, Map<String, LatencyHistogram>> endpoint : ledgerMetrics.getRequestLatency().entrySet()) {
+            for (Map.Entry<String, LatencyHistogram> method : endpoint.getValue().entrySet()) {
+                String labels = "method=\"" + method.getKey() + "\",endpoint=\"" + escape(endpoint.getKey()) + "\"";
+                LatencyHistogram.Snapshot snapshot = method.getValue().snapshot();
+                for (double quantile : QUANTILES) {
+                    sample(out, "ledger_request_duration_seconds", labels + ",quantile=\"" + quantile + "\"",
+                            snapshot.valueAtPercentile(quantile) / NANOS_PER_SECOND);
+                }
+                sample(out, "ledger_request_duration_seconds_sum", labels, snapshot.getSum() / NANOS_PER_SECOND);
+                sample(out, "ledger_request_duration_seconds_count", labels, snapshot.getCount());
+            }
+        }
+
+        header(out, "ledger_authorizations_total", "counter", "Authorizations decided, by response code");
+        sample(out, "ledger_authorizations_total", "response_code=\"APPROVED\"", ledgerMetrics.getApprovedCount());
+        sample(out, "ledger_authorizations_total", "response_code=\"DECLINED\"", ledgerMetrics.getDeclinedCount());
+
+        header(out, "ledger_accounts", "gauge", "Accounts held by the event store");
+        sample(out, "ledger_accounts", null, eventStore.getAccountCount());
+        header(out, "ledger_events", "gauge", "Events held in memory by the event store");
+        sample(out, "ledger_events", null, eventStore.getEventCount());
+        header(out, "ledger_events_replayed_total", "counter", "Events replayed from the write-ahead log on recovery");
+        sample(out, "ledger_events_replayed_total", null, eventStore.getReplayedEventCount());
+
+        long ratesAge = currencyConverter.getRatesAgeMillis();
+        header(out, "ledger_rate_table_age_seconds", "gauge", "Time since conversion rates were last installed");
+        sample(out, "ledger_rate_table_age_seconds", null, ratesAge < 0 ? Double.NaN : ratesAge / 1000.0);
+        header(out, "ledger_rate_refresh_failures_total", "counter", "Failed conversion rate fetches");
+        sample(out, "ledger_rate_refresh_failures_total", null, currencyConverter.getRefreshFailureCount());
+
+        header(out, "ledger_idempotency_requests_total", "counter", "Requests checked against the idempotency cache, by outcome");
+        sample(out, "ledger_idempotency_requests_total", "result=\"hit\"", idempotencyCache.hitCount());
+        sample(out, "ledger_idempotency_requests_total", "result=\"miss\"", idempotencyCache.missCount());
+        header(out, "ledger_idempotency_evictions_total", "counter", "Responses evicted from the idempotency cache");
+        sample(out, "ledger_idempotency_evictions_total", null, idempotencyCache.evictionCount());
+        header(out, "ledger_idempotency_entries", "gauge", "Responses held by the idempotency cache");
+        sample(out, "ledger_idempotency_entries", null, idempotencyCache.size());
+
+        if (replicationNode != null) {
+            header(out, "ledger_replication_lag_bytes", "gauge", "Bytes of the leader's write-ahead log a follower has not applied yet");
+            sample(out, "ledger_replication_lag_bytes", null, replicationNode.getLagBytes());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,44 @@
+package dev.codescreen.bankledger.controller;
+
+import dev.codescreen.bankledger.replication.ReplicationNode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Replication status of this node, and the failover operations: promoting a follower and pointing followers at
+ * the new leader.
+ */
+@RestController
+@ConditionalOnExpression("'${ledger.replication.role:none}' != 'none'")
+public class ReplicationController {
+
+    private final ReplicationNode replicationNode;
+
+    public ReplicationController(ReplicationNode replicationNode) {
+        this.replicationNode = replicationNode;
+    }
+
+    @GetMapping("/replication")
+    public ResponseEntity<?> getReplication() {
+        return ResponseEntity.ok(replicationNode.status());
+    }
+
+    @PostMapping("/replication/promote")
+    public ResponseEntity<?> promote() throws IOException {
+        replicationNode.promote();
+        return ResponseEntity.ok(replicationNode.status());
+    }
+
+    // leader is the replication address of the new leader, as host:port
+    @PostMapping("/replication/follow")
+    public ResponseEntity<?> follow(@RequestParam String leader) throws IOException {
+        replicationNode.follow(leader);
+        return ResponseEntity.ok(replicationNode.status());
+    }
+}
@@ -0,0 +1,88 @@
+package dev.codescreen.bankledger.controller;
+
+import dev.codescreen.bankledger.dto.Error;
+import dev.codescreen.bankledger.enums.EventKind;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.TimeIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Queries across all accounts over a time range, answered from the time index. Ranges reach back at most
+ * ledger.index.retention-minutes. Only served when ledger.index.enabled is set.
+ */
+@RestController
+@ConditionalOnProperty(name = "ledger.index.enabled", havingValue = "true")
+public class ReportController {
+
+    private final TimeIndex timeIndex;
+    private final EventStore eventStore;
+    private final int maxPageSize;
+
+    public ReportController(TimeIndex timeIndex, EventStore eventStore,
+                            @Value("${ledger.events.max-page-size:10000}") int maxPageSize) {
+        this.timeIndex = timeIndex;
+        this.eventStore = eventStore;
+        this.maxPageSize = maxPageSize;
+    }
+
+    // Events in [from, to), optionally of one kind and currency, oldest first; events stamped alike are ordered by
+    // account and sequence. When the limit cut the page short, X-Next-Cursor holds the position of the page's last
+    // event, and passing it as cursor with the same query continues after it.
+    @GetMapping("/reports/events")
+    public ResponseEntity<?> getEvents(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                       @RequestParam(required = false) EventKind kind,
+                                       @RequestParam(required = false) String currency,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer limit) {
+        ResponseEntity<?> rejection = checkRange(from, to);
+        if (rejection != null) {
+            return rejection;
+        }
+        if (limit != null && limit <= 0) {
+            return ResponseEntity.badRequest().body(new Error("Limit must be positive", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        TimeIndex.Position after = cursor == null ? null : TimeIndex.Position.parse(cursor);
+        if (cursor != null && after == null) {
+            return ResponseEntity.badRequest().body(new Error("Cursor is not one returned in X-Next-Cursor", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+        List<Event> events = timeIndex.find(from, to, kind, currency, after, pageSize + 1, eventStore::getEvent);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (events.size() > pageSize) {
+            events = events.subList(0, pageSize);
+            response.header("X-Next-Cursor", TimeIndex.Position.of(events.get(pageSize - 1)).toString());
+        }
+        return response.body(events);
+    }
+
+    // Count and total amount in the base currency per currency and kind of the events in [from, to)
+    @GetMapping("/reports/totals")
+    public ResponseEntity<?> getTotals(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                       @RequestParam(required = false) String currency) {
+        ResponseEntity<?> rejection = checkRange(from, to);
+        if (rejection != null) {
+            return rejection;
+        }
+        return ResponseEntity.ok(timeIndex.totals(from, to, currency));
+    }
+
+    private static ResponseEntity<?> checkRange(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().body(new Error("from must be before to", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        return null;
+    }
+}
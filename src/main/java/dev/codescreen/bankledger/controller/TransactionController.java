@@ -1,42 +1,59 @@
 package dev.codescreen.bankledger.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.exc.InvalidFormatException;
 import dev.codescreen.bankledger.dto.*;
 import dev.codescreen.bankledger.dto.Error;
-import dev.codescreen.bankledger.enums.DebitCredit;
-import dev.codescreen.bankledger.enums.ResponseCode;
-import dev.codescreen.bankledger.event.AuthorizationEvent;
 import dev.codescreen.bankledger.event.Event;
-import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.service.TransactionService;
 import dev.codescreen.bankledger.store.EventStore;
-import dev.codescreen.bankledger.util.CurrencyConverter;
-import jakarta.validation.Valid;
+import dev.codescreen.bankledger.util.IdempotencyCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @RestController
 
 public class TransactionController {
 
     private final EventStore eventStore;
-    private final CurrencyConverter currencyConverter;
-    private final String BASE_CURRENCY = "USD";
+    private final TransactionService transactionService;
+    private final IdempotencyCache idempotencyCache;
+    private final ObjectMapper objectMapper;
+    private final int maxBatchItems;
+    private final int maxEventsPageSize;
 
     @Autowired
-    public TransactionController(EventStore eventStore, CurrencyConverter currencyConverter) {
+    public TransactionController(EventStore eventStore, TransactionService transactionService, IdempotencyCache idempotencyCache,
+                                 ObjectMapper objectMapper, @Value("${ledger.batch.max-items:10000}") int maxBatchItems,
+                                 @Value("${ledger.events.max-page-size:10000}") int maxEventsPageSize) {
         this.eventStore = eventStore;
-        this.currencyConverter = currencyConverter;
+        this.transactionService = transactionService;
+        this.idempotencyCache = idempotencyCache;
+        this.objectMapper = objectMapper;
+        this.maxBatchItems = maxBatchItems;
+        this.maxEventsPageSize = maxEventsPageSize;
     }
 
 
@@ -52,90 +69,187 @@ public class TransactionController {
         }
     }
 
-    @PutMapping("/load")
-    public ResponseEntity<?> handleLoad(@Valid @RequestBody LoadRequest request) {
-        if (request.getTransactionAmount().getDebitOrCredit() != DebitCredit.CREDIT) {
-            return ResponseEntity.badRequest().body(new Error("Load transactions must be of type CREDIT", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+    // Current balance, or the balance as of `at` when it is given
+    @GetMapping("/balance/{userId}")
+    public ResponseEntity<?> getBalance(@PathVariable String userId, @RequestParam(defaultValue = EventStore.BASE_CURRENCY) String currency,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        return at == null ? transactionService.balance(userId, currency) : transactionService.balanceAsOf(userId, at, currency);
+    }
+
+    // Event recorded under the transaction id a load or authorization answered with
+    @GetMapping("/transactions/{transactionId}")
+    public ResponseEntity<?> getTransaction(@PathVariable String transactionId) {
+        long id;
+        try {
+            id = Long.parseLong(transactionId);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body(new Error("Transaction id must be a number", String.valueOf(HttpStatus.BAD_REQUEST.value())));
         }
+        Event event = eventStore.getEventByTransactionId(id);
+        return event == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(event);
+    }
 
-        BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
-        if (amount.compareTo(BigDecimal.ZERO) < 0) {
-            HttpStatus status = HttpStatus.BAD_REQUEST;
-            return ResponseEntity.badRequest().body(new Error("Amount cannot be negative", String.valueOf(status.value())));
+    // Accepts a JSON array or NDJSON of load requests and answers with one result per item, in request order
+    @PutMapping(value = "/load/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> handleLoadBatch(InputStream body) throws IOException {
+        List<LoadRequest> requests;
+        try {
+            requests = readBatch(body, LoadRequest.class);
+        } catch (JsonProcessingException e) {
+            return malformedBatch();
+        }
+        if (requests == null) {
+            return batchTooLarge();
         }
-        // add event to store
-        eventStore.addEvent(request.getUserId(), new LoadEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency()));
-        // update latest transaction
-        updateSnapshot(request.getUserId(), request.getTransactionAmount().getCurrency());
-        // calculate updated balance
-        BigDecimal balance = calculateBalance(request.getUserId(), request.getTransactionAmount().getCurrency());
-
-        Amount balanceAmount = new Amount(balance.toString(), request.getTransactionAmount().getCurrency(), DebitCredit.CREDIT);
-        LoadResponse response = new LoadResponse(UUID.randomUUID().toString(),request.getUserId(), balanceAmount);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        return ResponseEntity.ok(transactionService.loadBatch(requests));
     }
 
-    @PutMapping("/authorization")
-    public ResponseEntity<?> handleAuthorization(@Valid @RequestBody AuthorizationRequest request) {
-        if (request.getTransactionAmount().getDebitOrCredit() != DebitCredit.DEBIT) {
-            return ResponseEntity.badRequest().body(new Error("Authorization transactions must be of type DEBIT", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+    @PutMapping(value = "/authorization/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> handleAuthorizationBatch(InputStream body) throws IOException {
+        List<AuthorizationRequest> requests;
+        try {
+            requests = readBatch(body, AuthorizationRequest.class);
+        } catch (JsonProcessingException e) {
+            return malformedBatch();
+        }
+        if (requests == null) {
+            return batchTooLarge();
         }
+        return ResponseEntity.ok(transactionService.authorizeBatch(requests));
+    }
 
-        BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
-        if (amount.compareTo(BigDecimal.ZERO) < 0) {
-            HttpStatus status = HttpStatus.BAD_REQUEST;
-            return ResponseEntity.badRequest().body(new Error("Amount cannot be negative", String.valueOf(status.value())));
+    @GetMapping("/idempotency/stats")
+    public ResponseEntity<?> getIdempotencyStats() {
+        long hits = idempotencyCache.hitCount();
+        long misses = idempotencyCache.missCount();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("hits", hits);
+        response.put("misses", misses);
+        response.put("hitRate", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        response.put("evictions", idempotencyCache.evictionCount());
+        response.put("size", idempotencyCache.size());
+        return ResponseEntity.ok(response);
+    }
+
+    // Reads a top level array or a stream of whitespace separated objects, null when there are too many items
+    private <T> List<T> readBatch(InputStream body, Class<T> type) throws IOException {
+        List<T> requests = new ArrayList<>();
+        try (MappingIterator<T> items = objectMapper.readerFor(type).readValues(body)) {
+            while (items.hasNextValue()) {
+                if (requests.size() == maxBatchItems) {
+                    return null;
+                }
+                requests.add(items.nextValue());
+            }
         }
+        return requests;
+    }
 
-        BigDecimal balance = calculateBalance(request.getUserId(), request.getTransactionAmount().getCurrency());
-        ResponseCode responseCode = balance.compareTo(amount) >= 0 ? ResponseCode.APPROVED : ResponseCode.DECLINED;
-
-        // add event to store
-        eventStore.addEvent(request.getUserId(), new AuthorizationEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency(),responseCode, DebitCredit.DEBIT));
-        // update latest transaction
-        updateSnapshot(request.getUserId(), request.getTransactionAmount().getCurrency());
-        // calculate updated balance
-        balance = calculateBalance(request.getUserId(), request.getTransactionAmount().getCurrency());
-        Amount balanceAmount = new Amount(balance.toString(), request.getTransactionAmount().getCurrency(), DebitCredit.DEBIT);
-        AuthorizationResponse response = new AuthorizationResponse(request.getUserId(), UUID.randomUUID().toString(), responseCode, balanceAmount);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    private ResponseEntity<?> malformedBatch() {
+        return ResponseEntity.badRequest().body(new Error("JSON parse error, Bad request", String.valueOf(HttpStatus.BAD_REQUEST.value())));
     }
 
+    private ResponseEntity<?> batchTooLarge() {
+        HttpStatus status = HttpStatus.PAYLOAD_TOO_LARGE;
+        return ResponseEntity.status(status).body(new Error("Batch cannot have more than " + maxBatchItems + " items", String.valueOf(status.value())));
+    }
+
+    // Pages through a user's events by sequence number. The cursor is the first sequence to return, and when a page
+    // stops at the limit the next cursor is sent in the X-Next-Cursor header. from/to keep events with a timestamp
+    // in [from, to).
     @GetMapping("/events/{userId}")
-    public ResponseEntity<?> getEventsForUser(@PathVariable String userId) {
-        List<Event> events = eventStore.getEventsOfUser(userId);
-        if (events.isEmpty()) {
-            return ResponseEntity.notFound().build();
+    public ResponseEntity<?> getEventsForUser(@PathVariable String userId,
+                                              @RequestParam(defaultValue = "0") long cursor,
+                                              @RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        ResponseEntity<?> rejection = checkEventsQuery(userId, cursor, limit);
+        if (rejection != null) {
+            return rejection;
         }
-        return ResponseEntity.ok(events);
+        List<Event> page = new ArrayList<>();
+        long nextCursor = page(userId, cursor, pageSize(limit), from, to, page::add);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor >= 0) {
+            response.header("X-Next-Cursor", String.valueOf(nextCursor));
+        }
+        return response.body(page);
     }
 
-    private BigDecimal calculateBalance(String userId, String responseCurrency) {
-        BigDecimal lastSnapshotBalance = eventStore.getLatestSnapshotBalance(userId); // get last snapshot
-        BigDecimal balanceSinceSnapshot = eventStore.getEventsSinceLastSnapshot(userId).stream()
-                .map(event -> {
-                    BigDecimal eventEffect = BigDecimal.ZERO;
-                    if (event instanceof LoadEvent) {
-                        eventEffect = currencyConverter.convert(event.getCurrency(), BASE_CURRENCY, event.getAmount());
-                    } else if (event instanceof AuthorizationEvent) {
-                        // Only consider the amount for approved Authorization events
-                        AuthorizationEvent authEvent = (AuthorizationEvent) event;
-                        if (authEvent.getResponseCode() == ResponseCode.APPROVED) {
-                            eventEffect = currencyConverter.convert(event.getCurrency(), BASE_CURRENCY, event.getAmount().negate());
-                        }
-                    }
-                    return eventEffect;
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add); // get balance since last snapshot
-        BigDecimal currentBalanceInBase = lastSnapshotBalance.add(balanceSinceSnapshot);
-        return currencyConverter.convert(BASE_CURRENCY, responseCurrency, currentBalanceInBase);
+    // Same query, streamed as NDJSON while the store is read so memory stays flat for any history length. Without a
+    // limit the stream runs to the end of the log; when a limit cuts it short, a last {"nextCursor": n} line carries
+    // the cursor to continue from.
+    @GetMapping(value = "/events/{userId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEventsForUser(@PathVariable String userId,
+                                                                     @RequestParam(defaultValue = "0") long cursor,
+                                                                     @RequestParam(required = false) Integer limit,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        ResponseEntity<?> rejection = checkEventsQuery(userId, cursor, limit);
+        if (rejection != null) {
+            return ResponseEntity.status(rejection.getStatusCode()).build();
+        }
+        long count = limit == null ? Long.MAX_VALUE : limit;
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            long nextCursor = page(userId, cursor, count, from, to, event -> {
+                try {
+                    objectMapper.writeValue(generator, event);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (nextCursor >= 0) {
+                generator.writeStartObject();
+                generator.writeNumberField("nextCursor", nextCursor);
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
-    private void updateSnapshot(String userId, String currency) {
-        BigDecimal currentBalance = currencyConverter.convert(currency, BASE_CURRENCY, calculateBalance(userId, currency));
-        LocalDateTime now = LocalDateTime.now(); // Current date and time
-        eventStore.updateSnapshot(userId, currentBalance, now);
+    private ResponseEntity<?> checkEventsQuery(String userId, long cursor, Integer limit) {
+        if (!eventStore.hasAccount(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (cursor < 0 || (limit != null && limit <= 0)) {
+            return ResponseEntity.badRequest().body(new Error("Cursor cannot be negative and limit must be positive", String.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        return null;
     }
 
+    private int pageSize(Integer limit) {
+        return limit == null ? maxEventsPageSize : Math.min(limit, maxEventsPageSize);
+    }
 
+    // Visits matching events from the cursor until count of them matched, reading the log one window of at most the
+    // page size at a time so only the events needed are read. An account's timestamps never decrease, so the first
+    // event at or after `to` ends the query. Returns the next cursor, or -1 when nothing is left to match.
+    private long page(String userId, long cursor, long count, LocalDateTime from, LocalDateTime to, Consumer<Event> consumer) {
+        int windowSize = (int) Math.min(count, maxEventsPageSize);
+        long matched = 0;
+        long position = cursor;
+        while (true) {
+            List<Event> window = eventStore.getEvents(userId, position, position + windowSize);
+            if (window.isEmpty()) {
+                return -1;
+            }
+            for (Event event : window) {
+                if (to != null && !event.getTimestamp().isBefore(to)) {
+                    return -1;
+                }
+                if (matched == count) {
+                    return event.getSequence();
+                }
+                if (from == null || !event.getTimestamp().isBefore(from)) {
+                    consumer.accept(event);
+                    matched++;
+                }
+            }
+            position = window.get(window.size() - 1).getSequence() + 1;
+        }
+    }
 }
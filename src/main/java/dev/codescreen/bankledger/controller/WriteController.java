@@ -0,0 +1,33 @@
+package dev.codescreen.bankledger.controller;
+
+import dev.codescreen.bankledger.dto.AuthorizationRequest;
+import dev.codescreen.bankledger.dto.LoadRequest;
+import dev.codescreen.bankledger.service.TransactionService;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+// Loads and authorizations on the request thread, which waits for the event to be durable
+@RestController
+@ConditionalOnProperty(name = "ledger.web.async", havingValue = "false", matchIfMissing = true)
+public class WriteController {
+
+    private final TransactionService transactionService;
+
+    public WriteController(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @PutMapping("/load")
+    public ResponseEntity<?> handleLoad(@Valid @RequestBody LoadRequest request) {
+        return transactionService.load(request);
+    }
+
+    @PutMapping("/authorization")
+    public ResponseEntity<?> handleAuthorization(@Valid @RequestBody AuthorizationRequest request) {
+        return transactionService.authorize(request);
+    }
+}
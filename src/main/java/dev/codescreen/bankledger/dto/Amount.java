@@ -5,12 +5,15 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 
 public class Amount {
 
     @Pattern(regexp = "^[0-9]*\\.?[0-9]+$", message = "Amount must be a positive number or zero")
+    @Size(max = 64, message = "Amount cannot be longer than 64 characters")
     private String amount;
     @NotNull(message = "Currency must be specified")
+    @Size(max = 16, message = "Currency cannot be longer than 16 characters")
     private String currency;
     @NotNull(message = "Debit or Credit type is required")
     private DebitCredit debitOrCredit;
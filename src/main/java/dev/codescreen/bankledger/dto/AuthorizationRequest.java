@@ -3,10 +3,12 @@ package dev.codescreen.bankledger.dto;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
 public class AuthorizationRequest {
 
     @NotBlank(message = "User ID cannot be empty")
+    @Size(max = 256, message = "User ID cannot be longer than 256 characters")
     private String userId;
     @NotBlank(message = "Message ID cannot be empty")
     private String messageId;
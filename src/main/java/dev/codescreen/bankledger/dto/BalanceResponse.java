@@ -0,0 +1,39 @@
+package dev.codescreen.bankledger.dto;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"userId", "balance"}) // To maintain ResponseBody Order
+public class BalanceResponse {
+
+    private String userId;
+    private Amount balance;
+
+    // No-argument constructor for frameworks
+    public BalanceResponse() {
+    }
+
+    // All-argument constructor for manual instantiation
+    public BalanceResponse(String userId, Amount balance) {
+        this.userId = userId;
+        this.balance = balance;
+    }
+
+    // Getter for userId
+    public String getUserId() {
+        return userId;
+    }
+
+    // Setter for userId
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    // Getter for balance
+    public Amount getBalance() {
+        return balance;
+    }
+
+    // Setter for balance
+    public void setBalance(Amount balance) {
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,37 @@
+package dev.codescreen.bankledger.dto;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+@JsonPropertyOrder({"status", "body"}) // To maintain ResponseBody Order
+public class BatchItemResponse {
+
+    private int status;
+    private Object body;
+
+    // No-argument constructor for frameworks
+    public BatchItemResponse() {
+    }
+
+    // All-argument constructor for manual instantiation
+    public BatchItemResponse(int status, Object body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    // HTTP status the item would have had as a single request
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    // Same body the single request endpoint returns, either a response or an Error
+    public Object getBody() {
+        return body;
+    }
+
+    public void setBody(Object body) {
+        this.body = body;
+    }
+}
@@ -0,0 +1,59 @@
+package dev.codescreen.bankledger.dto;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import dev.codescreen.bankledger.enums.EventKind;
+
+import java.math.BigDecimal;
+
+@JsonPropertyOrder({"currency", "kind", "count", "total"}) // To maintain ResponseBody Order
+public class EventTotals {
+
+    private String currency;
+    private EventKind kind;
+    private long count;
+    private BigDecimal total;
+
+    // No-argument constructor for frameworks
+    public EventTotals() {
+    }
+
+    // All-argument constructor for manual instantiation
+    public EventTotals(String currency, EventKind kind, long count, BigDecimal total) {
+        this.currency = currency;
+        this.kind = kind;
+        this.count = count;
+        this.total = total;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public EventKind getKind() {
+        return kind;
+    }
+
+    public void setKind(EventKind kind) {
+        this.kind = kind;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    // Sum of the event amounts converted to the base currency (USD) when they were recorded
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,9 @@
+package dev.codescreen.bankledger.enums;
+
+// What an event did to the account, as grouped by the time index
+public enum EventKind {
+
+    LOAD,
+    APPROVED,
+    DECLINED
+}
@@ -0,0 +1,8 @@
+package dev.codescreen.bankledger.enums;
+
+// A leader takes writes and ships its log, a follower applies the leader's log and only serves reads
+public enum ReplicationRole {
+
+    LEADER,
+    FOLLOWER
+}
@@ -4,6 +4,7 @@ import dev.codescreen.bankledger.enums.ResponseCode;
 
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 public class AuthorizationEvent extends Event{
 
@@ -14,6 +15,11 @@ public class AuthorizationEvent extends Event{
         this.responseCode = responseCode;
     }
 
+    public AuthorizationEvent(String userId, BigDecimal amount, String currency, ResponseCode responseCode, LocalDateTime timestamp) {
+        super(userId, amount, currency, DebitCredit.DEBIT, timestamp);
+        this.responseCode = responseCode;
+    }
+
 //    @Override
 //    public BigDecimal getEffectOnBalance(String baseCurrency) {
 //        // If the authorization is approved, it has a negative effect on the balance; otherwise, it has no effect.
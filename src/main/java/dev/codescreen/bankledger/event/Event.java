@@ -1,4 +1,5 @@
 package dev.codescreen.bankledger.event;
+import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import dev.codescreen.bankledger.enums.DebitCredit;
 
@@ -6,18 +7,29 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 public abstract class Event {
 
+    public static final long NO_RATE_VERSION = -1; // recorded before events carried their base amount
+
     private final String userId;
     private final BigDecimal amount;
     private final String currency;
     private final LocalDateTime timestamp;
     private final DebitCredit type;
+    private long sequence; // position in the user's event log, assigned when the event is stored
+    private long transactionId; // 0 for events recorded before events carried one
+    private long baseAmount; // amount in minor units of the base currency, converted once when the event was created
+    private long rateVersion = NO_RATE_VERSION; // version of the rates baseAmount was converted with
 
     public Event(String userId, BigDecimal amount, String currency, DebitCredit type) {
+        this(userId, amount, currency, type, LocalDateTime.now()); // Assume the event's timestamp is set at the time of its creation
+    }
+
+    // Used when rebuilding an event that was recorded earlier, e.g. when replaying the write-ahead log
+    protected Event(String userId, BigDecimal amount, String currency, DebitCredit type, LocalDateTime timestamp) {
         this.userId = userId;
         this.amount = amount;
         this.currency = currency;
         this.type = type;
-        this.timestamp = LocalDateTime.now(); // Assume the event's timestamp is set at the time of its creation
+        this.timestamp = timestamp;
     }
 
     // Abstract method to get the effect of the event on balance
@@ -45,4 +57,39 @@ public abstract class Event {
         return type;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING) // beyond the integers a JavaScript number holds exactly
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(long transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public long getBaseAmount() {
+        return baseAmount;
+    }
+
+    public long getRateVersion() {
+        return rateVersion;
+    }
+
+    public void setBaseAmount(long baseAmount, long rateVersion) {
+        this.baseAmount = baseAmount;
+        this.rateVersion = rateVersion;
+    }
+
+    @JsonIgnore
+    public boolean hasBaseAmount() {
+        return rateVersion != NO_RATE_VERSION;
+    }
+
 }
@@ -2,6 +2,7 @@ package dev.codescreen.bankledger.event;
 import dev.codescreen.bankledger.enums.DebitCredit;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 public class LoadEvent extends Event{
 
@@ -9,6 +10,10 @@ public class LoadEvent extends Event{
         super(userId, amount, currency, DebitCredit.CREDIT);
     }
 
+    public LoadEvent(String userId, BigDecimal amount, String currency, LocalDateTime timestamp) {
+        super(userId, amount, currency, DebitCredit.CREDIT, timestamp);
+    }
+
 //    @Override
 //    public BigDecimal getEffectOnBalance() {
 //        // LoadEvent has a positive effect on the balance
@@ -0,0 +1,382 @@
+package dev.codescreen.bankledger.gateway;
+
+import dev.codescreen.bankledger.cluster.ClusterRouter;
+import dev.codescreen.bankledger.dto.AuthorizationRequest;
+import dev.codescreen.bankledger.dto.Error;
+import dev.codescreen.bankledger.dto.LoadRequest;
+import dev.codescreen.bankledger.replication.ReplicationNode;
+import dev.codescreen.bankledger.service.TransactionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * TCP listener for loads and authorizations in the binary framing of GatewayCodec, for clients that would spend more
+ * on JSON than on the ledger itself.
+ *
+ * One selector thread serves every connection. It decodes each frame, checks it with the same Bean Validation
+ * constraints as the HTTP endpoints and hands it to the same TransactionService methods, so idempotency, the
+ * business checks and the store are shared with HTTP. Clients may pipeline up to maxInFlight requests per connection;
+ * responses carry the request's correlation id and are written as their events become durable, which may be out of
+ * order across accounts. A connection past the limit is not read until responses drain. Followers turn writes away
+ * and, in cluster mode, requests for accounts of another node are answered with 421 and the owner instead of being
+ * forwarded. The selector thread never waits for a partition: while one is being handed to another node, its
+ * requests are answered with 503 to retry. With the ingest pipeline, a full shard queue blocks the selector thread
+ * like it blocks a request thread.
+ *
+ * Every connection reads and writes through two direct buffers of maxFrameBytes that go back to a pool when it
+ * closes, so steady state traffic does not allocate buffers.
+ */
+public class BinaryGateway implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryGateway.class);
+    private static final int POOLED_BUFFERS = 64;
+    private static final HttpStatusCode MISDIRECTED_REQUEST = HttpStatusCode.valueOf(421);
+
+    private final TransactionService transactionService;
+    private final ClusterRouter router; // null outside cluster mode
+    private final ReplicationNode replicationNode; // null without replication
+    private final int bufferBytes;
+    private final int maxFrameBytes;
+    private final int maxInFlight;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private volatile Thread eventLoop; // set once by start()
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>(); // only used by the event loop
+    private final Set<Connection> connections = new HashSet<>(); // only used by the event loop
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+    private volatile int connectionCount;
+    private volatile boolean closed;
+
+    public BinaryGateway(int port, int maxFrameBytes, int maxInFlight, TransactionService transactionService,
+                         ClusterRouter router, ReplicationNode replicationNode) throws IOException {
+        this.transactionService = transactionService;
+        this.router = router;
+        this.replicationNode = replicationNode;
+        this.maxFrameBytes = maxFrameBytes;
+        this.bufferBytes = GatewayCodec.LENGTH_BYTES + maxFrameBytes;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    // Starts serving the connections accepted on the bound port
+    public void start() {
+        Thread thread = new Thread(this::run, "gateway-event-loop");
+        thread.setDaemon(true);
+        eventLoop = thread;
+        thread.start();
+        logger.info("Binary gateway listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Closing gateway connection: {}", e.getMessage());
+                        close(connection);
+                    }
+                }
+                for (Connection connection; (connection = completed.poll()) != null; ) {
+                    connection.scheduled.set(false);
+                    if (connection.open) {
+                        try {
+                            write(connection);
+                        } catch (IOException e) {
+                            close(connection);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Binary gateway stopped. Error: {}", e.getMessage());
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                close(connection);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, acquireBuffer(), acquireBuffer());
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+        connectionCount = connections.size();
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            close(connection);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= GatewayCodec.LENGTH_BYTES) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > maxFrameBytes) {
+                throw new IOException("Frame of " + length + " bytes exceeds the limit of " + maxFrameBytes);
+            }
+            if (in.remaining() < GatewayCodec.LENGTH_BYTES + length) {
+                break;
+            }
+            int start = in.position() + GatewayCodec.LENGTH_BYTES;
+            ByteBuffer frame = in.duplicate();
+            frame.position(start).limit(start + length);
+            in.position(start + length);
+            dispatch(connection, GatewayCodec.decode(frame));
+        }
+        in.compact();
+        updateInterest(connection);
+    }
+
+    // Answers the request at once when it is rejected, otherwise once the service's future completes
+    private void dispatch(Connection connection, GatewayCodec.Request frame) {
+        connection.inFlight++;
+        if (frame.request == null) {
+            respond(connection, frame.correlationId, error(HttpStatus.BAD_REQUEST, "Malformed frame"));
+            return;
+        }
+        ResponseEntity<?> rejection = transactionService.validate(frame.request);
+        if (rejection != null) {
+            respond(connection, frame.correlationId, rejection);
+            return;
+        }
+        if (replicationNode != null && replicationNode.isFollower()) {
+            respond(connection, frame.correlationId, error(HttpStatus.SERVICE_UNAVAILABLE, "This node is a read-only follower, send writes to the leader"));
+            return;
+        }
+        String userId = frame.type == GatewayCodec.LOAD ? ((LoadRequest) frame.request).getUserId() : ((AuthorizationRequest) frame.request).getUserId();
+        Lock lock = null;
+        int partition = -1; // in flight for the partition's handoff until the response completes
+        try {
+            if (router != null) {
+                partition = router.partitionOf(userId);
+                Lock readLock = router.readLock(partition);
+                if (!readLock.tryLock()) {
+                    respond(connection, frame.correlationId, error(HttpStatus.SERVICE_UNAVAILABLE, "Account is moving between nodes, retry later"));
+                    return;
+                }
+                lock = readLock;
+                if (!router.isLocal(partition)) {
+                    respond(connection, frame.correlationId, error(MISDIRECTED_REQUEST, "User " + userId + " is served by " + router.ownerOf(partition)));
+                    return;
+                }
+                router.beginWrite(partition);
+            }
+            int written = partition;
+            CompletableFuture<ResponseEntity<?>> response;
+            try {
+                response = frame.type == GatewayCodec.LOAD
+                        ? transactionService.loadAsync((LoadRequest) frame.request)
+                        : transactionService.authorizeAsync((AuthorizationRequest) frame.request);
+            } catch (RuntimeException e) {
+                if (written >= 0) {
+                    router.endWrite(written);
+                }
+                throw e;
+            }
+            response.whenComplete((result, failure) -> {
+                if (written >= 0) {
+                    router.endWrite(written);
+                }
+                if (failure != null) {
+                    logger.error("Failed to apply gateway request {}", frame.correlationId, failure);
+                }
+                respond(connection, frame.correlationId, failure == null ? result : unexpectedError());
+            });
+        } catch (RuntimeException e) {
+            logger.error("Failed to apply gateway request {}", frame.correlationId, e);
+            respond(connection, frame.correlationId, unexpectedError());
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Called from any thread, the event loop writes the response
+    private void respond(Connection connection, long correlationId, ResponseEntity<?> response) {
+        connection.responses.add(new Response(correlationId, response));
+        if (connection.scheduled.compareAndSet(false, true)) {
+            completed.add(connection);
+            if (Thread.currentThread() != eventLoop) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        do {
+            for (Response response; (response = connection.responses.peek()) != null; ) {
+                HttpStatusCode status = response.response.getStatusCode();
+                if (!GatewayCodec.encode(out, response.correlationId, status.value(), response.response.getBody())) {
+                    if (out.position() > 0) {
+                        break; // full, the rest follows once the socket took what is buffered
+                    }
+                    GatewayCodec.encode(out, response.correlationId, HttpStatus.INTERNAL_SERVER_ERROR.value(), null);
+                }
+                connection.responses.poll();
+                connection.inFlight--;
+            }
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+        } while (out.position() == 0 && !connection.responses.isEmpty());
+        updateInterest(connection);
+    }
+
+    // Reads while the connection is under its in-flight limit, writes while responses are pending
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (connection.inFlight < maxInFlight) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (connection.out.position() > 0 || !connection.responses.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void close(Connection connection) {
+        if (!connection.open) {
+            return;
+        }
+        connection.open = false;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close gateway connection: {}", e.getMessage());
+        }
+        releaseBuffer(connection.in);
+        releaseBuffer(connection.out);
+        connections.remove(connection);
+        connectionCount = connections.size();
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < POOLED_BUFFERS) {
+            buffer.clear();
+            bufferPool.push(buffer);
+        }
+    }
+
+    private static ResponseEntity<?> error(HttpStatusCode status, String message) {
+        return ResponseEntity.status(status).body(new Error(message, String.valueOf(status.value())));
+    }
+
+    private static ResponseEntity<?> unexpectedError() {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("An unexpected error occurred", "INTERNAL_SERVER_ERROR"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        Thread thread = eventLoop;
+        try {
+            if (thread != null) {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+        private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private SelectionKey key;
+        private int inFlight; // requests read whose response was not written yet
+        private volatile boolean open = true;
+
+        private Connection(SocketChannel channel, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    private static final class Response {
+        private final long correlationId;
+        private final ResponseEntity<?> response;
+
+        private Response(long correlationId, ResponseEntity<?> response) {
+            this.correlationId = correlationId;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package dev.codescreen.bankledger.gateway;
+
+import dev.codescreen.bankledger.dto.Amount;
+import dev.codescreen.bankledger.dto.AuthorizationRequest;
+import dev.codescreen.bankledger.dto.AuthorizationResponse;
+import dev.codescreen.bankledger.dto.Error;
+import dev.codescreen.bankledger.dto.LoadRequest;
+import dev.codescreen.bankledger.dto.LoadResponse;
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary framing of the gateway, big endian. Every frame starts with the length of the rest of the frame (4).
+ *
+ * Request: type (1, LOAD or AUTHORIZATION) | correlation id (8) | userId | messageId | amount | currency |
+ * debitOrCredit (1, 0 when missing, else DebitCredit ordinal + 1).
+ * Response: correlation id (8) | HTTP status the request would have had (2) | then on success responseCode (1, 0
+ * for a load, else ResponseCode ordinal + 1) | balance amount | balance currency | debitOrCredit (1), and otherwise
+ * the error message.
+ *
+ * Strings are a length (2) and UTF-8 bytes, a length of -1 is a missing value. The amount stays a decimal string,
+ * so it is validated exactly like the amount of a JSON request.
+ */
+final class GatewayCodec {
+
+    static final byte LOAD = 1;
+    static final byte AUTHORIZATION = 2;
+    static final int LENGTH_BYTES = 4;
+    private static final DebitCredit[] DEBIT_CREDIT_VALUES = DebitCredit.values();
+
+    private GatewayCodec() {
+    }
+
+    // A decoded request frame, request is null when the frame was malformed
+    static final class Request {
+        final byte type;
+        final long correlationId;
+        final Object request;
+
+        private Request(byte type, long correlationId, Object request) {
+            this.type = type;
+            this.correlationId = correlationId;
+            this.request = request;
+        }
+    }
+
+    // Decodes the frame between the buffer's position and limit, the length prefix already consumed
+    static Request decode(ByteBuffer frame) {
+        if (frame.remaining() < 9) {
+            return new Request((byte) 0, 0, null);
+        }
+        byte type = frame.get();
+        long correlationId = frame.getLong();
+        try {
+            String userId = readString(frame);
+            String messageId = readString(frame);
+            String amount = readString(frame);
+            String currency = readString(frame);
+            byte debitOrCredit = frame.get();
+            if (frame.hasRemaining() || debitOrCredit < 0 || debitOrCredit > DEBIT_CREDIT_VALUES.length) {
+                return new Request(type, correlationId, null);
+            }
+            Amount transactionAmount = amount == null && currency == null && debitOrCredit == 0
+                    ? null
+                    : new Amount(amount, currency, debitOrCredit == 0 ? null : DEBIT_CREDIT_VALUES[debitOrCredit - 1]);
+            if (type == LOAD) {
+                return new Request(type, correlationId, new LoadRequest(userId, messageId, transactionAmount));
+            }
+            if (type == AUTHORIZATION) {
+                return new Request(type, correlationId, new AuthorizationRequest(userId, messageId, transactionAmount));
+            }
+            return new Request(type, correlationId, null);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return new Request(type, correlationId, null);
+        }
+    }
+
+    // Writes the whole response frame, or nothing and returns false when the buffer does not have the room
+    static boolean encode(ByteBuffer out, long correlationId, int status, Object body) {
+        int start = out.position();
+        try {
+            out.position(start + LENGTH_BYTES);
+            out.putLong(correlationId).putShort((short) status);
+            if (body instanceof LoadResponse) {
+                out.put((byte) 0);
+                writeBalance(out, ((LoadResponse) body).getBalance());
+            } else if (body instanceof AuthorizationResponse) {
+                ResponseCode responseCode = ((AuthorizationResponse) body).getResponseCode();
+                out.put(responseCode == null ? 0 : (byte) (responseCode.ordinal() + 1));
+                writeBalance(out, ((AuthorizationResponse) body).getBalance());
+            } else {
+                writeString(out, body instanceof Error ? ((Error) body).getMessage() : null);
+            }
+            out.putInt(start, out.position() - start - LENGTH_BYTES);
+            return true;
+        } catch (BufferOverflowException | IllegalArgumentException e) {
+            out.position(start);
+            return false;
+        }
+    }
+
+    private static void writeBalance(ByteBuffer out, Amount balance) {
+        writeString(out, balance.getAmount());
+        writeString(out, balance.getCurrency());
+        out.put(balance.getDebitOrCredit() == null ? 0 : (byte) (balance.getDebitOrCredit().ordinal() + 1));
+    }
+
+    private static String readString(ByteBuffer in) {
+        short length = in.getShort();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("String runs past the frame");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long for a frame");
+        }
+        out.putShort((short) bytes.length).put(bytes);
+    }
+}
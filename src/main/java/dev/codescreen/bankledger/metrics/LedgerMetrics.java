@@ -0,0 +1,54 @@
+package dev.codescreen.bankledger.metrics;
+
+import dev.codescreen.bankledger.enums.ResponseCode;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms recorded on the request path.
+ *
+ * A histogram is created the first time a (method, endpoint) pair is seen. After that, recording is two map
+ * lookups and an atomic increment, with no allocation. Gauges that the store, converter and idempotency cache
+ * already track are read from them when the metrics are scraped.
+ */
+@Component
+public class LedgerMetrics {
+
+    private final Map<String, Map<String, LatencyHistogram>> requestLatency = new ConcurrentHashMap<>();
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder declined = new LongAdder();
+
+    // endpoint is the matched mapping pattern, e.g. /events/{userId}, so every user shares one histogram
+    public void recordRequest(String method, String endpoint, long nanos) {
+        Map<String, LatencyHistogram> byMethod = requestLatency.get(endpoint);
+        if (byMethod == null) {
+            byMethod = requestLatency.computeIfAbsent(endpoint, k -> new ConcurrentHashMap<>());
+        }
+        LatencyHistogram histogram = byMethod.get(method);
+        if (histogram == null) {
+            histogram = byMethod.computeIfAbsent(method, k -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    public void recordAuthorization(ResponseCode responseCode) {
+        (responseCode == ResponseCode.APPROVED ? approved : declined).increment();
+    }
+
+    // endpoint -> method -> histogram
+    public Map<String, Map<String, LatencyHistogram>> getRequestLatency() {
+        return Collections.unmodifiableMap(requestLatency);
+    }
+
+    public long getApprovedCount() {
+        return approved.sum();
+    }
+
+    public long getDeclinedCount() {
+        return declined.sum();
+    }
+}
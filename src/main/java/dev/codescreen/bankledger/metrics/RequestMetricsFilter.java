@@ -0,0 +1,67 @@
+package dev.codescreen.bankledger.metrics;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Times every request that reached a handler, keyed by method and matched mapping pattern. Requests no handler
+ * matched are not recorded, so unknown paths cannot grow the set of histograms. An async request, e.g. a streamed
+ * response or a write completed by the write-ahead log, is timed until the async processing completes.
+ */
+@Component
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private final LedgerMetrics ledgerMetrics;
+
+    public RequestMetricsFilter(LedgerMetrics ledgerMetrics) {
+        this.ledgerMetrics = ledgerMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, long start) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern instanceof String) {
+            ledgerMetrics.recordRequest(request.getMethod(), (String) pattern, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dev.codescreen.bankledger.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.codescreen.bankledger.dto.Error;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Turns writes away while this node is a follower; its store only changes through the leader's log.
+ */
+@Component
+@ConditionalOnExpression("'${ledger.replication.role:none}' != 'none'")
+public class FollowerWriteFilter extends OncePerRequestFilter {
+
+    private static final Set<String> WRITE_PATHS = Set.of("/load", "/authorization", "/load/batch", "/authorization/batch");
+
+    private final ReplicationNode replicationNode;
+    private final ObjectMapper objectMapper;
+
+    public FollowerWriteFilter(ReplicationNode replicationNode, ObjectMapper objectMapper) {
+        this.replicationNode = replicationNode;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (replicationNode.isFollower() && "PUT".equals(request.getMethod()) && WRITE_PATHS.contains(path)) {
+            HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+            response.setStatus(status.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(objectMapper.writeValueAsBytes(
+                    new Error("This node is a read-only follower, send writes to the leader", String.valueOf(status.value()))));
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
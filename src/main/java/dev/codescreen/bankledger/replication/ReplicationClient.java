@@ -0,0 +1,174 @@
+package dev.codescreen.bankledger.replication;
+
+import dev.codescreen.bankledger.store.EventCodec;
+import dev.codescreen.bankledger.store.EventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Follower side of replication: tails the leader's write-ahead log, see ReplicationServer, and applies every record
+ * to the local store in log order, so each account sees its events in the order the leader applied them. When the
+ * connection drops it reconnects from the last applied position.
+ *
+ * With a position file, the leader and the position applied are saved about once per SAVE_INTERVAL_MS, after the
+ * local log made everything applied durable, and a client of the same leader resumes from there after a restart
+ * instead of streaming the whole log again. The saved position may lag behind, records applied since are skipped
+ * by their sequence when they come again.
+ */
+public class ReplicationClient implements Closeable {
+
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long SAVE_INTERVAL_MS = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationClient.class);
+
+    private final EventStore eventStore;
+    private final String leader;
+    private final Path positionFile; // null when every start streams the leader's log from the beginning
+    private final Thread applier;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile long appliedPosition;
+    private volatile long leaderPosition;
+    private volatile long lastContactMillis;
+    private long savedMillis; // only used by the applier
+
+    // Leader as host:port, resuming from the position saved for the same leader
+    public ReplicationClient(EventStore eventStore, String leader, Path positionFile) throws IOException {
+        this.eventStore = eventStore;
+        this.leader = leader;
+        this.positionFile = positionFile;
+        this.appliedPosition = readPosition(positionFile, leader);
+        applier = new Thread(this::run, "replication-applier");
+        applier.setDaemon(true);
+    }
+
+    public void start() {
+        applier.start();
+    }
+
+    public String getLeader() {
+        return leader;
+    }
+
+    // Leader log position right after the last record applied here
+    public long getAppliedPosition() {
+        return appliedPosition;
+    }
+
+    // Bytes of durable leader log not applied here yet, as of the last frame received
+    public long getLagBytes() {
+        return Math.max(0, leaderPosition - appliedPosition);
+    }
+
+    // Time since the leader was last heard from, -1 before it ever was
+    public long getMillisSinceContact() {
+        long last = lastContactMillis;
+        return last == 0 ? -1 : System.currentTimeMillis() - last;
+    }
+
+    public boolean isRunning() {
+        return applier.isAlive();
+    }
+
+    private void run() {
+        int separator = leader.lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(leader.substring(0, separator), Integer.parseInt(leader.substring(separator + 1)));
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(address, CONNECT_TIMEOUT_MS);
+                connection.setSoTimeout((int) (ReplicationServer.HEARTBEAT_MS * 10));
+                DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+                out.writeLong(appliedPosition);
+                out.flush();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+                while (!closed) {
+                    long position = in.readLong();
+                    int length = in.readInt();
+                    lastContactMillis = System.currentTimeMillis();
+                    if (length == ReplicationServer.POSITION_FRAME) {
+                        leaderPosition = position;
+                        continue;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    eventStore.applyReplicated(EventCodec.decode(ByteBuffer.wrap(payload)));
+                    appliedPosition = position;
+                    if (positionFile != null && System.currentTimeMillis() - savedMillis >= SAVE_INTERVAL_MS) {
+                        savePosition();
+                    }
+                }
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                logger.warn("Lost the replication stream from {}, reconnecting: {}", leader, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Stopped replicating from {} at position {}. Error: {}", leader, appliedPosition, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Saves the applied position once the local log holds everything applied up to it
+    private void savePosition() throws IOException {
+        long position = appliedPosition;
+        eventStore.awaitAllDurable();
+        Path temporary = positionFile.resolveSibling(positionFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap((leader + "\n" + position).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, positionFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        savedMillis = System.currentTimeMillis();
+    }
+
+    // 0 without a position saved for this leader
+    private static long readPosition(Path positionFile, String leader) throws IOException {
+        if (positionFile == null || !Files.exists(positionFile)) {
+            return 0;
+        }
+        List<String> lines = Files.readAllLines(positionFile, StandardCharsets.UTF_8);
+        return lines.size() == 2 && lines.get(0).equals(leader) ? Long.parseLong(lines.get(1)) : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            connection.close();
+        }
+        applier.interrupt();
+        try {
+            applier.join(); // nothing may be applied once the caller goes on, e.g. to take writes after a promotion
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (positionFile != null && applier.getState() == Thread.State.TERMINATED) {
+            savePosition();
+        }
+    }
+}
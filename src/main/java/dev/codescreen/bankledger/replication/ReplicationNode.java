@@ -0,0 +1,164 @@
+package dev.codescreen.bankledger.replication;
+
+import dev.codescreen.bankledger.enums.ReplicationRole;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Replication role of this node.
+ *
+ * A leader serves its write-ahead log to followers. A follower applies a leader's log to its own store and only
+ * serves reads, until it is promoted to leader, e.g. after the leader died, or pointed at another leader. A
+ * follower that switches leaders streams the new leader's log from the start, because log positions differ between
+ * nodes, and skips the events it already holds. A follower with a position file resumes from the position it saved
+ * when it restarts following the same leader.
+ *
+ * Only the log is replicated, not the idempotency cache. A request the old leader applied and that is retried with
+ * the same messageId after a promotion is applied again by the new leader.
+ *
+ * Role changes close clients and servers, which joins their threads and saves the follower's position, so they take
+ * a lock of their own; status and lag read the current client and server without it and never wait behind one.
+ */
+public class ReplicationNode implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationNode.class);
+
+    private final EventStore eventStore;
+    private final WriteAheadLog writeAheadLog; // null when this node keeps events in memory only
+    private final int port;
+    private final Path positionFile; // null when a follower always streams the leader's log from the start
+    private final ReplicationRole initialRole;
+    private final String initialLeader;
+    private final ReentrantLock transitions = new ReentrantLock();
+    private volatile ReplicationRole role;
+    private volatile ReplicationServer server; // changed under transitions
+    private volatile ReplicationClient client; // changed under transitions
+
+    public ReplicationNode(EventStore eventStore, WriteAheadLog writeAheadLog, ReplicationRole role, String leader, int port, Path positionFile) {
+        this.eventStore = eventStore;
+        this.writeAheadLog = writeAheadLog;
+        this.port = port;
+        this.positionFile = positionFile;
+        this.initialRole = role;
+        this.initialLeader = leader;
+    }
+
+    // Takes up the role the node was created with
+    public void start() throws IOException {
+        if (initialRole == ReplicationRole.LEADER) {
+            transitions.lock();
+            try {
+                lead();
+            } finally {
+                transitions.unlock();
+            }
+        } else {
+            follow(initialLeader);
+        }
+    }
+
+    public ReplicationRole getRole() {
+        return role;
+    }
+
+    public boolean isFollower() {
+        return role == ReplicationRole.FOLLOWER;
+    }
+
+    // Stops following and starts taking writes, serving its own log to followers when it has one
+    public void promote() throws IOException {
+        transitions.lock();
+        try {
+            if (role == ReplicationRole.LEADER) {
+                return;
+            }
+            ReplicationClient previous = client;
+            previous.close();
+            logger.info("Promoted to leader after applying the log of {} up to position {}", previous.getLeader(), previous.getAppliedPosition());
+            client = null;
+            lead();
+        } finally {
+            transitions.unlock();
+        }
+    }
+
+    // Follows the given leader from the start of its log
+    public void follow(String leader) throws IOException {
+        transitions.lock();
+        try {
+            if (server != null) {
+                server.close();
+                server = null;
+            }
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+            role = ReplicationRole.FOLLOWER;
+            ReplicationClient next = new ReplicationClient(eventStore, leader, positionFile);
+            next.start();
+            client = next;
+        } finally {
+            transitions.unlock();
+        }
+    }
+
+    public Map<String, Object> status() {
+        ReplicationClient client = this.client;
+        ReplicationServer server = this.server;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", role);
+        if (client != null) {
+            status.put("leader", client.getLeader());
+            status.put("replicating", client.isRunning());
+            status.put("appliedPosition", client.getAppliedPosition());
+            status.put("lagBytes", client.getLagBytes());
+            status.put("millisSinceLeaderContact", client.getMillisSinceContact());
+        }
+        if (server != null) {
+            status.put("port", server.getPort());
+            status.put("followers", server.getFollowerCount());
+        }
+        return status;
+    }
+
+    // Bytes of the leader's log not applied yet, 0 on a leader
+    public long getLagBytes() {
+        ReplicationClient client = this.client;
+        return client == null ? 0 : client.getLagBytes();
+    }
+
+    // Caller must hold transitions
+    private void lead() throws IOException {
+        role = ReplicationRole.LEADER;
+        if (writeAheadLog == null) {
+            logger.warn("Leading without a write-ahead log, there is no log to serve to followers");
+            return;
+        }
+        server = new ReplicationServer(writeAheadLog, port);
+    }
+
+    @Override
+    public void close() throws IOException {
+        transitions.lock();
+        try {
+            if (client != null) {
+                client.close();
+            }
+            if (server != null) {
+                server.close();
+            }
+        } finally {
+            transitions.unlock();
+        }
+    }
+}
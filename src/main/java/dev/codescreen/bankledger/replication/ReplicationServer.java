@@ -0,0 +1,112 @@
+package dev.codescreen.bankledger.replication;
+
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leader side of replication: streams the write-ahead log to every follower that connects, from the position the
+ * follower asks for. Only durable records are shipped, so a follower never holds an event the leader could lose.
+ *
+ * Protocol, big endian: the follower sends the position to start from (8), which must be a record boundary. The
+ * leader then sends frames of end position (8) | length (4) | payload. A frame with a length of -1 has no payload
+ * and carries the leader's durable position instead; one precedes every batch of records and doubles as a
+ * heartbeat while nothing is written.
+ */
+public class ReplicationServer implements Closeable {
+
+    static final int POSITION_FRAME = -1;
+    static final long HEARTBEAT_MS = 200;
+    private static final int BATCH_SIZE = 1024;
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private final WriteAheadLog writeAheadLog;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public ReplicationServer(WriteAheadLog writeAheadLog, int port) throws IOException {
+        this.writeAheadLog = writeAheadLog;
+        this.serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Serving the write-ahead log to followers on port {}", serverSocket.getLocalPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Failed to accept a follower. Error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            socket.setTcpNoDelay(true);
+            long fromPosition = in.readLong();
+            logger.info("Follower {} connected from position {}", socket.getRemoteSocketAddress(), fromPosition);
+            try (WriteAheadLog.Tailer tailer = writeAheadLog.tail(fromPosition)) {
+                while (!closed) {
+                    out.writeLong(writeAheadLog.awaitDurableAfter(tailer.position(), HEARTBEAT_MS));
+                    out.writeInt(POSITION_FRAME);
+                    ByteBuffer record;
+                    for (int sent = 0; sent < BATCH_SIZE && (record = tailer.next()) != null; sent++) {
+                        out.writeLong(tailer.position());
+                        out.writeInt(record.remaining());
+                        out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+                    }
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.info("Follower {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : followers) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package dev.codescreen.bankledger.service;
+
+import dev.codescreen.bankledger.dto.*;
+import dev.codescreen.bankledger.dto.Error;
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.metrics.LedgerMetrics;
+import dev.codescreen.bankledger.store.BalanceCheckpoint;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.IngestPipeline;
+import dev.codescreen.bankledger.util.CurrencyConverter;
+import dev.codescreen.bankledger.util.IdGenerator;
+import dev.codescreen.bankledger.util.IdempotencyCache;
+import dev.codescreen.bankledger.util.Money;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies loads and authorizations to the event store, one at a time or in batches.
+ *
+ * Every request is idempotent on its messageId. A batch gives each item exactly the response it would have had as
+ * a single request, but applies all items of a user in order under one store lock and one durability wait.
+ */
+@Service
+public class TransactionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionService.class);
+    private static final String LOAD = "load";
+    private static final String AUTHORIZATION = "authorization";
+
+    private final EventStore eventStore;
+    private final IngestPipeline ingestPipeline; // null when requests write to the store directly
+    private final CurrencyConverter currencyConverter;
+    private final IdempotencyCache idempotencyCache;
+    private final Validator validator;
+    private final LedgerMetrics ledgerMetrics;
+    private final IdGenerator idGenerator;
+    private final String BASE_CURRENCY = EventStore.BASE_CURRENCY;
+
+    public TransactionService(EventStore eventStore, CurrencyConverter currencyConverter, IdempotencyCache idempotencyCache, Validator validator,
+                              LedgerMetrics ledgerMetrics, IdGenerator idGenerator, ObjectProvider<IngestPipeline> ingestPipeline) {
+        this.eventStore = eventStore;
+        this.ingestPipeline = ingestPipeline.getIfAvailable();
+        this.currencyConverter = currencyConverter;
+        this.idempotencyCache = idempotencyCache;
+        this.validator = validator;
+        this.ledgerMetrics = ledgerMetrics;
+        this.idGenerator = idGenerator;
+    }
+
+    // A retried messageId gets the original response without touching the event store
+    public ResponseEntity<?> load(LoadRequest request) {
+        return idempotencyCache.execute(LOAD, request.getUserId(), request.getMessageId(), () -> {
+            ResponseEntity<?> rejection = checkLoad(request);
+            if (rejection != null) {
+                return rejection;
+            }
+            BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
+            // add event to store, the running balance is kept in minor units of the base currency
+            LoadEvent event = identified(new LoadEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency()));
+            long balanceInBase;
+            try {
+                long effect = toBase(event);
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.addEvent(request.getUserId(), event, effect)
+                        : ingestPipeline.addEvent(request.getUserId(), event, effect);
+            } catch (ArithmeticException e) {
+                return balanceOverflow();
+            }
+            return loadResponse(request, event, balanceInBase);
+        });
+    }
+
+    public ResponseEntity<?> authorize(AuthorizationRequest request) {
+        return idempotencyCache.execute(AUTHORIZATION, request.getUserId(), request.getMessageId(), () -> {
+            ResponseEntity<?> rejection = checkAuthorization(request);
+            if (rejection != null) {
+                return rejection;
+            }
+            BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
+            // the store decides and applies the debit atomically, comparing balance and debit in base currency
+            AuthorizationEvent event = identified(new AuthorizationEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency(), ResponseCode.DECLINED, DebitCredit.DEBIT));
+            long balanceInBase;
+            try {
+                long debit = toBase(event);
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.authorize(request.getUserId(), event, debit)
+                        : ingestPipeline.authorize(request.getUserId(), event, debit);
+            } catch (ArithmeticException e) {
+                // beyond the largest balance the ledger holds, so no balance covers it
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.addEvent(request.getUserId(), event, 0)
+                        : ingestPipeline.addEvent(request.getUserId(), event, 0);
+            }
+            ledgerMetrics.recordAuthorization(event.getResponseCode());
+            return authorizationResponse(request, event, balanceInBase);
+        });
+    }
+
+    // Non-blocking forms of load and authorize. Conversion only reads the in-memory rate table, so the only wait is
+    // for durability, and the response is built by whoever completes it.
+    public CompletableFuture<ResponseEntity<?>> loadAsync(LoadRequest request) {
+        return idempotencyCache.executeAsync(LOAD, request.getUserId(), request.getMessageId(), () -> {
+            ResponseEntity<?> rejection = checkLoad(request);
+            if (rejection != null) {
+                return CompletableFuture.completedFuture(rejection);
+            }
+            BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
+            LoadEvent event = identified(new LoadEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency()));
+            CompletableFuture<Long> balanceInBase;
+            try {
+                long effect = toBase(event);
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.addEventAsync(request.getUserId(), event, effect)
+                        : ingestPipeline.addEventAsync(request.getUserId(), event, effect);
+            } catch (ArithmeticException e) {
+                return CompletableFuture.completedFuture(balanceOverflow());
+            }
+            return balanceInBase.handle((balance, failure) -> {
+                if (failure == null) {
+                    return loadResponse(request, event, balance);
+                }
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                if (cause instanceof ArithmeticException) {
+                    return balanceOverflow();
+                }
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            });
+        });
+    }
+
+    public CompletableFuture<ResponseEntity<?>> authorizeAsync(AuthorizationRequest request) {
+        return idempotencyCache.executeAsync(AUTHORIZATION, request.getUserId(), request.getMessageId(), () -> {
+            ResponseEntity<?> rejection = checkAuthorization(request);
+            if (rejection != null) {
+                return CompletableFuture.completedFuture(rejection);
+            }
+            BigDecimal amount = new BigDecimal(request.getTransactionAmount().getAmount());
+            AuthorizationEvent event = identified(new AuthorizationEvent(request.getUserId(), amount, request.getTransactionAmount().getCurrency(), ResponseCode.DECLINED, DebitCredit.DEBIT));
+            CompletableFuture<Long> balanceInBase;
+            try {
+                long debit = toBase(event);
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.authorizeAsync(request.getUserId(), event, debit)
+                        : ingestPipeline.authorizeAsync(request.getUserId(), event, debit);
+            } catch (ArithmeticException e) {
+                // declined as in authorize
+                balanceInBase = ingestPipeline == null
+                        ? eventStore.addEventAsync(request.getUserId(), event, 0)
+                        : ingestPipeline.addEventAsync(request.getUserId(), event, 0);
+            }
+            return balanceInBase.thenApply(balance -> {
+                ledgerMetrics.recordAuthorization(event.getResponseCode());
+                return authorizationResponse(request, event, balance);
+            });
+        });
+    }
+
+    public List<BatchItemResponse> loadBatch(List<LoadRequest> requests) {
+        return batch(LOAD, requests, LoadRequest::getUserId, LoadRequest::getMessageId, this::checkLoad, (userId, items) -> {
+            List<LoadEvent> events = new ArrayList<>(items.size());
+            long[] effects = new long[items.size()];
+            long[] balances;
+            try {
+                for (int i = 0; i < items.size(); i++) {
+                    Amount transactionAmount = items.get(i).request.getTransactionAmount();
+                    BigDecimal amount = new BigDecimal(transactionAmount.getAmount());
+                    LoadEvent event = identified(new LoadEvent(userId, amount, transactionAmount.getCurrency()));
+                    effects[i] = toBase(event);
+                    events.add(event);
+                }
+                // the store refuses the whole run under the account lock when the balance cannot hold it
+                balances = ingestPipeline == null ? eventStore.addEvents(userId, events, effects) : ingestPipeline.addEvents(userId, events, effects);
+            } catch (ArithmeticException e) {
+                for (Item<LoadRequest> item : items) {
+                    item.response = balanceOverflow();
+                }
+                return;
+            }
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).response = loadResponse(items.get(i).request, events.get(i), balances[i]);
+            }
+        });
+    }
+
+    public List<BatchItemResponse> authorizeBatch(List<AuthorizationRequest> requests) {
+        return batch(AUTHORIZATION, requests, AuthorizationRequest::getUserId, AuthorizationRequest::getMessageId, this::checkAuthorization, (userId, items) -> {
+            List<Item<AuthorizationRequest>> covered = new ArrayList<>(items.size());
+            List<AuthorizationEvent> events = new ArrayList<>(items.size());
+            long[] debits = new long[items.size()];
+            List<Item<AuthorizationRequest>> beyond = new ArrayList<>();
+            List<AuthorizationEvent> beyondEvents = new ArrayList<>();
+            for (Item<AuthorizationRequest> item : items) {
+                Amount transactionAmount = item.request.getTransactionAmount();
+                BigDecimal amount = new BigDecimal(transactionAmount.getAmount());
+                AuthorizationEvent event = identified(new AuthorizationEvent(userId, amount, transactionAmount.getCurrency(), ResponseCode.DECLINED, DebitCredit.DEBIT));
+                try {
+                    debits[events.size()] = toBase(event);
+                    covered.add(item);
+                    events.add(event);
+                } catch (ArithmeticException e) {
+                    // declined as in authorize, recorded ahead of the rest since it moves no balance
+                    beyond.add(item);
+                    beyondEvents.add(event);
+                }
+            }
+            if (!beyond.isEmpty()) {
+                long[] effects = new long[beyond.size()];
+                long[] balances = ingestPipeline == null ? eventStore.addEvents(userId, beyondEvents, effects) : ingestPipeline.addEvents(userId, beyondEvents, effects);
+                respond(beyond, beyondEvents, balances);
+            }
+            if (!covered.isEmpty()) {
+                long[] runDebits = Arrays.copyOf(debits, events.size());
+                long[] balances = ingestPipeline == null ? eventStore.authorizeAll(userId, events, runDebits) : ingestPipeline.authorizeAll(userId, events, runDebits);
+                respond(covered, events, balances);
+            }
+        });
+    }
+
+    private void respond(List<Item<AuthorizationRequest>> items, List<AuthorizationEvent> events, long[] balances) {
+        for (int i = 0; i < items.size(); i++) {
+            ledgerMetrics.recordAuthorization(events.get(i).getResponseCode());
+            items.get(i).response = authorizationResponse(items.get(i).request, events.get(i), balances[i]);
+        }
+    }
+
+    private static final class Item<R> {
+        private final R request;
+        private IdempotencyCache.Claim claim;
+        private ResponseEntity<?> response;
+
+        private Item(R request) {
+            this.request = request;
+        }
+    }
+
+    private <R> List<BatchItemResponse> batch(String operation, List<R> requests, Function<R, String> userOf, Function<R, String> messageOf,
+                                              Function<R, ResponseEntity<?>> check, BiConsumer<String, List<Item<R>>> applyForUser) {
+        List<Item<R>> items = new ArrayList<>(requests.size());
+        Map<String, List<Item<R>>> owned = new LinkedHashMap<>();
+        for (R request : requests) {
+            Item<R> item = new Item<>(request);
+            items.add(item);
+            item.response = validate(request);
+            if (item.response != null) {
+                continue;
+            }
+            item.claim = idempotencyCache.claim(operation, userOf.apply(request), messageOf.apply(request));
+            if (!item.claim.isOwner()) {
+                continue; // a retry, or a duplicate within this batch, answered once its owner completes
+            }
+            try {
+                item.response = check.apply(request);
+            } catch (RuntimeException e) {
+                idempotencyCache.fail(item.claim, e);
+                item.response = unexpectedError();
+                continue;
+            }
+            if (item.response != null) {
+                idempotencyCache.complete(item.claim, item.response);
+            } else {
+                owned.computeIfAbsent(userOf.apply(request), k -> new ArrayList<>()).add(item);
+            }
+        }
+
+        for (Map.Entry<String, List<Item<R>>> user : owned.entrySet()) {
+            try {
+                applyForUser.accept(user.getKey(), user.getValue());
+                for (Item<R> item : user.getValue()) {
+                    idempotencyCache.complete(item.claim, item.response);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to apply {} batch for user {}", operation, user.getKey(), e);
+                for (Item<R> item : user.getValue()) {
+                    idempotencyCache.fail(item.claim, e);
+                    item.response = unexpectedError();
+                }
+            }
+        }
+
+        List<BatchItemResponse> responses = new ArrayList<>(items.size());
+        for (Item<R> item : items) {
+            ResponseEntity<?> response = item.response;
+            if (response == null) {
+                try {
+                    response = item.claim.await();
+                } catch (RuntimeException e) {
+                    response = unexpectedError();
+                }
+            }
+            responses.add(new BatchItemResponse(response.getStatusCode().value(), response.getBody()));
+        }
+        return responses;
+    }
+
+    // Same checks @Valid applies to a single request, reported the way GlobalExceptionHandler reports them. Null
+    // when the request is valid.
+    public ResponseEntity<?> validate(Object request) {
+        if (request == null) {
+            return badRequest("Request cannot be empty");
+        }
+        Set<ConstraintViolation<Object>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return badRequest(violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.joining(", ")));
+    }
+
+    private ResponseEntity<?> checkLoad(LoadRequest request) {
+        if (request.getTransactionAmount().getDebitOrCredit() != DebitCredit.CREDIT) {
+            return badRequest("Load transactions must be of type CREDIT");
+        }
+        if (new BigDecimal(request.getTransactionAmount().getAmount()).compareTo(BigDecimal.ZERO) < 0) {
+            return badRequest("Amount cannot be negative");
+        }
+        return null;
+    }
+
+    private ResponseEntity<?> checkAuthorization(AuthorizationRequest request) {
+        if (request.getTransactionAmount().getDebitOrCredit() != DebitCredit.DEBIT) {
+            return badRequest("Authorization transactions must be of type DEBIT");
+        }
+        if (new BigDecimal(request.getTransactionAmount().getAmount()).compareTo(BigDecimal.ZERO) < 0) {
+            return badRequest("Amount cannot be negative");
+        }
+        return null;
+    }
+
+    // Current balance from the account's running total, converted with the current rate table. Nothing is appended
+    // and no history is read.
+    public ResponseEntity<?> balance(String userId, String currency) {
+        if (!eventStore.hasAccount(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+        Amount balanceAmount = new Amount(balanceIn(eventStore.getBalance(userId), currency), currency, DebitCredit.CREDIT);
+        return ResponseEntity.ok(new BalanceResponse(userId, balanceAmount));
+    }
+
+    // Balance as of a past time: the latest checkpoint at or before it plus the events recorded after the checkpoint
+    // up to the first one stamped later. Events carry their base amount, so the replay is a plain sum; only events
+    // recorded before they carried one are valued at the current rates.
+    public ResponseEntity<?> balanceAsOf(String userId, LocalDateTime timestamp, String currency) {
+        if (!eventStore.hasAccount(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+        BalanceCheckpoint checkpoint = eventStore.getCheckpointAsOf(userId, timestamp);
+        if (checkpoint == null) {
+            HttpStatus status = HttpStatus.NOT_FOUND;
+            return ResponseEntity.status(status).body(new Error("History of " + userId + " before " + timestamp + " is no longer held", String.valueOf(status.value())));
+        }
+        long balanceInBase = checkpoint.getBalance();
+        for (Event event : eventStore.getEvents(userId, checkpoint.getNextSequence(), Long.MAX_VALUE)) {
+            if (event.getTimestamp().isAfter(timestamp)) {
+                break;
+            }
+            balanceInBase += balanceEffectOf(event);
+        }
+        Amount balanceAmount = new Amount(balanceIn(balanceInBase, currency), currency, DebitCredit.CREDIT);
+        return ResponseEntity.ok(new BalanceResponse(userId, balanceAmount));
+    }
+
+    private long balanceEffectOf(Event event) {
+        if (event instanceof AuthorizationEvent && ((AuthorizationEvent) event).getResponseCode() != ResponseCode.APPROVED) {
+            return 0;
+        }
+        long minorUnits = event.hasBaseAmount()
+                ? event.getBaseAmount()
+                : currencyConverter.convertToMoney(event.getCurrency(), BASE_CURRENCY, event.getAmount()).getMinorUnits();
+        return event instanceof AuthorizationEvent ? -minorUnits : minorUnits;
+    }
+
+    // Converts the event's amount to the base currency once and records the result and the version of the rates used
+    // on the event, so its balance effect never changes when the rates are refreshed. A conversion that raced a
+    // refresh is repeated, so the recorded version is the one that produced the amount.
+    private long toBase(Event event) {
+        long version;
+        long minorUnits;
+        do {
+            version = currencyConverter.getRateVersion();
+            minorUnits = currencyConverter.convertToMoney(event.getCurrency(), BASE_CURRENCY, event.getAmount()).getMinorUnits();
+        } while (version != currencyConverter.getRateVersion());
+        event.setBaseAmount(minorUnits, version);
+        return minorUnits;
+    }
+
+    // Gives the event its transactionId, which the response returns in its messageId field
+    private <E extends Event> E identified(E event) {
+        event.setTransactionId(idGenerator.nextId());
+        return event;
+    }
+
+    private ResponseEntity<?> loadResponse(LoadRequest request, LoadEvent event, long balanceInBase) {
+        // convert updated balance to the request currency
+        String currency = request.getTransactionAmount().getCurrency();
+        Amount balanceAmount = new Amount(balanceIn(balanceInBase, currency), currency, DebitCredit.CREDIT);
+        LoadResponse response = new LoadResponse(Long.toString(event.getTransactionId()), request.getUserId(), balanceAmount);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    private ResponseEntity<?> authorizationResponse(AuthorizationRequest request, AuthorizationEvent event, long balanceInBase) {
+        // convert updated balance to the request currency
+        String currency = request.getTransactionAmount().getCurrency();
+        Amount balanceAmount = new Amount(balanceIn(balanceInBase, currency), currency, DebitCredit.DEBIT);
+        AuthorizationResponse response = new AuthorizationResponse(request.getUserId(), Long.toString(event.getTransactionId()), event.getResponseCode(), balanceAmount);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    // The balance in the currency. At a rate above 1 a balance near the largest the ledger holds converts beyond a long
+    // of minor units, that one is rendered from the exact product instead.
+    private String balanceIn(long balanceInBase, String currency) {
+        Money balance = Money.ofMinor(balanceInBase, BASE_CURRENCY);
+        try {
+            return currencyConverter.convert(balance, currency).toString();
+        } catch (ArithmeticException e) {
+            return currencyConverter.convert(BASE_CURRENCY, currency, balance.toBigDecimal()).setScale(Money.scaleOf(currency)).toPlainString();
+        }
+    }
+
+    // The running balance is a long of minor units, a load it cannot hold is refused before anything is recorded
+    private static ResponseEntity<?> balanceOverflow() {
+        return badRequest("Load would take the balance beyond the largest amount the ledger holds");
+    }
+
+    private static ResponseEntity<?> badRequest(String message) {
+        return ResponseEntity.badRequest().body(new Error(message, String.valueOf(HttpStatus.BAD_REQUEST.value())));
+    }
+
+    private static ResponseEntity<?> unexpectedError() {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new Error("An unexpected error occurred", "INTERNAL_SERVER_ERROR"));
+    }
+}
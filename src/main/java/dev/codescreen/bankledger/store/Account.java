@@ -0,0 +1,30 @@
+package dev.codescreen.bankledger.store;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-user state held by the EventStore.
+ *
+ * Every mutation happens while holding the account's own lock, so operations on different accounts never
+ * contend and operations on the same account are applied one at a time. The balance is volatile so it can
+ * be read without taking the lock.
+ */
+final class Account {
+
+    final ReentrantLock lock = new ReentrantLock();
+    final EventLog events;
+    volatile long balance; // running balance in minor units of the base currency
+    BigDecimal snapshotBalance = BigDecimal.ZERO;
+    LocalDateTime snapshotTimestamp = LocalDateTime.MIN;
+    BalanceCheckpoints checkpoints;
+    long archivedUntil; // events below are in cold segments, only used while the store takes a snapshot
+
+    // The log starts at the account's next sequence when the account is restored from a snapshot, its earlier
+    // events are not held in memory
+    Account(EventLog events) {
+        this.events = events;
+        this.checkpoints = new BalanceCheckpoints(events.size(), 0, LocalDateTime.MIN);
+    }
+}
@@ -0,0 +1,32 @@
+package dev.codescreen.bankledger.store;
+
+import java.time.LocalDateTime;
+
+/**
+ * Balance of an account, in minor units of the base currency, before the event with the given sequence. Every
+ * event before it is stamped at or before the timestamp.
+ */
+public class BalanceCheckpoint {
+
+    private final long nextSequence;
+    private final long balance;
+    private final LocalDateTime timestamp;
+
+    public BalanceCheckpoint(long nextSequence, long balance, LocalDateTime timestamp) {
+        this.nextSequence = nextSequence;
+        this.balance = balance;
+        this.timestamp = timestamp;
+    }
+
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
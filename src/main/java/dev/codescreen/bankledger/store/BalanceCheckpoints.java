@@ -0,0 +1,89 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.event.Event;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Running balance of an account recorded after every INTERVAL-th event, so the balance at a past time can be
+ * found by a binary search and a replay of at most INTERVAL events instead of the whole history.
+ *
+ * A checkpoint holds the sequence of the next event, the balance before it and the latest timestamp of the events
+ * it covers. Timestamps are taken before the account lock, so neighbouring events can be stamped slightly out of
+ * order; keeping the latest one makes the checkpoint times non-decreasing. Guarded by the account lock.
+ */
+final class BalanceCheckpoints {
+
+    static final int INTERVAL = 256;
+
+    private long[] sequences = new long[4];
+    private long[] balances = new long[4];
+    private LocalDateTime[] timestamps = new LocalDateTime[4];
+    private int count;
+    private LocalDateTime latest;
+
+    // Starts at a point whose history before it is known: the empty account, a snapshot or a moved account
+    BalanceCheckpoints(long nextSequence, long balance, LocalDateTime timestamp) {
+        latest = timestamp;
+        add(nextSequence, balance);
+    }
+
+    // Called with the balance after each appended event
+    void afterEvent(Event event, long balance) {
+        if (event.getTimestamp().isAfter(latest)) {
+            latest = event.getTimestamp();
+        }
+        long nextSequence = event.getSequence() + 1;
+        if (nextSequence % INTERVAL == 0) {
+            add(nextSequence, balance);
+        }
+    }
+
+    // Records a known balance, e.g. restored from a snapshot, after the history already checkpointed
+    void record(long nextSequence, long balance, LocalDateTime timestamp) {
+        if (timestamp.isAfter(latest)) {
+            latest = timestamp;
+        }
+        add(nextSequence, balance);
+    }
+
+    // Index of the latest checkpoint whose events are all stamped at or before the given time, -1 if there is none
+    int floor(LocalDateTime timestamp) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid].isAfter(timestamp)) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return high;
+    }
+
+    long sequenceAt(int index) {
+        return sequences[index];
+    }
+
+    long balanceAt(int index) {
+        return balances[index];
+    }
+
+    LocalDateTime timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    private void add(long nextSequence, long balance) {
+        if (count == sequences.length) {
+            sequences = Arrays.copyOf(sequences, count * 2);
+            balances = Arrays.copyOf(balances, count * 2);
+            timestamps = Arrays.copyOf(timestamps, count * 2);
+        }
+        sequences[count] = nextSequence;
+        balances[count] = balance;
+        timestamps[count] = latest;
+        count++;
+    }
+}
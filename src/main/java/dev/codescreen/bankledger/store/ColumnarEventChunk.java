@@ -0,0 +1,200 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chunk that encodes its events as fixed width columns in one direct buffer, so a chunk is a handful of heap
+ * objects however many events it holds. Events are materialized again on every read; the copies are short lived
+ * and cheap to collect, unlike millions of long lived objects the collector has to trace on every old generation
+ * cycle.
+ *
+ * Columns, one entry per slot of the chunk's capacity each: epoch nanos (8) | unscaled amount (8) |
+ * amount scale (1) | currency (3) | kind (1) | response code (1) | transaction id (8) | base amount (8) |
+ * rate version (8). The sequence is the slot's position and the user is the log's, so neither is stored. The buffer
+ * starts with room for MIN_CAPACITY slots and is copied into one twice the size when a slot beyond it is written,
+ * so an account with a handful of events holds a few hundred bytes rather than a whole chunk. An event that does
+ * not fit the columns, e.g. an amount beyond a long or a currency that is not three letters, is kept on the heap in
+ * its slot instead.
+ */
+final class ColumnarEventChunk extends EventChunk {
+
+    private static final int BYTES_PER_SLOT = 8 + 8 + 1 + 3 + 1 + 1 + 8 + 8 + 8;
+
+    private static final byte LOAD = 0;
+    private static final byte AUTHORIZATION = 1;
+    private static final byte ON_HEAP = 2;
+    private static final byte NO_RESPONSE_CODE = -1;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final ResponseCode[] RESPONSE_CODE_VALUES = ResponseCode.values();
+
+    // Three letter codes packed into an int, so materializing an event does not build a new String
+    private static final Map<Integer, String> currencies = new ConcurrentHashMap<>();
+
+    private final String userId;
+    private final long firstSequence;
+    private Columns columns = new Columns(MIN_CAPACITY);
+    private Event[] onHeap; // allocated on the first event that does not fit the columns
+
+    ColumnarEventChunk(String userId, long firstSequence) {
+        this.userId = userId;
+        this.firstSequence = firstSequence;
+    }
+
+    @Override
+    void set(int offset, Event event) {
+        Columns columns = this.columns;
+        if (offset >= columns.capacity) {
+            columns = columns.grow(grownCapacity(columns.capacity, offset));
+            this.columns = columns;
+        }
+        long nanos = epochNanos(event.getTimestamp());
+        BigDecimal amount = event.getAmount();
+        int currency = pack(event.getCurrency());
+        if (nanos == Long.MIN_VALUE || amount.unscaledValue().bitLength() >= Long.SIZE
+                || amount.scale() != (byte) amount.scale() || currency < 0) {
+            if (onHeap == null || offset >= onHeap.length) {
+                onHeap = onHeap == null ? new Event[columns.capacity] : Arrays.copyOf(onHeap, columns.capacity);
+            }
+            onHeap[offset] = event;
+            columns.buffer.put(columns.kinds + offset, ON_HEAP);
+            return;
+        }
+        columns.buffer.putLong(columns.timestamps + 8 * offset, nanos);
+        columns.buffer.putLong(columns.amounts + 8 * offset, amount.unscaledValue().longValue());
+        columns.buffer.put(columns.scales + offset, (byte) amount.scale());
+        columns.buffer.putLong(columns.transactionIds + 8 * offset, event.getTransactionId());
+        columns.buffer.putLong(columns.baseAmounts + 8 * offset, event.getBaseAmount());
+        columns.buffer.putLong(columns.rateVersions + 8 * offset, event.getRateVersion());
+        columns.buffer.put(columns.currencies + 3 * offset, (byte) (currency >>> 16))
+                .put(columns.currencies + 3 * offset + 1, (byte) (currency >>> 8))
+                .put(columns.currencies + 3 * offset + 2, (byte) currency);
+        if (event instanceof AuthorizationEvent) {
+            ResponseCode responseCode = ((AuthorizationEvent) event).getResponseCode();
+            columns.buffer.put(columns.responseCodes + offset, responseCode == null ? NO_RESPONSE_CODE : (byte) responseCode.ordinal());
+            columns.buffer.put(columns.kinds + offset, AUTHORIZATION);
+        } else {
+            columns.buffer.put(columns.kinds + offset, LOAD);
+        }
+    }
+
+    @Override
+    Event get(int offset) {
+        Columns columns = this.columns;
+        byte kind = columns.buffer.get(columns.kinds + offset);
+        if (kind == ON_HEAP) {
+            return onHeap[offset];
+        }
+        long nanos = columns.buffer.getLong(columns.timestamps + 8 * offset);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(nanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+        BigDecimal amount = BigDecimal.valueOf(columns.buffer.getLong(columns.amounts + 8 * offset), columns.buffer.get(columns.scales + offset));
+        String currency = unpack((columns.buffer.get(columns.currencies + 3 * offset) & 0xFF) << 16
+                | (columns.buffer.get(columns.currencies + 3 * offset + 1) & 0xFF) << 8
+                | columns.buffer.get(columns.currencies + 3 * offset + 2) & 0xFF);
+        Event event;
+        if (kind == AUTHORIZATION) {
+            byte responseCode = columns.buffer.get(columns.responseCodes + offset);
+            event = new AuthorizationEvent(userId, amount, currency,
+                    responseCode == NO_RESPONSE_CODE ? null : RESPONSE_CODE_VALUES[responseCode], timestamp);
+        } else {
+            event = new LoadEvent(userId, amount, currency, timestamp);
+        }
+        event.setSequence(firstSequence + offset);
+        event.setTransactionId(columns.buffer.getLong(columns.transactionIds + 8 * offset));
+        event.setBaseAmount(columns.buffer.getLong(columns.baseAmounts + 8 * offset), columns.buffer.getLong(columns.rateVersions + 8 * offset));
+        return event;
+    }
+
+    // The buffer at one capacity and where each of its columns starts
+    private static final class Columns {
+        private final int capacity;
+        private final ByteBuffer buffer;
+        private final int timestamps;
+        private final int amounts;
+        private final int scales;
+        private final int currencies;
+        private final int kinds;
+        private final int responseCodes;
+        private final int transactionIds;
+        private final int baseAmounts;
+        private final int rateVersions;
+
+        private Columns(int capacity) {
+            this.capacity = capacity;
+            this.buffer = ByteBuffer.allocateDirect(BYTES_PER_SLOT * capacity);
+            this.timestamps = 0;
+            this.amounts = timestamps + 8 * capacity;
+            this.scales = amounts + 8 * capacity;
+            this.currencies = scales + capacity;
+            this.kinds = currencies + 3 * capacity;
+            this.responseCodes = kinds + capacity;
+            this.transactionIds = responseCodes + capacity;
+            this.baseAmounts = transactionIds + 8 * capacity;
+            this.rateVersions = baseAmounts + 8 * capacity;
+        }
+
+        // A copy with room for newCapacity slots, holding the slots written so far
+        private Columns grow(int newCapacity) {
+            Columns grown = new Columns(newCapacity);
+            grown.buffer.put(grown.timestamps, buffer, timestamps, 8 * capacity);
+            grown.buffer.put(grown.amounts, buffer, amounts, 8 * capacity);
+            grown.buffer.put(grown.scales, buffer, scales, capacity);
+            grown.buffer.put(grown.currencies, buffer, currencies, 3 * capacity);
+            grown.buffer.put(grown.kinds, buffer, kinds, capacity);
+            grown.buffer.put(grown.responseCodes, buffer, responseCodes, capacity);
+            grown.buffer.put(grown.transactionIds, buffer, transactionIds, 8 * capacity);
+            grown.buffer.put(grown.baseAmounts, buffer, baseAmounts, 8 * capacity);
+            grown.buffer.put(grown.rateVersions, buffer, rateVersions, 8 * capacity);
+            return grown;
+        }
+    }
+
+    int capacity() {
+        return columns.capacity;
+    }
+
+    // Long.MIN_VALUE when the timestamp lies outside the years a long of nanos covers
+    private static long epochNanos(LocalDateTime timestamp) {
+        try {
+            return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND), timestamp.getNano());
+        } catch (ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    // -1 unless the currency is three upper case letters
+    private static int pack(String currency) {
+        if (currency == null || currency.length() != 3) {
+            return -1;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = currency.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            packed = packed << 8 | c;
+        }
+        return packed;
+    }
+
+    private static String unpack(int packed) {
+        String currency = currencies.get(packed);
+        if (currency == null) {
+            currency = currencies.computeIfAbsent(packed,
+                    k -> new String(new char[]{(char) (k >>> 16), (char) (k >>> 8 & 0xFF), (char) (k & 0xFF)}));
+        }
+        return currency;
+    }
+}
@@ -0,0 +1,54 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.event.Event;
+
+import java.util.Arrays;
+
+/**
+ * Storage for the EventLog.CHUNK_SIZE events of one chunk of an EventLog. A slot is written once by the log's
+ * single writer before the log publishes it, and only read after that.
+ *
+ * Chunks start with room for MIN_CAPACITY events and double up to CHUNK_SIZE as slots are written, so an account
+ * with a handful of events does not pay for a whole chunk. The writer grows the storage before writing the slot and
+ * the log publishes the slot afterwards, so a reader of a published slot always sees storage that holds it.
+ */
+abstract class EventChunk {
+
+    static final int MIN_CAPACITY = 8;
+
+    abstract void set(int offset, Event event);
+
+    abstract Event get(int offset);
+
+    // Smallest capacity doubled from the current one that holds the offset
+    static int grownCapacity(int capacity, int offset) {
+        while (capacity <= offset) {
+            capacity <<= 1;
+        }
+        return Math.min(capacity, EventLog.CHUNK_SIZE);
+    }
+
+    // Keeps the events themselves
+    static final class OnHeap extends EventChunk {
+        private Event[] events = new Event[MIN_CAPACITY];
+
+        @Override
+        void set(int offset, Event event) {
+            Event[] current = events;
+            if (offset >= current.length) {
+                current = Arrays.copyOf(current, grownCapacity(current.length, offset));
+                events = current;
+            }
+            current[offset] = event;
+        }
+
+        @Override
+        Event get(int offset) {
+            return events[offset];
+        }
+
+        int capacity() {
+            return events.length;
+        }
+    }
+}
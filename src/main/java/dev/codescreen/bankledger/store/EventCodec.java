@@ -0,0 +1,132 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary encoding of an EventRecord.
+ *
+ * Layout: kind (1) | response code (1) | sequence (8) | epoch second (8) | nanos (4) | userId | currency |
+ * amount | balance effect (8) [| transaction id (8)] [| base amount (8) | rate version (8)]. Strings are a length
+ * prefixed UTF-8 sequence and the amount is its scale followed by the length prefixed two's complement bytes of the
+ * unscaled value. The balance effect and base amount are in minor units. The transaction id and the base amount are
+ * only present when the kind has the HAS_TRANSACTION_ID and HAS_BASE_AMOUNT bit set, so records written before
+ * events carried them still decode. A field longer than its length prefix can express is rejected rather than
+ * truncated, as a truncated record would still pass its checksum and decode into a different event.
+ */
+public final class EventCodec {
+
+    private static final byte LOAD = 0;
+    private static final byte AUTHORIZATION = 1;
+    private static final byte HAS_TRANSACTION_ID = 0x10;
+    private static final byte HAS_BASE_AMOUNT = 0x20;
+    private static final byte NO_RESPONSE_CODE = -1;
+    private static final int USER_ID_OFFSET = 1 + 1 + 8 + 8 + 4;
+
+    private EventCodec() {
+    }
+
+    public static ByteBuffer encode(String userId, Event event, long balanceEffect) {
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] currency = event.getCurrency().getBytes(StandardCharsets.UTF_8);
+        byte[] amount = event.getAmount().unscaledValue().toByteArray();
+        checkLength("User ID", user.length, 0xFFFF);
+        checkLength("Currency", currency.length, 0xFF);
+        checkLength("Amount", amount.length, 0xFF);
+        boolean hasTransactionId = event.getTransactionId() != 0;
+        boolean hasBaseAmount = event.hasBaseAmount();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + 8 + 8 + 4
+                + 2 + user.length + 1 + currency.length + 4 + 1 + amount.length + 8
+                + (hasTransactionId ? 8 : 0) + (hasBaseAmount ? 16 : 0));
+
+        LocalDateTime timestamp = event.getTimestamp();
+        byte flags = (byte) ((hasTransactionId ? HAS_TRANSACTION_ID : 0) | (hasBaseAmount ? HAS_BASE_AMOUNT : 0));
+        if (event instanceof AuthorizationEvent) {
+            ResponseCode responseCode = ((AuthorizationEvent) event).getResponseCode();
+            buffer.put((byte) (AUTHORIZATION | flags)).put(responseCode == null ? NO_RESPONSE_CODE : (byte) responseCode.ordinal());
+        } else {
+            buffer.put((byte) (LOAD | flags)).put(NO_RESPONSE_CODE);
+        }
+        buffer.putLong(event.getSequence())
+                .putLong(timestamp.toEpochSecond(ZoneOffset.UTC))
+                .putInt(timestamp.getNano());
+        buffer.putShort((short) user.length).put(user);
+        buffer.put((byte) currency.length).put(currency);
+        buffer.putInt(event.getAmount().scale()).put((byte) amount.length).put(amount);
+        buffer.putLong(balanceEffect);
+        if (hasTransactionId) {
+            buffer.putLong(event.getTransactionId());
+        }
+        if (hasBaseAmount) {
+            buffer.putLong(event.getBaseAmount()).putLong(event.getRateVersion());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static EventRecord decode(ByteBuffer buffer) {
+        byte flags = buffer.get();
+        byte kind = (byte) (flags & ~(HAS_TRANSACTION_ID | HAS_BASE_AMOUNT));
+        byte responseCode = buffer.get();
+        long sequence = buffer.getLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        String userId = readString(buffer, buffer.getShort() & 0xFFFF);
+        String currency = readString(buffer, buffer.get() & 0xFF);
+        BigDecimal amount = readDecimal(buffer);
+        long balanceEffect = buffer.getLong();
+        long transactionId = (flags & HAS_TRANSACTION_ID) != 0 ? buffer.getLong() : 0;
+        boolean hasBaseAmount = (flags & HAS_BASE_AMOUNT) != 0;
+        long baseAmount = hasBaseAmount ? buffer.getLong() : 0;
+        long rateVersion = hasBaseAmount ? buffer.getLong() : Event.NO_RATE_VERSION;
+
+        Event event;
+        if (kind == AUTHORIZATION) {
+            ResponseCode code = responseCode == NO_RESPONSE_CODE ? null : ResponseCode.values()[responseCode];
+            event = new AuthorizationEvent(userId, amount, currency, code, timestamp);
+        } else if (kind == LOAD) {
+            event = new LoadEvent(userId, amount, currency, timestamp);
+        } else {
+            throw new IllegalArgumentException("Unknown event kind " + kind);
+        }
+        event.setSequence(sequence);
+        event.setTransactionId(transactionId);
+        event.setBaseAmount(baseAmount, rateVersion);
+        return new EventRecord(userId, event, balanceEffect);
+    }
+
+    // Reads only the owning user of an encoded record, without moving the buffer's position
+    public static String peekUserId(ByteBuffer buffer) {
+        int offset = buffer.position() + USER_ID_OFFSET;
+        byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+        buffer.duplicate().position(offset + 2).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkLength(String field, int length, int max) {
+        if (length > max) {
+            throw new IllegalArgumentException(field + " of " + length + " bytes does not fit a record, at most " + max);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.get() & 0xFF];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,172 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.event.Event;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of a single user's events, stored in array chunks of CHUNK_SIZE slots whose storage grows as they
+ * fill, see EventChunk.
+ *
+ * There is exactly one writer at a time (EventStore serializes appends per user), so appends need no lock.
+ * The writer fills the slot first and then publishes it by bumping the volatile size, which lets readers
+ * walk everything below the size they observed without locking. An event's sequence number is its position
+ * in the log, so positional lookups are a shift and a mask.
+ *
+ * A log can start at a sequence other than zero, e.g. when it is rebuilt from a snapshot, and the writer can drop
+ * whole chunks from the front once their events are held elsewhere. Events below the first resident sequence are
+ * not held in memory and are skipped by range reads. Eviction publishes the new first resident sequence before the
+ * new chunk directory, and readers read the directory first, so a reader either sees the chunks it needs or a first
+ * resident sequence that already excludes them.
+ *
+ * Chunks keep the events themselves by default. An off-heap log encodes them into columns outside the heap
+ * instead, see ColumnarEventChunk, and reads hand out a fresh copy of the event each time.
+ */
+public class EventLog {
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final String offHeapUserId; // null when chunks keep the events themselves
+    private volatile EventChunk[] chunks;
+    private volatile int size;
+    private volatile int firstResident;
+
+    public EventLog() {
+        this(0);
+    }
+
+    public EventLog(long firstSequence) {
+        this(null, firstSequence);
+    }
+
+    private EventLog(String offHeapUserId, long firstSequence) {
+        int directorySize = 1;
+        while ((long) directorySize << CHUNK_SHIFT <= firstSequence) {
+            directorySize <<= 1;
+        }
+        this.offHeapUserId = offHeapUserId;
+        chunks = new EventChunk[directorySize];
+        size = (int) firstSequence;
+        firstResident = (int) firstSequence;
+    }
+
+    // A log of the user's events held in off-heap columns
+    public static EventLog offHeap(String userId, long firstSequence) {
+        return new EventLog(userId, firstSequence);
+    }
+
+    // Must only be called by the single writer of this log
+    public long append(Event event) {
+        int index = size;
+        int chunk = index >>> CHUNK_SHIFT;
+        EventChunk[] directory = chunks;
+        if (chunk == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+            chunks = directory;
+        }
+        if (directory[chunk] == null) {
+            directory[chunk] = offHeapUserId == null
+                    ? new EventChunk.OnHeap()
+                    : new ColumnarEventChunk(offHeapUserId, (long) chunk << CHUNK_SHIFT);
+        }
+        directory[chunk].set(index & CHUNK_MASK, event);
+        size = index + 1; // publish
+        return index;
+    }
+
+    // Sequence the next event will get, which is also the number of events ever appended
+    public int size() {
+        return size;
+    }
+
+    public int firstResident() {
+        return firstResident;
+    }
+
+    public Event get(long sequence) {
+        int published = size;
+        EventChunk[] directory = chunks;
+        int first = firstResident;
+        if (sequence < first || sequence >= published) {
+            throw new IndexOutOfBoundsException("Sequence " + sequence + " outside of [" + first + ", " + published + ")");
+        }
+        return directory[(int) (sequence >>> CHUNK_SHIFT)].get((int) (sequence & CHUNK_MASK));
+    }
+
+    // Drops every chunk lying wholly below the sequence and returns the number of events dropped.
+    // Must only be called by the single writer of this log.
+    public int evictBefore(long sequence) {
+        int first = firstResident;
+        int boundary = (int) Math.min(sequence, size) & ~CHUNK_MASK;
+        if (boundary <= first) {
+            return 0;
+        }
+        EventChunk[] directory = Arrays.copyOf(chunks, chunks.length);
+        for (int chunk = first >>> CHUNK_SHIFT; chunk < boundary >>> CHUNK_SHIFT; chunk++) {
+            directory[chunk] = null;
+        }
+        firstResident = boundary;
+        chunks = directory;
+        return boundary - first;
+    }
+
+    // Visits events in [from, to) chunk by chunk, clamped to what has been published
+    public void forEach(long from, long to, Consumer<? super Event> action) {
+        int end = (int) Math.min(to, size);
+        EventChunk[] directory = chunks;
+        int index = (int) Math.max(from, firstResident);
+        while (index < end) {
+            EventChunk chunk = directory[index >>> CHUNK_SHIFT];
+            int offset = index & CHUNK_MASK;
+            int stop = Math.min(CHUNK_SIZE, offset + (end - index));
+            for (int i = offset; i < stop; i++) {
+                action.accept(chunk.get(i));
+            }
+            index += stop - offset;
+        }
+    }
+
+    // Read-only view over the events published at the time of the call
+    public List<Event> view() {
+        return view(0, size);
+    }
+
+    public List<Event> view(long from, long to) {
+        int end = (int) Math.min(to, size);
+        EventChunk[] directory = chunks;
+        int start = (int) Math.min(Math.max(from, firstResident), end);
+        return new View(directory, start, end);
+    }
+
+    private static final class View extends AbstractList<Event> implements RandomAccess {
+        private final EventChunk[] directory;
+        private final int from;
+        private final int to;
+
+        private View(EventChunk[] directory, int from, int to) {
+            this.directory = directory;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Event get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside of [0, " + (to - from) + ")");
+            }
+            int position = from + index;
+            return directory[position >>> CHUNK_SHIFT].get(position & CHUNK_MASK);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
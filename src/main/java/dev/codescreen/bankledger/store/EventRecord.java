@@ -0,0 +1,32 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.event.Event;
+
+/**
+ * An event together with everything needed to re-apply it to the store: the owning user and the effect it had
+ * on the running balance, in minor units of the base currency, when it was first recorded.
+ */
+public class EventRecord {
+
+    private final String userId;
+    private final Event event;
+    private final long balanceEffect;
+
+    public EventRecord(String userId, Event event, long balanceEffect) {
+        this.userId = userId;
+        this.event = event;
+        this.balanceEffect = balanceEffect;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public long getBalanceEffect() {
+        return balanceEffect;
+    }
+}
@@ -1,50 +1,753 @@
 package dev.codescreen.bankledger.store;
 
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
 import dev.codescreen.bankledger.event.Event;
-import org.springframework.stereotype.Component;
+import dev.codescreen.bankledger.store.cold.ColdSegmentStore;
+import dev.codescreen.bankledger.store.snapshot.AccountSnapshot;
+import dev.codescreen.bankledger.store.snapshot.SnapshotStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import dev.codescreen.bankledger.util.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
-@Component
 public class EventStore {
 
-    private final ConcurrentHashMap<String, List<Event>> eventsByUser = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, BigDecimal> lastSnapshotBalance = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, LocalDateTime> lastSnapshotTimestamp = new ConcurrentHashMap<>();
+    // Balances are kept as long minor units of the base currency
+    public static final String BASE_CURRENCY = "USD";
+    private static final int BASE_SCALE = Money.scaleOf(BASE_CURRENCY);
 
+    private static final Logger logger = LoggerFactory.getLogger(EventStore.class);
+    private static final int RECOVERY_BATCH_SIZE = 1024;
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+    // Where each event with a transaction id was stored. Covers the events appended or replayed since the store
+    // started, events only restored through a snapshot are not in it.
+    private final TransactionIndex transactions = new TransactionIndex();
+    private final LongAccumulator highestTransactionId = new LongAccumulator(Math::max, 0);
+    private final WriteAheadLog writeAheadLog; // null when the store is purely in memory
+    private final SnapshotStore snapshotStore; // null when snapshots are not taken
+    private final ColdSegmentStore coldStore; // null when every event stays in memory
+    private final TimeIndex timeIndex; // null when events are only indexed per account
+    private final boolean offHeap;
+    private final int recoveryThreads;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private long lastSnapshotPosition = -1; // guarded by snapshotLock
+    private final LongAdder eventsHeld = new LongAdder();
+    private volatile long eventsReplayed;
 
+    public EventStore() {
+        this(null);
+    }
+
+    public EventStore(WriteAheadLog writeAheadLog) {
+        this(writeAheadLog, null, 1);
+    }
+
+    public EventStore(WriteAheadLog writeAheadLog, SnapshotStore snapshotStore, int recoveryThreads) {
+        this(writeAheadLog, snapshotStore, null, recoveryThreads);
+    }
+
+    // With a cold store, every snapshot also moves the events it covers out of memory into cold segments
+    public EventStore(WriteAheadLog writeAheadLog, SnapshotStore snapshotStore, ColdSegmentStore coldStore, int recoveryThreads) {
+        this(writeAheadLog, snapshotStore, coldStore, null, recoveryThreads);
+    }
+
+    // With a time index, every stored and recovered event is also indexed by time across accounts
+    public EventStore(WriteAheadLog writeAheadLog, SnapshotStore snapshotStore, ColdSegmentStore coldStore, TimeIndex timeIndex,
+                      int recoveryThreads) {
+        this(writeAheadLog, snapshotStore, coldStore, timeIndex, false, recoveryThreads);
+    }
+
+    // Off heap, account logs keep their events encoded in columns outside the heap instead of as objects
+    public EventStore(WriteAheadLog writeAheadLog, SnapshotStore snapshotStore, ColdSegmentStore coldStore, TimeIndex timeIndex,
+                      boolean offHeap, int recoveryThreads) {
+        this.writeAheadLog = writeAheadLog;
+        this.snapshotStore = snapshotStore;
+        this.coldStore = coldStore;
+        this.timeIndex = timeIndex;
+        this.offHeap = offHeap;
+        this.recoveryThreads = Math.max(1, recoveryThreads);
+    }
+
+    // Rebuilds accounts from the latest snapshot plus the write-ahead log written after it.
+    // Must run before the store takes any writes.
+    public void recover() throws IOException {
+        if (writeAheadLog == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        long snapshotPosition = snapshotStore == null ? -1 : snapshotStore.loadLatest(snapshot -> {
+            Account account = newAccount(snapshot.getUserId(), snapshot.getNextSequence());
+            account.balance = snapshot.getBalance();
+            account.snapshotBalance = BigDecimal.valueOf(snapshot.getBalance(), BASE_SCALE);
+            account.snapshotTimestamp = snapshot.getTimestamp();
+            if (coldStore == null) {
+                account.checkpoints = new BalanceCheckpoints(snapshot.getNextSequence(), snapshot.getBalance(), snapshot.getTimestamp());
+            } else {
+                // the history before the snapshot can still be replayed from cold segments
+                account.checkpoints = new BalanceCheckpoints(0, 0, LocalDateTime.MIN);
+                account.checkpoints.record(snapshot.getNextSequence(), snapshot.getBalance(), snapshot.getTimestamp());
+            }
+            accounts.put(snapshot.getUserId(), account);
+        });
+        long replayed = replayTail(Math.max(snapshotPosition, 0));
+        eventsReplayed = replayed;
+        lastSnapshotPosition = snapshotPosition;
+        logger.info("Recovered {} accounts from snapshot at position {} and {} events from the write-ahead log tail in {} ms",
+                accounts.size(), snapshotPosition, replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Writes a snapshot of every account. Each account is captured under its own lock, so writes keep flowing,
+    // and records after the snapshot position that were already captured are skipped again on recovery by
+    // their sequence number. With a cold store, the events each account's snapshot covers are written to a cold
+    // segment that is durable before the snapshot commits, and only then dropped from memory.
+    public void takeSnapshot() throws IOException {
+        if (writeAheadLog == null || snapshotStore == null) {
+            return;
+        }
+        snapshotLock.lock();
+        try {
+            long walPosition = writeAheadLog.getWritePosition();
+            if (walPosition == lastSnapshotPosition) {
+                return; // nothing was written since the last snapshot
+            }
+            List<Account> archived = new ArrayList<>();
+            try (SnapshotStore.Writer writer = snapshotStore.open(walPosition);
+                 ColdSegmentStore.Writer cold = coldStore == null ? null : coldStore.open(walPosition)) {
+                for (Map.Entry<String, Account> entry : accounts.entrySet()) {
+                    AccountSnapshot snapshot = capture(entry.getKey(), entry.getValue());
+                    writer.write(snapshot);
+                    if (cold != null && archive(cold, entry.getKey(), entry.getValue(), snapshot.getNextSequence())) {
+                        archived.add(entry.getValue());
+                    }
+                }
+                // everything captured must be durable before the snapshot may stand in for the log
+                writeAheadLog.awaitDurable(writeAheadLog.getWritePosition());
+                if (cold != null) {
+                    cold.commit();
+                }
+                writer.commit();
+            }
+            lastSnapshotPosition = walPosition;
+            for (Account account : archived) {
+                account.lock.lock();
+                try {
+                    eventsHeld.add(-account.events.evictBefore(account.archivedUntil));
+                } finally {
+                    account.lock.unlock();
+                }
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
 
+    // Records the event without changing the running balance
     public void addEvent(String userId, Event event) {
-        eventsByUser.computeIfAbsent(userId, k -> Collections.synchronizedList(new LinkedList<>())).add(event);
+        addEvent(userId, event, 0);
+    }
+
+    // Appends the event and folds its effect, in minor units of the base currency, into the running balance.
+    // Both happen under the account lock so the balance always matches the events recorded for the user.
+    public long addEvent(String userId, Event event, long balanceEffect) {
+        Account account = accountOf(userId);
+        long walPosition;
+        long balance;
+        account.lock.lock();
+        try {
+            walPosition = append(userId, account, event, balanceEffect);
+            balance = account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+        awaitDurable(walPosition);
+        return balance;
+    }
+
+    // Atomic check-and-debit: the authorization is approved only if the balance covers the debit at the
+    // moment it is applied, and the decision, the event and the new balance are recorded as one step.
+    public long authorize(String userId, AuthorizationEvent event, long debit) {
+        Account account = accountOf(userId);
+        long walPosition;
+        long balance;
+        account.lock.lock();
+        try {
+            boolean approved = account.balance >= debit;
+            event.setResponseCode(approved ? ResponseCode.APPROVED : ResponseCode.DECLINED);
+            walPosition = append(userId, account, event, approved ? -debit : 0);
+            balance = account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+        awaitDurable(walPosition);
+        return balance;
+    }
+
+    // Non-blocking form of addEvent: the event is applied at once and the future completes with the balance once
+    // the event is durable, without a thread waiting for it
+    public CompletableFuture<Long> addEventAsync(String userId, Event event, long balanceEffect) {
+        Account account = accountOf(userId);
+        long walPosition;
+        long balance;
+        account.lock.lock();
+        try {
+            walPosition = append(userId, account, event, balanceEffect);
+            balance = account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+        return whenDurable(walPosition, balance);
+    }
+
+    // Non-blocking form of authorize
+    public CompletableFuture<Long> authorizeAsync(String userId, AuthorizationEvent event, long debit) {
+        Account account = accountOf(userId);
+        long walPosition;
+        long balance;
+        account.lock.lock();
+        try {
+            boolean approved = account.balance >= debit;
+            event.setResponseCode(approved ? ResponseCode.APPROVED : ResponseCode.DECLINED);
+            walPosition = append(userId, account, event, approved ? -debit : 0);
+            balance = account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+        return whenDurable(walPosition, balance);
+    }
+
+    // Batch form of addEvent for one user: a single lock acquisition and a single durability wait for the whole
+    // run. Returns the balance after each event. A run the running balance cannot hold throws ArithmeticException
+    // before any of it is recorded.
+    public long[] addEvents(String userId, List<? extends Event> events, long[] balanceEffects) {
+        Account account = accountOf(userId);
+        long[] balances = new long[events.size()];
+        long walPosition = 0;
+        account.lock.lock();
+        try {
+            checkRun(account.balance, balanceEffects);
+            for (int i = 0; i < balances.length; i++) {
+                walPosition = append(userId, account, events.get(i), balanceEffects[i]);
+                balances[i] = account.balance;
+            }
+        } finally {
+            account.lock.unlock();
+        }
+        awaitDurable(walPosition);
+        return balances;
+    }
+
+    // Batch form of authorize for one user, each debit is checked against the balance left by the ones before it
+    public long[] authorizeAll(String userId, List<AuthorizationEvent> events, long[] debits) {
+        Account account = accountOf(userId);
+        long[] balances = new long[events.size()];
+        long walPosition = 0;
+        account.lock.lock();
+        try {
+            for (int i = 0; i < balances.length; i++) {
+                boolean approved = account.balance >= debits[i];
+                events.get(i).setResponseCode(approved ? ResponseCode.APPROVED : ResponseCode.DECLINED);
+                walPosition = append(userId, account, events.get(i), approved ? -debits[i] : 0);
+                balances[i] = account.balance;
+            }
+        } finally {
+            account.lock.unlock();
+        }
+        awaitDurable(walPosition);
+        return balances;
+    }
+
+    // addEvent without the durability wait, for a caller that waits once for many events with awaitAllDurable
+    long addEventDeferred(String userId, Event event, long balanceEffect) {
+        Account account = accountOf(userId);
+        account.lock.lock();
+        try {
+            append(userId, account, event, balanceEffect);
+            return account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    // addEvents without the durability wait, see addEventDeferred
+    long[] addEventsDeferred(String userId, List<? extends Event> events, long[] balanceEffects) {
+        Account account = accountOf(userId);
+        long[] balances = new long[events.size()];
+        account.lock.lock();
+        try {
+            checkRun(account.balance, balanceEffects);
+            for (int i = 0; i < balances.length; i++) {
+                append(userId, account, events.get(i), balanceEffects[i]);
+                balances[i] = account.balance;
+            }
+            return balances;
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    // authorize without the durability wait, see addEventDeferred
+    long authorizeDeferred(String userId, AuthorizationEvent event, long debit) {
+        Account account = accountOf(userId);
+        account.lock.lock();
+        try {
+            boolean approved = account.balance >= debit;
+            event.setResponseCode(approved ? ResponseCode.APPROVED : ResponseCode.DECLINED);
+            append(userId, account, event, approved ? -debit : 0);
+            return account.balance;
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    // Applies a record shipped from the leader's write-ahead log on a follower. The follower logs it like a write of
+    // its own but does not wait for it to be durable, the leader already acknowledged it. A record applied before,
+    // when a stream resumes from an earlier position, is skipped by its sequence number once the event held there is
+    // found to be the same transaction. A different one means the logs diverged, which is refused like a gap.
+    public boolean applyReplicated(EventRecord record) {
+        Account account = accountOf(record.getUserId());
+        account.lock.lock();
+        try {
+            long sequence = record.getEvent().getSequence();
+            long expected = account.events.size();
+            if (sequence < expected) {
+                if (sequence >= account.events.firstResident()) {
+                    long held = account.events.get(sequence).getTransactionId();
+                    if (held != record.getEvent().getTransactionId()) {
+                        throw new IllegalStateException("Replication stream diverges at event " + sequence + " of user " + record.getUserId()
+                                + ": transaction " + record.getEvent().getTransactionId() + " where " + held + " is held");
+                    }
+                }
+                return false;
+            }
+            if (sequence > expected) {
+                throw new IllegalStateException("Replication stream is missing events " + expected + " to " + (sequence - 1) + " of user " + record.getUserId());
+            }
+            append(record.getUserId(), account, record.getEvent(), record.getBalanceEffect());
+            return true;
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    // Waits until every record appended so far is durable
+    public void awaitAllDurable() {
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(writeAheadLog.getWritePosition());
+        }
+    }
+
+    // Running balance in minor units of the base currency
+    public long getBalance(String userId) {
+        Account account = accounts.get(userId);
+        return account == null ? 0 : account.balance;
+    }
+
+    public boolean hasAccount(String userId) {
+        return accounts.containsKey(userId);
+    }
+
+    // Latest balance checkpoint at or before the given time, from which the events up to that time can be replayed
+    // to get the balance as of then. Null when the account is unknown or its history before that time is no longer
+    // held, i.e. it was restored from a snapshot without cold segments.
+    public BalanceCheckpoint getCheckpointAsOf(String userId, LocalDateTime timestamp) {
+        Account account = accounts.get(userId);
+        if (account == null) {
+            return null;
+        }
+        account.lock.lock();
+        try {
+            BalanceCheckpoints checkpoints = account.checkpoints;
+            int index = checkpoints.floor(timestamp);
+            if (index < 0) {
+                return null;
+            }
+            return new BalanceCheckpoint(checkpoints.sequenceAt(index), checkpoints.balanceAt(index), checkpoints.timestampAt(index));
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    public Set<String> getUserIds() {
+        return Collections.unmodifiableSet(accounts.keySet());
+    }
+
+    // Events held in memory across all accounts
+    public long getEventCount() {
+        return eventsHeld.sum();
+    }
+
+    // Events recovery replayed from the write-ahead log on top of the snapshot
+    public long getReplayedEventCount() {
+        return eventsReplayed;
     }
 
     public List<Event> getEventsOfUser(String userId) {
-        return eventsByUser.getOrDefault(userId, Collections.emptyList());
+        return getEvents(userId, 0, Long.MAX_VALUE);
+    }
+
+    // Null when the account or the sequence is not held here, e.g. the sequence was archived without cold segments or
+    // lies past the log of an account that was imported again
+    public Event getEvent(String userId, long sequence) {
+        List<Event> events = getEvents(userId, sequence, sequence + 1);
+        return events.isEmpty() || events.get(0).getSequence() != sequence ? null : events.get(0);
+    }
+
+    // Events in [fromSequence, toSequence), read from cold segments below the first resident event
+    public List<Event> getEvents(String userId, long fromSequence, long toSequence) {
+        Account account = accounts.get(userId);
+        if (account == null) {
+            return Collections.emptyList();
+        }
+        List<Event> resident = account.events.view(fromSequence, toSequence);
+        if (coldStore == null) {
+            return resident;
+        }
+        long coldEnd = resident.isEmpty() ? toSequence : resident.get(0).getSequence();
+        List<Event> cold = coldStore.view(userId, fromSequence, coldEnd);
+        return cold.isEmpty() ? resident : new Concatenated(cold, resident);
+    }
+
+    // Event with the given transaction id, null when there is none or its account is no longer held here
+    public Event getEventByTransactionId(long transactionId) {
+        Event event = transactions.resolve(transactionId, this::getEvent);
+        return event == null || event.getTransactionId() != transactionId ? null : event;
+    }
+
+    // Highest transaction id of the events appended or replayed since the store started, 0 when there was none
+    public long highestTransactionId() {
+        return highestTransactionId.get();
+    }
+
+    // Takes over an account moved here from another node: its whole history, numbered from zero, and its balance.
+    // The events are logged like new ones, with the balance carried by the last, so recovery rebuilds the same
+    // account.
+    public void importAccount(String userId, List<Event> events, long balance) {
+        if (events.isEmpty() || events.get(0).getSequence() != 0) {
+            throw new IllegalArgumentException("Account " + userId + " must be moved with its whole history");
+        }
+        Account account = newAccount(userId, 0);
+        long walPosition = 0;
+        account.lock.lock();
+        try {
+            if (accounts.putIfAbsent(userId, account) != null) {
+                throw new IllegalStateException("Account " + userId + " already exists");
+            }
+            for (int i = 0; i < events.size(); i++) {
+                walPosition = append(userId, account, events.get(i), i == events.size() - 1 ? balance : 0);
+            }
+            // the balances in between are not known, as-of queries replay the moved history instead
+            account.checkpoints = new BalanceCheckpoints(0, 0, LocalDateTime.MIN);
+            account.checkpoints.record(events.size(), balance, events.get(events.size() - 1).getTimestamp());
+        } finally {
+            account.lock.unlock();
+        }
+        awaitDurable(walPosition);
+    }
+
+    // Forgets an account that moved to another node. Its records stay in this node's write-ahead log, so the caller
+    // must drop it again after a recovery.
+    public void removeAccount(String userId) {
+        Account account = accounts.remove(userId);
+        if (account != null) {
+            account.lock.lock();
+            try {
+                eventsHeld.add(account.events.firstResident() - account.events.size());
+                account.events.forEach(account.events.firstResident(), account.events.size(), event -> transactions.remove(event.getTransactionId()));
+                transactions.removeAccount(userId);
+            } finally {
+                account.lock.unlock();
+            }
+        }
     }
 
     public BigDecimal getLatestSnapshotBalance(String userId) {
-        return lastSnapshotBalance.getOrDefault(userId, BigDecimal.ZERO);
+        Account account = accounts.get(userId);
+        if (account == null) {
+            return BigDecimal.ZERO;
+        }
+        account.lock.lock();
+        try {
+            return account.snapshotBalance;
+        } finally {
+            account.lock.unlock();
+        }
     }
 
+    // Snapshots only move forward in time, so a late update carrying an older timestamp is ignored
     public void updateSnapshot(String userId, BigDecimal balance, LocalDateTime timestamp) {
-        synchronized (this) {
-            lastSnapshotBalance.put(userId, balance);
-            lastSnapshotTimestamp.put(userId, timestamp);
+        Account account = accountOf(userId);
+        account.lock.lock();
+        try {
+            if (timestamp.isBefore(account.snapshotTimestamp)) {
+                return;
+            }
+            account.snapshotBalance = balance;
+            account.snapshotTimestamp = timestamp;
+        } finally {
+            account.lock.unlock();
         }
     }
 
     public List<Event> getEventsSinceLastSnapshot(String userId) {
-        LocalDateTime snapshotTimestamp = lastSnapshotTimestamp.getOrDefault(userId, LocalDateTime.MIN);
-        return getEventsOfUser(userId).stream()
-                .filter(event -> event.getTimestamp().isAfter(snapshotTimestamp))
-                .collect(Collectors.toList());
+        Account account = accounts.get(userId);
+        if (account == null) {
+            return Collections.emptyList();
+        }
+        LocalDateTime snapshotTimestamp;
+        account.lock.lock();
+        try {
+            snapshotTimestamp = account.snapshotTimestamp;
+        } finally {
+            account.lock.unlock();
+        }
+        List<Event> events = new ArrayList<>();
+        account.events.forEach(0, account.events.size(), event -> {
+            if (event.getTimestamp().isAfter(snapshotTimestamp)) {
+                events.add(event);
+            }
+        });
+        return events;
     }
 
+    // Hands the resident events below nextSequence that are not in a cold segment yet to the writer, returning
+    // whether a whole chunk can then be dropped. Published events never change, so they are read without the lock.
+    private boolean archive(ColdSegmentStore.Writer cold, String userId, Account account, long nextSequence) throws IOException {
+        long firstResident = account.events.firstResident();
+        long start = coldStore.coveredUntil(userId, firstResident);
+        if (start < nextSequence) {
+            cold.write(userId, account.events.view(start, nextSequence));
+        }
+        account.archivedUntil = nextSequence;
+        return (nextSequence & -EventLog.CHUNK_SIZE) > firstResident;
+    }
 
+    private AccountSnapshot capture(String userId, Account account) {
+        account.lock.lock();
+        try {
+            long nextSequence = account.events.size();
+            LocalDateTime timestamp = nextSequence > account.events.firstResident()
+                    ? account.events.get(nextSequence - 1).getTimestamp()
+                    : account.snapshotTimestamp;
+            if (!timestamp.isBefore(account.snapshotTimestamp)) {
+                account.snapshotBalance = BigDecimal.valueOf(account.balance, BASE_SCALE);
+                account.snapshotTimestamp = timestamp;
+            }
+            return new AccountSnapshot(userId, account.balance, nextSequence, timestamp);
+        } finally {
+            account.lock.unlock();
+        }
+    }
+
+    // Replays the log from the given position with one worker per shard of users. Every user belongs to exactly
+    // one shard, so workers apply records without locking and each account still sees its events in order.
+    private long replayTail(long fromPosition) throws IOException {
+        List<BlockingQueue<List<ByteBuffer>>> queues = new ArrayList<>();
+        List<Future<Long>> workers = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(recoveryThreads);
+        try {
+            for (int i = 0; i < recoveryThreads; i++) {
+                BlockingQueue<List<ByteBuffer>> queue = new ArrayBlockingQueue<>(16);
+                queues.add(queue);
+                workers.add(executor.submit(() -> replayShard(queue)));
+            }
+            List<List<ByteBuffer>> batches = new ArrayList<>();
+            for (int i = 0; i < recoveryThreads; i++) {
+                batches.add(new ArrayList<>(RECOVERY_BATCH_SIZE));
+            }
+            try {
+                writeAheadLog.replay(fromPosition, (position, payload) -> {
+                    int shard = Math.floorMod(EventCodec.peekUserId(payload).hashCode(), recoveryThreads);
+                    List<ByteBuffer> batch = batches.get(shard);
+                    batch.add(payload);
+                    if (batch.size() == RECOVERY_BATCH_SIZE) {
+                        put(queues.get(shard), batch);
+                        batches.set(shard, new ArrayList<>(RECOVERY_BATCH_SIZE));
+                    }
+                });
+            } finally {
+                for (int i = 0; i < recoveryThreads; i++) {
+                    if (!batches.get(i).isEmpty()) {
+                        put(queues.get(i), batches.get(i));
+                    }
+                    put(queues.get(i), Collections.emptyList()); // end of the log
+                }
+            }
+            long replayed = 0;
+            for (Future<Long> worker : workers) {
+                replayed += worker.get();
+            }
+            return replayed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recovering the event store", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to recover the event store", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long replayShard(BlockingQueue<List<ByteBuffer>> queue) throws InterruptedException {
+        long replayed = 0;
+        RuntimeException failure = null;
+        List<ByteBuffer> batch;
+        while (!(batch = queue.take()).isEmpty()) {
+            if (failure != null) {
+                continue; // keep draining so the reader never blocks on a full queue
+            }
+            try {
+                for (ByteBuffer payload : batch) {
+                    if (applyRecovered(EventCodec.decode(payload))) {
+                        replayed++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return replayed;
+    }
+
+    // Only called by the shard owning the user, before the store takes any writes
+    private boolean applyRecovered(EventRecord record) {
+        Account account = accountOf(record.getUserId());
+        long sequence = record.getEvent().getSequence();
+        long expected = account.events.size();
+        if (sequence < expected) {
+            return false; // already part of the snapshot
+        }
+        if (sequence > expected) {
+            throw new IllegalStateException("Write-ahead log is missing events " + expected + " to " + (sequence - 1) + " of user " + record.getUserId());
+        }
+        long balance;
+        try {
+            balance = Math.addExact(account.balance, record.getBalanceEffect());
+        } catch (ArithmeticException e) {
+            throw new IllegalStateException("Write-ahead log takes the balance of user " + record.getUserId() + " beyond a long at sequence " + sequence, e);
+        }
+        account.events.append(record.getEvent());
+        account.balance = balance;
+        account.checkpoints.afterEvent(record.getEvent(), account.balance);
+        indexTransaction(record.getUserId(), record.getEvent());
+        eventsHeld.increment();
+        if (timeIndex != null) {
+            timeIndex.add(record.getEvent());
+        }
+        return true;
+    }
+
+    private static void put(BlockingQueue<List<ByteBuffer>> queue, List<ByteBuffer> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recovering the event store", e);
+        }
+    }
+
+    private Account accountOf(String userId) {
+        return accounts.computeIfAbsent(userId, k -> newAccount(k, 0));
+    }
+
+    private Account newAccount(String userId, long nextSequence) {
+        return new Account(offHeap ? EventLog.offHeap(userId, nextSequence) : new EventLog(nextSequence));
+    }
+
+    // Caller must hold the account lock, which also makes it the single writer of the account's EventLog.
+    // The record is handed to the write-ahead log before it becomes visible, and the returned position
+    // must be awaited (outside the lock) before the caller acknowledges the event. An effect the running balance
+    // cannot hold throws ArithmeticException before anything is recorded.
+    private long append(String userId, Account account, Event event, long balanceEffect) {
+        long balance = Math.addExact(account.balance, balanceEffect);
+        event.setSequence(account.events.size());
+        long walPosition = writeAheadLog == null ? 0 : writeAheadLog.append(EventCodec.encode(userId, event, balanceEffect));
+        account.events.append(event);
+        account.balance = balance;
+        account.checkpoints.afterEvent(event, account.balance);
+        indexTransaction(userId, event);
+        eventsHeld.increment();
+        if (timeIndex != null) {
+            timeIndex.add(event);
+        }
+        return walPosition;
+    }
+
+    // Throws ArithmeticException when the balance cannot take every effect of the run in turn
+    private static void checkRun(long balance, long[] balanceEffects) {
+        for (long effect : balanceEffects) {
+            balance = Math.addExact(balance, effect);
+        }
+    }
+
+    private void indexTransaction(String userId, Event event) {
+        if (event.getTransactionId() != 0) {
+            transactions.put(event.getTransactionId(), userId, event.getSequence());
+            highestTransactionId.accumulate(event.getTransactionId());
+        }
+    }
+
+    private CompletableFuture<Long> whenDurable(long walPosition, long balance) {
+        if (writeAheadLog == null) {
+            return CompletableFuture.completedFuture(balance);
+        }
+        return writeAheadLog.whenDurable(walPosition).thenApply(durable -> balance);
+    }
+
+    private void awaitDurable(long walPosition) {
+        if (writeAheadLog != null) {
+            writeAheadLog.awaitDurable(walPosition);
+        }
+    }
+
+    private static final class Concatenated extends AbstractList<Event> implements RandomAccess {
+        private final List<Event> first;
+        private final List<Event> second;
+
+        private Concatenated(List<Event> first, List<Event> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Event get(int index) {
+            return index < first.size() ? first.get(index) : second.get(index - first.size());
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+    }
 }
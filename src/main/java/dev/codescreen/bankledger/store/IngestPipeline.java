@@ -0,0 +1,220 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes writes to the event store through one bounded queue per shard, each drained by a single writer thread.
+ *
+ * A user always maps to the same shard, so every account has exactly one writer and its events are applied in the
+ * order they were queued. The account lock is never contended on this path. A writer takes whatever has queued up,
+ * to at most batchSize commands, applies them, and then waits once for the write-ahead log to cover the whole batch
+ * before it answers the waiting requests. A full queue blocks the request thread, which bounds memory under
+ * overload.
+ */
+public class IngestPipeline implements Closeable {
+
+    private static final Command STOP = new Command(null) {
+        @Override
+        long[] apply(EventStore eventStore) {
+            return null;
+        }
+    };
+
+    private final EventStore eventStore;
+    private final List<BlockingQueue<Command>> queues = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private final int batchSize;
+    private volatile boolean closed;
+
+    public IngestPipeline(EventStore eventStore, int shards, int queueCapacity, int batchSize) {
+        this.eventStore = eventStore;
+        this.batchSize = batchSize;
+        for (int i = 0; i < shards; i++) {
+            BlockingQueue<Command> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            Thread writer = new Thread(() -> drain(queue), "ingest-writer-" + i);
+            writer.setDaemon(true);
+            writers.add(writer);
+            writer.start();
+        }
+    }
+
+    public long addEvent(String userId, Event event, long balanceEffect) {
+        return submit(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                return new long[]{eventStore.addEventDeferred(userId, event, balanceEffect)};
+            }
+        })[0];
+    }
+
+    public long authorize(String userId, AuthorizationEvent event, long debit) {
+        return submit(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                return new long[]{eventStore.authorizeDeferred(userId, event, debit)};
+            }
+        })[0];
+    }
+
+    // Same as addEvent, completing once the batch holding the event is durable instead of blocking for it. Only a
+    // full queue still blocks the caller.
+    public CompletableFuture<Long> addEventAsync(String userId, Event event, long balanceEffect) {
+        return submitAsync(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                return new long[]{eventStore.addEventDeferred(userId, event, balanceEffect)};
+            }
+        }).thenApply(balances -> balances[0]);
+    }
+
+    public CompletableFuture<Long> authorizeAsync(String userId, AuthorizationEvent event, long debit) {
+        return submitAsync(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                return new long[]{eventStore.authorizeDeferred(userId, event, debit)};
+            }
+        }).thenApply(balances -> balances[0]);
+    }
+
+    // All events of the user are applied back to back by the shard writer, or none of them when the balance cannot
+    // hold the run. Returns the balance after each.
+    public long[] addEvents(String userId, List<? extends Event> events, long[] balanceEffects) {
+        return submit(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                return eventStore.addEventsDeferred(userId, events, balanceEffects);
+            }
+        });
+    }
+
+    public long[] authorizeAll(String userId, List<AuthorizationEvent> events, long[] debits) {
+        return submit(new Command(userId) {
+            @Override
+            long[] apply(EventStore eventStore) {
+                long[] balances = new long[events.size()];
+                for (int i = 0; i < balances.length; i++) {
+                    balances[i] = eventStore.authorizeDeferred(userId, events.get(i), debits[i]);
+                }
+                return balances;
+            }
+        });
+    }
+
+    // Stops taking commands, lets the writers finish what was queued and waits for them
+    @Override
+    public void close() {
+        closed = true;
+        for (BlockingQueue<Command> queue : queues) {
+            enqueue(queue, STOP);
+        }
+        for (Thread writer : writers) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long[] submit(Command command) {
+        try {
+            return submitAsync(command).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<long[]> submitAsync(Command command) {
+        if (closed) {
+            throw new IllegalStateException("Ingest pipeline is closed");
+        }
+        enqueue(queues.get(Math.floorMod(command.userId.hashCode(), queues.size())), command);
+        return command.result;
+    }
+
+    private static void enqueue(BlockingQueue<Command> queue, Command command) {
+        try {
+            queue.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a write", e);
+        }
+    }
+
+    private void drain(BlockingQueue<Command> queue) {
+        List<Command> batch = new ArrayList<>(batchSize);
+        List<long[]> results = new ArrayList<>(batchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            for (Command command : batch) {
+                if (command == STOP) {
+                    stopping = true;
+                    results.add(null);
+                    continue;
+                }
+                try {
+                    results.add(command.apply(eventStore));
+                } catch (RuntimeException e) {
+                    results.add(null);
+                    command.result.completeExceptionally(e);
+                }
+            }
+            RuntimeException durabilityFailure = null;
+            try {
+                eventStore.awaitAllDurable();
+            } catch (RuntimeException e) {
+                durabilityFailure = e;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Command command = batch.get(i);
+                if (command == STOP || command.result.isDone()) {
+                    continue;
+                }
+                if (durabilityFailure != null) {
+                    command.result.completeExceptionally(durabilityFailure);
+                } else {
+                    command.result.complete(results.get(i));
+                }
+            }
+            batch.clear();
+            results.clear();
+        }
+        // anything that raced past the closed check is refused rather than left waiting
+        for (Command command; (command = queue.poll()) != null; ) {
+            command.result.completeExceptionally(new IllegalStateException("Ingest pipeline is closed"));
+        }
+    }
+
+    private abstract static class Command {
+        private final String userId;
+        private final CompletableFuture<long[]> result = new CompletableFuture<>();
+
+        private Command(String userId) {
+            this.userId = userId;
+        }
+
+        // Runs on the shard writer, returns the balance after each event
+        abstract long[] apply(EventStore eventStore);
+    }
+}
@@ -0,0 +1,278 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.dto.EventTotals;
+import dev.codescreen.bankledger.enums.EventKind;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.util.Money;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Secondary index of the events of every account by the minute they happened, for queries across accounts.
+ *
+ * A minute bucket keeps, per kind and currency, a compact reference to each event (its account, sequence,
+ * timestamp and base amount) plus a running count and total of the base amounts in LongAdders, so writers of
+ * different accounts never contend on a shared total. A query for one kind or currency only walks the matching
+ * references and reads the events it returns through the store, wherever they are held. Totals over whole minutes
+ * add up aggregates without touching any reference; only the partial minutes at either end of a range are scanned.
+ * Buckets more than retentionMinutes older than the newest one are dropped. Events recorded before events carried
+ * their base amount count towards totals with a base amount of zero.
+ */
+public class TimeIndex {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final Comparator<Ref> BY_POSITION = Comparator.<Ref>comparingLong(ref -> ref.epochNanos)
+            .thenComparing(ref -> ref.userId).thenComparingLong(ref -> ref.sequence);
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    private final AtomicLong newestMinute = new AtomicLong(Long.MIN_VALUE);
+    private final long retentionMinutes;
+
+    public TimeIndex(long retentionMinutes) {
+        this.retentionMinutes = retentionMinutes;
+    }
+
+    // Called by the writer of the event's account once the event is stored
+    void add(Event event) {
+        long minute = minuteOf(event.getTimestamp());
+        long newest = newestMinute.accumulateAndGet(minute, Math::max);
+        if (minute < newest - retentionMinutes) {
+            return;
+        }
+        Bucket bucket = buckets.get(minute);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(minute, k -> new Bucket());
+            buckets.headMap(newest - retentionMinutes).clear();
+        }
+        bucket.slot(kindOf(event), event.getCurrency()).add(new Ref(event.getUserId(), event.getSequence(),
+                epochNanos(event.getTimestamp()), event.hasBaseAmount() ? event.getBaseAmount() : 0));
+    }
+
+    // Events with a timestamp in [from, to), of the kind and currency when given, and after the given position when
+    // there is one, in position order and at most limit of them. Events are read through the store, those it no
+    // longer holds are left out.
+    public List<Event> find(LocalDateTime from, LocalDateTime to, EventKind kind, String currency, Position after, int limit,
+                            BiFunction<String, Long, Event> events) {
+        long fromNanos = epochNanos(from);
+        long toNanos = epochNanos(to);
+        long firstMinute = minuteOf(from);
+        if (after != null) {
+            firstMinute = Math.max(firstMinute, Math.floorDiv(after.epochNanos, 60 * NANOS_PER_SECOND));
+        }
+        List<Event> found = new ArrayList<>();
+        if (firstMinute > minuteOf(to)) {
+            return found;
+        }
+        for (Bucket bucket : buckets.subMap(firstMinute, true, minuteOf(to), true).values()) {
+            List<Ref> matches = new ArrayList<>();
+            for (Slot slot : bucket.slots(kind, currency)) {
+                for (Ref ref : slot.refs) {
+                    if (ref.within(fromNanos, toNanos) && (after == null || after.isBefore(ref))) {
+                        matches.add(ref);
+                    }
+                }
+            }
+            matches.sort(BY_POSITION);
+            for (Ref ref : matches) {
+                if (found.size() == limit) {
+                    return found;
+                }
+                Event event = events.apply(ref.userId, ref.sequence);
+                if (event != null) {
+                    found.add(event);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Count and total base amount of the events with a timestamp in [from, to) per currency and kind, ordered by both
+    public List<EventTotals> totals(LocalDateTime from, LocalDateTime to, String currency) {
+        long fromNanos = epochNanos(from);
+        long toNanos = epochNanos(to);
+        Map<String, Map<EventKind, long[]>> totals = new TreeMap<>();
+        for (Map.Entry<Long, Bucket> entry : buckets.subMap(minuteOf(from), true, minuteOf(to), true).entrySet()) {
+            LocalDateTime start = LocalDateTime.ofEpochSecond(entry.getKey() * 60, 0, ZoneOffset.UTC);
+            boolean whole = !start.isBefore(from) && !start.plusMinutes(1).isAfter(to);
+            for (EventKind kind : EventKind.values()) {
+                for (Map.Entry<String, Slot> slot : entry.getValue().slots.get(kind).entrySet()) {
+                    if (currency != null && !currency.equals(slot.getKey())) {
+                        continue;
+                    }
+                    long[] row = totals.computeIfAbsent(slot.getKey(), k -> new EnumMap<>(EventKind.class))
+                            .computeIfAbsent(kind, k -> new long[2]);
+                    if (whole) {
+                        row[0] += slot.getValue().count.sum();
+                        row[1] += slot.getValue().total.sum();
+                    } else {
+                        for (Ref ref : slot.getValue().refs) {
+                            if (ref.within(fromNanos, toNanos)) {
+                                row[0]++;
+                                row[1] += ref.baseAmount;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        List<EventTotals> rows = new ArrayList<>();
+        for (Map.Entry<String, Map<EventKind, long[]>> byCurrency : totals.entrySet()) {
+            for (Map.Entry<EventKind, long[]> row : byCurrency.getValue().entrySet()) {
+                if (row.getValue()[0] > 0) {
+                    rows.add(new EventTotals(byCurrency.getKey(), row.getKey(), row.getValue()[0],
+                            Money.ofMinor(row.getValue()[1], EventStore.BASE_CURRENCY).toBigDecimal()));
+                }
+            }
+        }
+        return rows;
+    }
+
+    static EventKind kindOf(Event event) {
+        if (!(event instanceof AuthorizationEvent)) {
+            return EventKind.LOAD;
+        }
+        return ((AuthorizationEvent) event).getResponseCode() == ResponseCode.APPROVED ? EventKind.APPROVED : EventKind.DECLINED;
+    }
+
+    private static long minuteOf(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    // Saturates outside the years a long of nanos covers, which only matters for the bounds of a query
+    private static long epochNanos(LocalDateTime timestamp) {
+        long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+        if (seconds >= Long.MAX_VALUE / NANOS_PER_SECOND) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds <= Long.MIN_VALUE / NANOS_PER_SECOND) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    private static final class Bucket {
+        // filled once here and never changed, only the per-currency maps are concurrent
+        private final Map<EventKind, Map<String, Slot>> slots = new EnumMap<>(EventKind.class);
+
+        private Bucket() {
+            for (EventKind kind : EventKind.values()) {
+                slots.put(kind, new ConcurrentHashMap<>());
+            }
+        }
+
+        private Slot slot(EventKind kind, String currency) {
+            Map<String, Slot> byCurrency = slots.get(kind);
+            Slot slot = byCurrency.get(currency);
+            return slot != null ? slot : byCurrency.computeIfAbsent(currency, k -> new Slot());
+        }
+
+        private List<Slot> slots(EventKind kind, String currency) {
+            List<Slot> matching = new ArrayList<>();
+            for (EventKind candidate : EventKind.values()) {
+                if (kind != null && kind != candidate) {
+                    continue;
+                }
+                if (currency == null) {
+                    matching.addAll(slots.get(candidate).values());
+                } else {
+                    Slot slot = slots.get(candidate).get(currency);
+                    if (slot != null) {
+                        matching.add(slot);
+                    }
+                }
+            }
+            return matching;
+        }
+    }
+
+    private static final class Slot {
+        private final ConcurrentLinkedQueue<Ref> refs = new ConcurrentLinkedQueue<>();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        private void add(Ref ref) {
+            refs.add(ref);
+            count.increment();
+            total.add(ref.baseAmount);
+        }
+    }
+
+    // Place of an event in the order find returns them: its timestamp, then its account and sequence, which tell
+    // apart events stamped alike
+    public static final class Position {
+        private final long epochNanos;
+        private final String userId;
+        private final long sequence;
+
+        private Position(long epochNanos, String userId, long sequence) {
+            this.epochNanos = epochNanos;
+            this.userId = userId;
+            this.sequence = sequence;
+        }
+
+        public static Position of(Event event) {
+            return new Position(epochNanos(event.getTimestamp()), event.getUserId(), event.getSequence());
+        }
+
+        // Null when the text is not a position
+        public static Position parse(String text) {
+            String[] parts = text.split(":", 3);
+            if (parts.length < 3) {
+                return null;
+            }
+            try {
+                return new Position(Long.parseLong(parts[0]), parts[2], Long.parseLong(parts[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private boolean isBefore(Ref ref) {
+            if (epochNanos != ref.epochNanos) {
+                return epochNanos < ref.epochNanos;
+            }
+            int byUser = userId.compareTo(ref.userId);
+            return byUser != 0 ? byUser < 0 : sequence < ref.sequence;
+        }
+
+        // epochNanos:sequence:userId, the userId last since it may hold any character
+        @Override
+        public String toString() {
+            return epochNanos + ":" + sequence + ":" + userId;
+        }
+    }
+
+    // Where an event is held, with what a query filters and totals on
+    private static final class Ref {
+        private final String userId;
+        private final long sequence;
+        private final long epochNanos;
+        private final long baseAmount;
+
+        private Ref(String userId, long sequence, long epochNanos, long baseAmount) {
+            this.userId = userId;
+            this.sequence = sequence;
+            this.epochNanos = epochNanos;
+            this.baseAmount = baseAmount;
+        }
+
+        private boolean within(long fromNanos, long toNanos) {
+            return epochNanos >= fromNanos && epochNanos < toNanos;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package dev.codescreen.bankledger.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Where each event with a transaction id is stored, as its account and sequence, kept in primitive arrays.
+ *
+ * Accounts are numbered once, so an entry is the id, the account's number and the sequence: 20 bytes in open
+ * addressed arrays instead of a map node, a boxed key and a location object per event. Ids are spread over STRIPES
+ * tables, each with its own lock held only for the probe, so writers of different accounts rarely meet. Id 0 means
+ * no transaction id and is never indexed. Numbers of accounts that were removed resolve to nothing.
+ */
+final class TransactionIndex {
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<String, Integer> numbers = new ConcurrentHashMap<>();
+    private final Map<Integer, String> userIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNumber = new AtomicInteger();
+
+    TransactionIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void put(long transactionId, String userId, long sequence) {
+        Integer number = numbers.get(userId);
+        if (number == null) {
+            number = numbers.computeIfAbsent(userId, k -> {
+                int assigned = nextNumber.getAndIncrement();
+                userIds.put(assigned, k);
+                return assigned;
+            });
+        }
+        long hash = hash(transactionId);
+        stripes[(int) (hash >>> STRIPE_SHIFT)].put(hash, transactionId, number, sequence);
+    }
+
+    // What the reader returns for the account and sequence of the id, null when the id is not indexed
+    <T> T resolve(long transactionId, BiFunction<String, Long, T> reader) {
+        long hash = hash(transactionId);
+        Stripe stripe = stripes[(int) (hash >>> STRIPE_SHIFT)];
+        int number;
+        long sequence;
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(hash, transactionId);
+            if (slot < 0) {
+                return null;
+            }
+            number = stripe.accounts[slot];
+            sequence = stripe.sequences[slot];
+        } finally {
+            stripe.lock.unlock();
+        }
+        String userId = userIds.get(number);
+        return userId == null ? null : reader.apply(userId, sequence);
+    }
+
+    void remove(long transactionId) {
+        long hash = hash(transactionId);
+        stripes[(int) (hash >>> STRIPE_SHIFT)].remove(hash, transactionId);
+    }
+
+    // Forgets the account's number, its entries resolve to nothing until they are removed
+    void removeAccount(String userId) {
+        Integer number = numbers.remove(userId);
+        if (number != null) {
+            userIds.remove(number);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private static long hash(long transactionId) {
+        return transactionId * 0x9E3779B97F4A7C15L;
+    }
+
+    // Linear probing over the bits of the hash below the stripe's, removal shifts the rest of the run back
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] accounts = new int[INITIAL_CAPACITY];
+        private long[] sequences = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private void put(long hash, long transactionId, int account, long sequence) {
+            lock.lock();
+            try {
+                int slot = find(hash, transactionId);
+                if (slot < 0) {
+                    if (size + 1 > keys.length - (keys.length >>> 2)) {
+                        resize();
+                    }
+                    slot = home(hash, keys.length);
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    keys[slot] = transactionId;
+                    size++;
+                }
+                accounts[slot] = account;
+                sequences[slot] = sequence;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(long hash, long transactionId) {
+            lock.lock();
+            try {
+                int slot = find(hash, transactionId);
+                if (slot < 0) {
+                    return;
+                }
+                int mask = keys.length - 1;
+                int next = slot;
+                while (true) {
+                    next = (next + 1) & mask;
+                    if (keys[next] == 0) {
+                        break;
+                    }
+                    int home = home(hash(keys[next]), keys.length);
+                    // an entry whose home lies cyclically in (slot, next] is still reachable, any other fills the gap
+                    boolean reachable = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+                    if (!reachable) {
+                        keys[slot] = keys[next];
+                        accounts[slot] = accounts[next];
+                        sequences[slot] = sequences[next];
+                        slot = next;
+                    }
+                }
+                keys[slot] = 0;
+                size--;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Caller must hold the lock. Slot of the id, or -1
+        private int find(long hash, long transactionId) {
+            int mask = keys.length - 1;
+            for (int slot = home(hash, keys.length); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == transactionId) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldAccounts = accounts;
+            long[] oldSequences = sequences;
+            keys = new long[oldKeys.length * 2];
+            accounts = new int[keys.length];
+            sequences = new long[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = home(hash(oldKeys[i]), keys.length);
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & (keys.length - 1);
+                    }
+                    keys[slot] = oldKeys[i];
+                    accounts[slot] = oldAccounts[i];
+                    sequences[slot] = oldSequences[i];
+                }
+            }
+        }
+
+        private static int home(long hash, int capacity) {
+            return (int) (hash >>> 26) & (capacity - 1);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package dev.codescreen.bankledger.store.cold;
+
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.store.EventCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, compressed segment files holding events that were moved out of memory.
+ *
+ * Each segment is written by one snapshot. It holds blocks of at most BLOCK_EVENTS consecutive events of one user,
+ * aligned on sequence numbers and deflated one by one, followed by an index of every block. A segment is written to
+ * a temporary file, fsynced and atomically renamed, and only then are its blocks added to the in-memory index, so
+ * readers never see a block that is not durable. A read inflates just the block holding the requested sequence.
+ */
+public class ColdSegmentStore {
+
+    public static final int BLOCK_EVENTS = 1024;
+    private static final Logger logger = LoggerFactory.getLogger(ColdSegmentStore.class);
+    private static final int MAGIC = 0x4C434F4C; // "LCOL"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "cold-";
+    private static final String SUFFIX = ".seg";
+    private static final int TRAILER_BYTES = 8 + 4;
+
+    private final Path directory;
+    // userId -> first sequence of a block -> block
+    private final Map<String, NavigableMap<Long, Block>> index = new ConcurrentHashMap<>();
+
+    public ColdSegmentStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.sorted().collect(Collectors.toList())) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(path); // a segment that was interrupted before its commit
+                } else if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    load(path);
+                }
+            }
+        }
+    }
+
+    public interface Writer extends AutoCloseable {
+        // events must be consecutive events of the user, in sequence order
+        void write(String userId, List<Event> events) throws IOException;
+
+        // Makes the blocks durable and readable
+        void commit() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    public Writer open(long walPosition) throws IOException {
+        Path temporary = directory.resolve(PREFIX + walPosition + SUFFIX + ".tmp");
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, walPosition, SUFFIX));
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(channel, header);
+
+        return new Writer() {
+            private final List<Block> blocks = new ArrayList<>();
+            private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            private long offset = 8;
+            private boolean committed;
+
+            @Override
+            public void write(String userId, List<Event> events) throws IOException {
+                int start = 0;
+                while (start < events.size()) {
+                    long first = events.get(start).getSequence();
+                    int end = Math.min(events.size(), start + (BLOCK_EVENTS - Math.floorMod(first, BLOCK_EVENTS)));
+                    writeBlock(userId, first, events.subList(start, end));
+                    start = end;
+                }
+            }
+
+            private void writeBlock(String userId, long first, List<Event> events) throws IOException {
+                ByteArrayOutputStream raw = new ByteArrayOutputStream(events.size() * 64);
+                DataOutputStream out = new DataOutputStream(raw);
+                for (Event event : events) {
+                    ByteBuffer record = EventCodec.encode(userId, event, 0);
+                    out.writeInt(record.remaining());
+                    out.write(record.array(), record.position(), record.remaining());
+                }
+                byte[] compressed = deflate(raw.toByteArray());
+                CRC32 crc = new CRC32();
+                crc.update(compressed);
+                writeFully(channel, ByteBuffer.wrap(compressed));
+                blocks.add(new Block(target, userId, first, first + events.size(), offset, compressed.length, raw.size(), (int) crc.getValue()));
+                offset += compressed.length;
+            }
+
+            private byte[] deflate(byte[] raw) {
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+                byte[] buffer = new byte[1 << 14];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return compressed.toByteArray();
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (blocks.isEmpty()) {
+                    return; // nothing was moved, close drops the empty file
+                }
+                ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(indexBytes);
+                out.writeInt(blocks.size());
+                for (Block block : blocks) {
+                    out.writeUTF(block.userId);
+                    out.writeLong(block.from);
+                    out.writeLong(block.to);
+                    out.writeLong(block.offset);
+                    out.writeInt(block.length);
+                    out.writeInt(block.rawLength);
+                    out.writeInt(block.crc);
+                }
+                out.writeLong(offset);
+                out.writeInt(MAGIC);
+                writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+                channel.force(true);
+                channel.close();
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                committed = true;
+                for (Block block : blocks) {
+                    add(block);
+                }
+                logger.info("Moved {} blocks of events to cold segment {}", blocks.size(), target.getFileName());
+            }
+
+            @Override
+            public void close() throws IOException {
+                deflater.end();
+                if (!committed) {
+                    channel.close();
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        };
+    }
+
+    // End of the run of archived events that starts at or covers the sequence, the sequence itself when none does
+    public long coveredUntil(String userId, long sequence) {
+        NavigableMap<Long, Block> blocks = index.get(userId);
+        if (blocks == null) {
+            return sequence;
+        }
+        long end = sequence;
+        Map.Entry<Long, Block> entry = blocks.floorEntry(sequence);
+        if (entry != null && entry.getValue().to > end) {
+            end = entry.getValue().to;
+        }
+        for (Block block : blocks.tailMap(sequence, false).values()) {
+            if (block.from > end) {
+                break;
+            }
+            end = Math.max(end, block.to);
+        }
+        return end;
+    }
+
+    // Archived events of the user with a sequence in [from, to), in order. Blocks are only read when an event in
+    // them is accessed, and the view is meant for one reader at a time.
+    public List<Event> view(String userId, long from, long to) {
+        NavigableMap<Long, Block> blocks = index.get(userId);
+        if (blocks == null || from >= to) {
+            return Collections.emptyList();
+        }
+        List<Block> covering = new ArrayList<>();
+        long next = from;
+        Map.Entry<Long, Block> floor = blocks.floorEntry(from);
+        if (floor != null && floor.getValue().to > from) {
+            covering.add(floor.getValue());
+            next = floor.getValue().to;
+        }
+        for (Block block : blocks.subMap(from, false, to, false).values()) {
+            if (block.to > next) {
+                covering.add(block);
+                next = block.to;
+            }
+        }
+        return covering.isEmpty() ? Collections.emptyList() : new View(covering, from, to);
+    }
+
+    private void add(Block block) {
+        index.computeIfAbsent(block.userId, k -> new ConcurrentSkipListMap<>()).put(block.from, block);
+    }
+
+    private void load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            if (size < 8 + TRAILER_BYTES || readFully(channel, trailer, size - TRAILER_BYTES).getInt(8) != MAGIC) {
+                logger.warn("Skipping damaged cold segment {}", path);
+                return;
+            }
+            long indexOffset = trailer.getLong(0);
+            ByteBuffer indexBytes = ByteBuffer.allocate((int) (size - TRAILER_BYTES - indexOffset));
+            readFully(channel, indexBytes, indexOffset);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes.array()));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                add(new Block(path, in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readInt()));
+            }
+        }
+    }
+
+    private static List<Event> read(Block block) {
+        try (FileChannel channel = FileChannel.open(block.segment, StandardOpenOption.READ)) {
+            ByteBuffer compressed = readFully(channel, ByteBuffer.allocate(block.length), block.offset);
+            CRC32 crc = new CRC32();
+            crc.update(compressed.array());
+            if ((int) crc.getValue() != block.crc) {
+                throw new IOException("Damaged block of user " + block.userId + " in cold segment " + block.segment);
+            }
+            byte[] raw = new byte[block.rawLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array());
+                inflater.inflate(raw);
+            } finally {
+                inflater.end();
+            }
+            ByteBuffer records = ByteBuffer.wrap(raw);
+            List<Event> events = new ArrayList<>((int) (block.to - block.from));
+            while (records.hasRemaining()) {
+                int length = records.getInt();
+                ByteBuffer record = records.slice();
+                record.limit(length);
+                events.add(EventCodec.decode(record).getEvent());
+                records.position(records.position() + length);
+            }
+            return events;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Damaged block in cold segment " + block.segment, e));
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of cold segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform allows syncing a directory, the rename is still atomic
+        }
+    }
+
+    private static final class Block {
+        private final Path segment;
+        private final String userId;
+        private final long from;
+        private final long to;
+        private final long offset;
+        private final int length;
+        private final int rawLength;
+        private final int crc;
+
+        private Block(Path segment, String userId, long from, long to, long offset, int length, int rawLength, int crc) {
+            this.segment = segment;
+            this.userId = userId;
+            this.from = from;
+            this.to = to;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.crc = crc;
+        }
+    }
+
+    // Positions are counted over the covered parts of the blocks only, so gaps between blocks are skipped
+    private static final class View extends AbstractList<Event> implements RandomAccess {
+        private final List<Block> blocks;
+        private final long[] starts; // position of each block's first covered event in the view
+        private final long from;
+        private final long to;
+        private final int size;
+        private int loadedBlock = -1;
+        private List<Event> loaded;
+
+        private View(List<Block> blocks, long from, long to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.starts = new long[blocks.size()];
+            long position = 0;
+            long previousEnd = from;
+            for (int i = 0; i < blocks.size(); i++) {
+                starts[i] = position;
+                Block block = blocks.get(i);
+                long start = Math.max(Math.max(block.from, previousEnd), from);
+                position += Math.min(block.to, to) - start;
+                previousEnd = block.to;
+            }
+            this.size = (int) position;
+        }
+
+        @Override
+        public Event get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " outside of [0, " + size + ")");
+            }
+            int i = loadedBlock >= 0 && index >= starts[loadedBlock] && (loadedBlock + 1 == starts.length || index < starts[loadedBlock + 1])
+                    ? loadedBlock : blockOf(index);
+            if (i != loadedBlock) {
+                loaded = read(blocks.get(i));
+                loadedBlock = i;
+            }
+            Block block = blocks.get(i);
+            long firstCovered = Math.max(Math.max(block.from, i == 0 ? from : blocks.get(i - 1).to), from);
+            return loaded.get((int) (firstCovered - block.from + (index - starts[i])));
+        }
+
+        private int blockOf(int index) {
+            int low = 0;
+            int high = starts.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package dev.codescreen.bankledger.store.snapshot;
+
+import java.time.LocalDateTime;
+
+/**
+ * Point-in-time state of one account: its running balance in minor units of the base currency, the sequence its next event will
+ * get, and the timestamp of the last event folded into the balance.
+ */
+public class AccountSnapshot {
+
+    private final String userId;
+    private final long balance;
+    private final long nextSequence;
+    private final LocalDateTime timestamp;
+
+    public AccountSnapshot(String userId, long balance, long nextSequence, LocalDateTime timestamp) {
+        this.userId = userId;
+        this.balance = balance;
+        this.nextSequence = nextSequence;
+        this.timestamp = timestamp;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+}
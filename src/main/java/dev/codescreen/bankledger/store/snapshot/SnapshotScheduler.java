@@ -0,0 +1,32 @@
+package dev.codescreen.bankledger.store.snapshot;
+
+import dev.codescreen.bankledger.store.EventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+@Component
+@ConditionalOnProperty(name = "ledger.wal.enabled", havingValue = "true")
+public class SnapshotScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotScheduler.class);
+    private final EventStore eventStore;
+
+    public SnapshotScheduler(EventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.snapshot.interval-ms:60000}", initialDelayString = "${ledger.snapshot.interval-ms:60000}")
+    public void snapshot() {
+        try {
+            eventStore.takeSnapshot();
+        } catch (IOException e) {
+            // the write-ahead log still holds everything, the next run tries again
+            logger.error("Failed to write snapshot", e);
+        }
+    }
+}
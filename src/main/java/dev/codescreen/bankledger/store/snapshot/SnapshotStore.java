@@ -0,0 +1,193 @@
+package dev.codescreen.bankledger.store.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot files of every account, each tied to the write-ahead log position it was taken at.
+ *
+ * A snapshot is written to a temporary file, fsynced and atomically renamed, so a crash never leaves a partial
+ * snapshot under its final name. Files end with a CRC32 of their content; a damaged snapshot is skipped in
+ * favour of the previous one.
+ */
+public class SnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final int MAGIC = 0x4C534E50; // "LSNP"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+
+    private final Path directory;
+    private final int retained;
+
+    public SnapshotStore(Path directory, int retained) throws IOException {
+        this.directory = directory;
+        this.retained = Math.max(1, retained);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path leftover : files.filter(p -> p.getFileName().toString().endsWith(".tmp")).collect(Collectors.toList())) {
+                Files.deleteIfExists(leftover); // a snapshot that was interrupted before its commit
+            }
+        }
+    }
+
+    public interface Writer extends AutoCloseable {
+        void write(AccountSnapshot account) throws IOException;
+
+        // Makes the snapshot visible, only snapshots that were committed are ever loaded
+        void commit() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    public Writer open(long walPosition) throws IOException {
+        Path temporary = directory.resolve(PREFIX + walPosition + SUFFIX + ".tmp");
+        FileOutputStream file = new FileOutputStream(temporary.toFile());
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(walPosition);
+
+        return new Writer() {
+            private long count;
+            private boolean committed;
+
+            @Override
+            public void write(AccountSnapshot account) throws IOException {
+                out.writeBoolean(true);
+                out.writeUTF(account.getUserId());
+                out.writeLong(account.getBalance());
+                out.writeLong(account.getNextSequence());
+                out.writeLong(account.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(account.getTimestamp().getNano());
+                count++;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                out.writeBoolean(false);
+                out.writeLong(count);
+                out.flush();
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                file.getFD().sync();
+                out.close();
+                Path target = directory.resolve(String.format("%s%020d%s", PREFIX, walPosition, SUFFIX));
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+                committed = true;
+                logger.info("Wrote snapshot of {} accounts at write-ahead log position {}", count, walPosition);
+                prune();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!committed) {
+                    out.close();
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        };
+    }
+
+    // Streams the accounts of the newest readable snapshot and returns its write-ahead log position,
+    // or -1 when there is no usable snapshot and recovery has to start from the beginning of the log
+    public long loadLatest(Consumer<AccountSnapshot> consumer) throws IOException {
+        List<Path> snapshots = snapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path path = snapshots.get(i);
+            if (!verify(path)) {
+                logger.warn("Skipping damaged snapshot {}", path);
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                in.readInt();
+                in.readInt();
+                long walPosition = in.readLong();
+                while (in.readBoolean()) {
+                    String userId = in.readUTF();
+                    long balance = in.readLong();
+                    long nextSequence = in.readLong();
+                    LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                    consumer.accept(new AccountSnapshot(userId, balance, nextSequence, timestamp));
+                }
+                return walPosition;
+            }
+        }
+        return -1;
+    }
+
+    private boolean verify(Path path) throws IOException {
+        long size = Files.size(path);
+        if (size < 24) {
+            return false;
+        }
+        try (InputStream raw = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(raw, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            long remaining = size - 8 - 8;
+            byte[] buffer = new byte[1 << 16];
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return false;
+                }
+                remaining -= read;
+            }
+            long expected = checked.getChecksum().getValue();
+            return in.readLong() == expected;
+        }
+    }
+
+    private void prune() throws IOException {
+        List<Path> snapshots = snapshots();
+        for (int i = 0; i < snapshots.size() - retained; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform allows syncing a directory, the rename is still atomic
+        }
+    }
+}
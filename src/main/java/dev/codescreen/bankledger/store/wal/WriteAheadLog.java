@@ -0,0 +1,530 @@
+package dev.codescreen.bankledger.store.wal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented write-ahead log with group commit.
+ *
+ * Records are framed as length (4) | CRC32 of the payload (4) | payload and written to the current segment file.
+ * Positions are logical byte offsets across all segments, and each segment is named after the position it
+ * starts at. Appending only hands the bytes to the OS; a background flusher fsyncs whatever has accumulated
+ * once the sync interval has passed or the batch size is reached, so many concurrent appends share one fsync.
+ * Callers block in awaitDurable until the fsync covering their record has completed, or get a future from
+ * whenDurable that the flusher completes instead, so no thread waits for the fsync.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final long segmentSizeBytes;
+    private final long syncIntervalNanos;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingSync = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private final CRC32 crc = new CRC32(); // guarded by lock
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES); // guarded by lock
+
+    private FileChannel segment;
+    private long segmentStart;
+    private long writePosition;
+    private int unsyncedRecords;
+    private long firstUnsyncedAt;
+    private volatile long durablePosition;
+    private IOException failure;
+    private boolean closed;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(Comparator.comparingLong(waiter -> waiter.position)); // guarded by lock
+    private final Thread flusher;
+
+    public WriteAheadLog(Path directory, long segmentSizeBytes, long syncIntervalMillis, int batchSize) throws IOException {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.batchSize = Math.max(1, batchSize);
+        Files.createDirectories(directory);
+
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            long start = startOf(last);
+            long validBytes = scan(last, start, Long.MAX_VALUE, null);
+            segment = FileChannel.open(last, StandardOpenOption.WRITE);
+            if (segment.size() > validBytes) {
+                logger.warn("Truncating torn write-ahead log tail in {} from {} to {} bytes", last, segment.size(), validBytes);
+                segment.truncate(validBytes);
+                segment.force(true);
+            }
+            segment.position(validBytes);
+            segmentStart = start;
+            writePosition = start + validBytes;
+        }
+        durablePosition = writePosition;
+
+        flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public interface RecordHandler {
+        void accept(long endPosition, ByteBuffer payload);
+    }
+
+    // Writes the record and returns the position that must become durable before it may be acknowledged
+    public long append(ByteBuffer payload) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+            int length = payload.remaining();
+            if (writePosition - segmentStart + HEADER_BYTES + length > segmentSizeBytes && writePosition > segmentStart) {
+                rollSegment();
+            }
+            crc.reset();
+            crc.update(payload.duplicate());
+            header.clear();
+            header.putInt(length).putInt((int) crc.getValue()).flip();
+            while (header.hasRemaining()) {
+                segment.write(header);
+            }
+            while (payload.hasRemaining()) {
+                segment.write(payload);
+            }
+            writePosition += HEADER_BYTES + length;
+            if (unsyncedRecords++ == 0) {
+                firstUnsyncedAt = System.nanoTime();
+            }
+            pendingSync.signal();
+            return writePosition;
+        } catch (IOException e) {
+            failure = e;
+            synced.signalAll();
+            pendingSync.signal(); // the flusher fails the pending futures
+            throw new UncheckedIOException("Failed to append to write-ahead log", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long position) {
+        if (durablePosition >= position) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+                if (closed && !flusher.isAlive()) {
+                    throw new IllegalStateException("Write-ahead log closed before the record became durable");
+                }
+                synced.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write-ahead log", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Completed by the flusher once the position is durable, so dependent actions must be short or run elsewhere
+    public CompletableFuture<Void> whenDurable(long position) {
+        if (durablePosition >= position) {
+            return CompletableFuture.completedFuture(null);
+        }
+        lock.lock();
+        try {
+            if (durablePosition >= position) {
+                return CompletableFuture.completedFuture(null);
+            }
+            if (failure != null) {
+                return CompletableFuture.failedFuture(new UncheckedIOException("Write-ahead log failed", failure));
+            }
+            if (closed && !flusher.isAlive()) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Write-ahead log closed before the record became durable"));
+            }
+            Waiter waiter = new Waiter(position);
+            waiters.add(waiter);
+            return waiter.durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    // Position right after the last record handed to the log, durable or not
+    public long getWritePosition() {
+        lock.lock();
+        try {
+            return writePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits up to the timeout for the durable position to pass the given one and returns the durable position
+    public long awaitDurableAfter(long position, long timeoutMillis) throws InterruptedException {
+        if (durablePosition > position) {
+            return durablePosition;
+        }
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (durablePosition <= position && !closed && failure == null && remaining > 0) {
+                remaining = synced.awaitNanos(remaining);
+            }
+            return durablePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Reader over the records from a record boundary on, handing out each record once it is durable
+    public Tailer tail(long fromPosition) throws IOException {
+        return new Tailer(fromPosition);
+    }
+
+    // Reads every intact record that ends after fromPosition, in log order
+    public void replay(long fromPosition, RecordHandler handler) throws IOException {
+        long end = getWritePosition();
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long start = startOf(path);
+            if (start >= end) {
+                break;
+            }
+            if (i + 1 < segments.size() && startOf(segments.get(i + 1)) <= fromPosition) {
+                continue; // every record of this segment ends at or before fromPosition
+            }
+            scan(path, start, end, (position, payload) -> {
+                if (position > fromPosition) {
+                    handler.accept(position, payload);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingSync.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Waiter> abandoned;
+        lock.lock();
+        try {
+            synced.signalAll();
+            abandoned = new ArrayList<>(waiters);
+            waiters.clear();
+            segment.close();
+        } finally {
+            lock.unlock();
+        }
+        for (Waiter waiter : abandoned) {
+            waiter.durable.completeExceptionally(new IllegalStateException("Write-ahead log closed before the record became durable"));
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            FileChannel channel;
+            long target;
+            lock.lock();
+            try {
+                while (!closed && unsyncedRecords == 0 && failure == null) {
+                    pendingSync.await();
+                }
+                if (failure != null) {
+                    failWaiters(failure);
+                    return;
+                }
+                if (unsyncedRecords == 0) {
+                    return; // closed and nothing left to sync
+                }
+                long deadline = firstUnsyncedAt + syncIntervalNanos;
+                long remaining;
+                while (!closed && unsyncedRecords < batchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                    pendingSync.awaitNanos(remaining);
+                }
+                channel = segment;
+                target = writePosition;
+                unsyncedRecords = 0;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // the segment was rolled in the meantime, and rolling forces it before closing it
+            } catch (IOException e) {
+                logger.error("Failed to sync write-ahead log. Error: {}", e.getMessage());
+                error = e;
+            }
+
+            List<Waiter> done = new ArrayList<>();
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    done.addAll(waiters);
+                    waiters.clear();
+                } else if (target > durablePosition) {
+                    durablePosition = target;
+                }
+                while (!waiters.isEmpty() && waiters.peek().position <= durablePosition) {
+                    done.add(waiters.poll());
+                }
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            // completed outside the lock, their dependents run on this thread
+            for (Waiter waiter : done) {
+                if (error != null) {
+                    waiter.durable.completeExceptionally(new UncheckedIOException("Write-ahead log failed", error));
+                } else {
+                    waiter.durable.complete(null);
+                }
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    // Caller holds the lock, which is released while the futures are failed
+    private void failWaiters(IOException error) {
+        List<Waiter> failed = new ArrayList<>(waiters);
+        waiters.clear();
+        lock.unlock();
+        try {
+            for (Waiter waiter : failed) {
+                waiter.durable.completeExceptionally(new UncheckedIOException("Write-ahead log failed", error));
+            }
+        } finally {
+            lock.lock();
+        }
+    }
+
+    // Caller holds the lock
+    private void rollSegment() throws IOException {
+        segment.force(false);
+        segment.close();
+        openSegment(writePosition);
+    }
+
+    // A segment created here only survives a crash once its directory entry is durable, so the directory is synced
+    // before any record is written to it and a group commit can cover one
+    private void openSegment(long start) throws IOException {
+        Path path = segmentPath(start);
+        boolean created = !Files.exists(path);
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) {
+            syncDirectory();
+        }
+        segment.position(segment.size());
+        segmentStart = start;
+        writePosition = start + segment.size();
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform allows syncing a directory
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Walks the records of one segment up to the logical end position and returns the number of valid bytes.
+    // Stops at the first torn or corrupt record, which can only be the tail of the last segment.
+    private static long scan(Path path, long start, long end, RecordHandler handler) throws IOException {
+        long offset = 0;
+        long fileSize = Files.size(path);
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (start + offset < end) {
+                int length;
+                int expected;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    expected = in.readInt();
+                    if (length < 0 || length > fileSize - offset - HEADER_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(payload, 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                offset += HEADER_BYTES + length;
+                if (handler != null) {
+                    handler.accept(start + offset, ByteBuffer.wrap(payload));
+                }
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Follows the log as it is written. Reads are positional on its own channel and never take the log's lock. A
+     * record past the end of the current segment can only be at the start of the next one, because a segment is
+     * only rolled between records.
+     */
+    public final class Tailer implements Closeable {
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private final CRC32 checksum = new CRC32();
+        private FileChannel channel;
+        private long channelStart;
+        private long position;
+
+        private Tailer(long fromPosition) throws IOException {
+            Path containing = null;
+            for (Path path : segments()) {
+                if (startOf(path) <= fromPosition) {
+                    containing = path;
+                }
+            }
+            if (containing == null) {
+                throw new IOException("No write-ahead log segment holds position " + fromPosition);
+            }
+            channel = FileChannel.open(containing, StandardOpenOption.READ);
+            channelStart = startOf(containing);
+            position = fromPosition;
+        }
+
+        // Position right after the last record read
+        public long position() {
+            return position;
+        }
+
+        // Payload of the next record, or null when every durable record has been read
+        public ByteBuffer next() throws IOException {
+            if (position >= durablePosition) {
+                return null;
+            }
+            if (position - channelStart >= channel.size()) {
+                channel.close();
+                channel = FileChannel.open(segmentPath(position), StandardOpenOption.READ);
+                channelStart = position;
+            }
+            long offset = position - channelStart;
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int expected = header.getInt();
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER_BYTES);
+            checksum.reset();
+            checksum.update(payload.array(), 0, length);
+            if ((int) checksum.getValue() != expected) {
+                throw new IOException("Corrupt write-ahead log record at position " + position);
+            }
+            position += HEADER_BYTES + length;
+            payload.flip();
+            return payload;
+        }
+
+        private void readFully(ByteBuffer buffer, long offset) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Write-ahead log ends inside the record at position " + position);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class Waiter {
+        private final long position;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private Waiter(long position) {
+            this.position = position;
+        }
+    }
+}
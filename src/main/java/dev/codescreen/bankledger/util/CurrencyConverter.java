@@ -9,15 +9,19 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.math.RoundingMode;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
 public class CurrencyConverter {
 
     private static final Logger logger = LoggerFactory.getLogger(CurrencyConverter.class);
-    private Map<String, BigDecimal> conversionRates = new ConcurrentHashMap<>();
+    // Replaced as a whole, so a conversion never sees a partially updated set of rates
+    private volatile RateTable rateTable = RateTable.EMPTY;
+    private volatile long ratesUpdatedMillis = -1;
+    private final LongAdder refreshFailures = new LongAdder();
     private RestTemplate restTemplate = new RestTemplate();
     @Value("${api.exchangeRate.key}")
     String API_KEY;
@@ -30,19 +34,82 @@ public class CurrencyConverter {
             Map<String, Object> responseBody = response.getBody();
             if (responseBody != null) {
                 Map<String, Number> rates = (Map<String, Number>) responseBody.get("conversion_rates");
-                conversionRates.clear();
+                Map<String, BigDecimal> conversionRates = new HashMap<>();
                 rates.forEach((currency, rate) -> conversionRates.put(currency, BigDecimal.valueOf(rate.doubleValue())));
+                updateRates(conversionRates);
             }
         } catch (Exception e) {
             logger.error("Failed to fetch conversion rates, defaulting to rate of 1. Error: {}", e.getMessage());
-            conversionRates.clear();
+            refreshFailures.increment();
+            rateTable = RateTable.EMPTY;
         }
     }
 
+    // Replaces every rate at once, rates are units of each currency per USD. The table's version is the time it was
+    // installed, kept increasing so tables installed within the same millisecond differ.
+    public synchronized void updateRates(Map<String, BigDecimal> rates) {
+        Map<String, BigDecimal> usable = new HashMap<>();
+        rates.forEach((currency, rate) -> {
+            if (rate.signum() > 0) {
+                usable.put(currency, rate);
+            } else {
+                logger.warn("Ignoring non-positive rate {} for {}", rate, currency);
+            }
+        });
+        long now = System.currentTimeMillis();
+        rateTable = new RateTable(usable, Math.max(now, rateTable.getVersion() + 1));
+        ratesUpdatedMillis = now;
+    }
+
+    // Time since rates were last installed, -1 when they never were
+    public long getRatesAgeMillis() {
+        long updated = ratesUpdatedMillis;
+        return updated < 0 ? -1 : System.currentTimeMillis() - updated;
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.sum();
+    }
+
+    // Version of the rates in force, 0 while every currency converts at a rate of 1
+    public long getRateVersion() {
+        return rateTable.getVersion();
+    }
+
     public BigDecimal convert(String fromCurrency, String toCurrency, BigDecimal amount) {
-        BigDecimal fromRate = conversionRates.getOrDefault(fromCurrency, BigDecimal.ONE);
-        BigDecimal toRate = conversionRates.getOrDefault(toCurrency, BigDecimal.ONE);
-        BigDecimal rate = toRate.divide(fromRate, 10, RoundingMode.HALF_UP);
-        return amount.multiply(rate).setScale(2, RoundingMode.HALF_EVEN);
+        RateTable table = rateTable;
+        BigDecimal rate = table.rate(table.codeOf(fromCurrency), table.codeOf(toCurrency));
+        return amount.multiply(rate).setScale(Money.CONVERTED_SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    // Same rounding as convert, as minor units of the target currency
+    public Money convertToMoney(String fromCurrency, String toCurrency, BigDecimal amount) {
+        if (amount.unscaledValue().bitLength() < Long.SIZE) {
+            return convert(amount.unscaledValue().longValue(), amount.scale(), fromCurrency, toCurrency);
+        }
+        return Money.of(convert(fromCurrency, toCurrency, amount), toCurrency);
+    }
+
+    public Money convert(Money amount, String toCurrency) {
+        return convert(amount.getMinorUnits(), amount.scale(), amount.getCurrency(), toCurrency);
+    }
+
+    // amount * rate rounded half even to two decimals, done in long arithmetic while the product fits
+    private Money convert(long unscaled, int scale, String fromCurrency, String toCurrency) {
+        RateTable table = rateTable;
+        int from = table.codeOf(fromCurrency);
+        int to = table.codeOf(toCurrency);
+        int exponent = scale + RateTable.RATE_SCALE - Money.CONVERTED_SCALE;
+        if (table.fitsLong(from, to) && Money.isPowerOfTenInRange(exponent)) {
+            try {
+                long product = Math.multiplyExact(unscaled, table.units(from, to));
+                long converted = Money.divideHalfEven(product, Money.powerOfTen(exponent));
+                return Money.ofMinor(Math.multiplyExact(converted, Money.powerOfTen(Money.scaleOf(toCurrency) - Money.CONVERTED_SCALE)), toCurrency);
+            } catch (ArithmeticException e) {
+                // beyond 63 bits, fall through to the exact BigDecimal path
+            }
+        }
+        BigDecimal rate = table.rate(from, to);
+        return Money.of(BigDecimal.valueOf(unscaled, scale).multiply(rate).setScale(Money.CONVERTED_SCALE, RoundingMode.HALF_EVEN), toCurrency);
     }
 }
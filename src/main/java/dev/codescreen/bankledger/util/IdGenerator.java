@@ -0,0 +1,10 @@
+package dev.codescreen.bankledger.util;
+
+/**
+ * Source of the transaction ids stored on every event and returned to clients. Ids must be unique across the nodes
+ * sharing a ledger and are expected to grow with time, so sorting by id sorts by creation.
+ */
+public interface IdGenerator {
+
+    long nextId();
+}
@@ -0,0 +1,197 @@
+package dev.codescreen.bankledger.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response given to each (operation, userId, messageId) so a retried request gets the original
+ * response back instead of being applied again.
+ *
+ * Bounded in size and evicted after a fixed time since the response was stored. The underlying Guava cache is lock
+ * striped. A request first claims its key; only the claimant handles it and everyone else with the same key waits
+ * for its response, so a message is applied at most once while its entry is cached. Claims still in flight are
+ * held apart from the cache, so a slow request cannot expire before its response is stored. Failed requests
+ * release their claim and can be retried.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final Cache<Key, CompletableFuture<ResponseEntity<?>>> responses; // completed responses only
+    private final Map<Key, CompletableFuture<ResponseEntity<?>>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public IdempotencyCache(@Value("${ledger.idempotency.max-entries:100000}") long maxEntries,
+                            @Value("${ledger.idempotency.ttl-seconds:600}") long ttlSeconds) {
+        this.responses = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public ResponseEntity<?> execute(String operation, String userId, String messageId, Supplier<ResponseEntity<?>> handler) {
+        Claim claim = claim(operation, userId, messageId);
+        if (!claim.isOwner()) {
+            return claim.await();
+        }
+        ResponseEntity<?> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            fail(claim, e);
+            throw e;
+        }
+        complete(claim, response);
+        return response;
+    }
+
+    // Same as execute for a handler that completes later. A duplicate gets the owner's future, so nobody blocks.
+    public CompletableFuture<ResponseEntity<?>> executeAsync(String operation, String userId, String messageId,
+                                                             Supplier<CompletableFuture<ResponseEntity<?>>> handler) {
+        Claim claim = claim(operation, userId, messageId);
+        if (!claim.isOwner()) {
+            return claim.response;
+        }
+        CompletableFuture<ResponseEntity<?>> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException e) {
+            fail(claim, e);
+            throw e;
+        }
+        return response.whenComplete((result, failure) -> {
+            if (failure == null) {
+                complete(claim, result);
+            } else {
+                fail(claim, failure instanceof CompletionException && failure.getCause() instanceof RuntimeException
+                        ? (RuntimeException) failure.getCause()
+                        : new CompletionException(failure));
+            }
+        });
+    }
+
+    // Either takes ownership of the key, or returns the claim of whoever handles it
+    public Claim claim(String operation, String userId, String messageId) {
+        Key key = new Key(operation, userId, messageId);
+        CompletableFuture<ResponseEntity<?>> cached = responses.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return new Claim(key, cached, false);
+        }
+        CompletableFuture<ResponseEntity<?>> pending = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<?>> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            hits.increment();
+            return new Claim(key, existing, false);
+        }
+        // the owner stores its response before it leaves inFlight, so one completed in between is cached by now
+        cached = responses.getIfPresent(key);
+        if (cached != null) {
+            inFlight.remove(key, pending);
+            pending.complete(cached.join());
+            hits.increment();
+            return new Claim(key, cached, false);
+        }
+        misses.increment();
+        return new Claim(key, pending, true);
+    }
+
+    // Stores the response, its time to live starts now
+    public void complete(Claim claim, ResponseEntity<?> response) {
+        claim.response.complete(response);
+        responses.put(claim.key, claim.response);
+        inFlight.remove(claim.key, claim.response);
+    }
+
+    public void fail(Claim claim, RuntimeException failure) {
+        inFlight.remove(claim.key, claim.response);
+        claim.response.completeExceptionally(failure);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return responses.stats().evictionCount();
+    }
+
+    public long size() {
+        return responses.size() + inFlight.size();
+    }
+
+    public static final class Claim {
+        private final Key key;
+        private final CompletableFuture<ResponseEntity<?>> response;
+        private final boolean owner;
+
+        private Claim(Key key, CompletableFuture<ResponseEntity<?>> response, boolean owner) {
+            this.key = key;
+            this.response = response;
+            this.owner = owner;
+        }
+
+        public boolean isOwner() {
+            return owner;
+        }
+
+        // Waits for the owner's response, rethrowing its failure
+        public ResponseEntity<?> await() {
+            try {
+                return response.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String operation;
+        private final String userId;
+        private final String messageId;
+        private final int hash;
+
+        private Key(String operation, String userId, String messageId) {
+            this.operation = operation;
+            this.userId = userId;
+            this.messageId = messageId;
+            this.hash = 31 * (31 * operation.hashCode() + userId.hashCode()) + messageId.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return operation.equals(other.operation) && userId.equals(other.userId) && messageId.equals(other.messageId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
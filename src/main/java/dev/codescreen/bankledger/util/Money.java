@@ -0,0 +1,130 @@
+package dev.codescreen.bankledger.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An amount held as a whole number of minor units of its currency, e.g. 12.34 USD is 1234.
+ *
+ * The scale of a currency is its ISO 4217 number of fraction digits, but never less than the two decimals the
+ * converter has always rounded to, so every converted amount fits exactly. Arithmetic is plain long math;
+ * BigDecimal is only used to parse request amounts and to render responses.
+ */
+public final class Money implements Comparable<Money> {
+
+    static final int CONVERTED_SCALE = 2;
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // Only ISO 4217 codes, so currency strings sent by clients never grow it
+    private static final Map<String, Integer> scales = new HashMap<>();
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            scales.put(currency.getCurrencyCode(), Math.max(CONVERTED_SCALE, currency.getDefaultFractionDigits()));
+        }
+    }
+
+    private final long minorUnits;
+    private final String currency;
+
+    private Money(long minorUnits, String currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static Money ofMinor(long minorUnits, String currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    // Exact, throws ArithmeticException when the amount has more decimals than the currency
+    public static Money of(BigDecimal amount, String currency) {
+        return new Money(amount.setScale(scaleOf(currency), RoundingMode.UNNECESSARY).unscaledValue().longValueExact(), currency);
+    }
+
+    public static int scaleOf(String currency) {
+        Integer scale = scales.get(currency);
+        return scale == null ? CONVERTED_SCALE : scale; // not an ISO code, the converter treats it at a rate of 1
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public int scale() {
+        return scaleOf(currency);
+    }
+
+    public Money plus(long otherMinorUnits) {
+        return new Money(Math.addExact(minorUnits, otherMinorUnits), currency);
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, scale());
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Cannot compare " + currency + " with " + other.currency);
+        }
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) o;
+        return minorUnits == other.minorUnits && currency.equals(other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency.hashCode();
+    }
+
+    // Same text as the BigDecimal amounts the API has always returned
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    static long powerOfTen(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    static boolean isPowerOfTenInRange(int exponent) {
+        return exponent >= 0 && exponent < POWERS_OF_TEN.length;
+    }
+
+    // dividend / divisor rounded half to even, for a positive divisor
+    static long divideHalfEven(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        if (remainder != 0) {
+            long twice = remainder << 1;
+            if (twice > divisor || (twice == divisor && (quotient & 1) != 0)) {
+                quotient += Long.signum(dividend);
+            }
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.codescreen.bankledger.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable matrix of every cross rate between the currencies of one rate fetch.
+ *
+ * Currencies are numbered 0..n-1 in the order they were fetched and slot n stands for every currency without a
+ * rate, which converts at a rate of 1. Cross rates are computed once, exactly as convert used to per call
+ * (to / from, 10 decimals, half up), and stored as longs scaled by 10^10 so a conversion is an index and a multiply.
+ * Every table has a version, the epoch millis it was installed at, which events record with their converted amount.
+ */
+final class RateTable {
+
+    static final int RATE_SCALE = 10;
+    static final RateTable EMPTY = new RateTable(Collections.emptyMap(), 0);
+
+    private final Map<String, Integer> codes;
+    private final int size;
+    private final long[] units;
+    private final BigDecimal[] wide; // only for cross rates that do not fit a long, null when there are none
+    private final long version;
+
+    RateTable(Map<String, BigDecimal> rates, long version) {
+        this.version = version;
+        Map<String, Integer> codes = new HashMap<>();
+        BigDecimal[] base = new BigDecimal[rates.size() + 1];
+        for (Map.Entry<String, BigDecimal> rate : rates.entrySet()) {
+            base[codes.size()] = rate.getValue();
+            codes.put(rate.getKey(), codes.size());
+        }
+        base[codes.size()] = BigDecimal.ONE;
+
+        this.codes = codes;
+        this.size = codes.size() + 1;
+        this.units = new long[size * size];
+        BigDecimal[] wide = null;
+        for (int from = 0; from < size; from++) {
+            for (int to = 0; to < size; to++) {
+                BigDecimal cross = base[to].divide(base[from], RATE_SCALE, RoundingMode.HALF_UP);
+                if (cross.unscaledValue().bitLength() < Long.SIZE) {
+                    units[from * size + to] = cross.unscaledValue().longValue();
+                } else {
+                    if (wide == null) {
+                        wide = new BigDecimal[size * size];
+                    }
+                    wide[from * size + to] = cross;
+                }
+            }
+        }
+        this.wide = wide;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int codeOf(String currency) {
+        Integer code = codes.get(currency);
+        return code == null ? size - 1 : code;
+    }
+
+    boolean fitsLong(int from, int to) {
+        return wide == null || wide[from * size + to] == null;
+    }
+
+    // The cross rate scaled by 10^RATE_SCALE, only valid when fitsLong
+    long units(int from, int to) {
+        return units[from * size + to];
+    }
+
+    BigDecimal rate(int from, int to) {
+        return fitsLong(from, to) ? BigDecimal.valueOf(units[from * size + to], RATE_SCALE) : wide[from * size + to];
+    }
+}
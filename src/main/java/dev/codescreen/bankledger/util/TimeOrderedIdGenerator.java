@@ -0,0 +1,75 @@
+package dev.codescreen.bankledger.util;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 64 bit ids laid out as milliseconds since EPOCH (41 bits, about 69 years) | node (10) | counter (12).
+ *
+ * The millisecond and counter of the last id are one AtomicLong, and each id is a single compare-and-set that moves
+ * it to the current millisecond or one past the last id, whichever is later. More than 4096 ids in one millisecond
+ * borrow the next millisecond; a caller that would run further ahead of the clock spins until it catches up, so id
+ * timestamps are never more than a millisecond in the future however many threads ask. Ids always increase, so a
+ * clock that steps back does not produce an id twice: within CLOCK_STEP ids wait for the clock, beyond it they
+ * continue from the last id. After a restart, seed() moves past the ids already handed out in case the clock stepped
+ * back meanwhile. Nothing is allocated per id and no shared random source is touched.
+ */
+public final class TimeOrderedIdGenerator implements IdGenerator {
+
+    public static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+    public static final int NODE_BITS = 10;
+    private static final int COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long MAX_AHEAD = 1L << COUNTER_BITS; // one millisecond of counter values
+    private static final long CLOCK_STEP = 1000L << COUNTER_BITS;
+
+    private final long epochMillis = EPOCH.toEpochMilli();
+    private final long node;
+    private final AtomicLong last = new AtomicLong(); // millisecond | counter of the last id handed out
+    private final AtomicLong floor = new AtomicLong(); // what stands in for the clock while it is behind the ids
+
+    public TimeOrderedIdGenerator(int node) {
+        if (node < 0 || node >= 1 << NODE_BITS) {
+            throw new IllegalArgumentException("Node must be in [0, " + (1 << NODE_BITS) + ")");
+        }
+        this.node = node;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long now = (System.currentTimeMillis() - epochMillis) << COUNTER_BITS;
+            long base = Math.max(now, floor.get());
+            long previous = last.get();
+            long next = Math.max(previous + 1, base);
+            if (next - base > MAX_AHEAD) {
+                if (base > now || next - now > CLOCK_STEP) {
+                    // the clock is behind ids of before a restart or a step back, count on from them until it catches up
+                    floor.accumulateAndGet(previous, Math::max);
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            if (last.compareAndSet(previous, next)) {
+                return (next >>> COUNTER_BITS) << (NODE_BITS + COUNTER_BITS) | node << COUNTER_BITS | (next & COUNTER_MASK);
+            }
+        }
+    }
+
+    // Ids handed out from now on are greater than the given one, whatever node it came from
+    public void seed(long id) {
+        long past = (id >>> (NODE_BITS + COUNTER_BITS)) << COUNTER_BITS | (id & COUNTER_MASK);
+        last.accumulateAndGet(past, Math::max);
+        floor.accumulateAndGet(past + 1, Math::max);
+    }
+
+    // Millisecond the id was created in
+    public static Instant timestampOf(long id) {
+        return EPOCH.plusMillis(id >>> (NODE_BITS + COUNTER_BITS));
+    }
+
+    public static int nodeOf(long id) {
+        return (int) (id >>> COUNTER_BITS) & ((1 << NODE_BITS) - 1);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.codescreen.bankledger.cluster;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterRouterTest {
+
+    private static final String A = "http://localhost:9090";
+    private static final String B = "http://localhost:9091";
+    private static final int PARTITIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void partitionMovesWithHistoryAndBalance() throws IOException {
+        EventStore storeA = new EventStore();
+        EventStore storeB = new EventStore();
+        try (ClusterRouter routerA = new ClusterRouter(A, List.of(A), PARTITIONS, 8, storeA, HttpClient.newHttpClient());
+             ClusterRouter routerB = new ClusterRouter(B, List.of(A), PARTITIONS, 8, storeB, HttpClient.newHttpClient())) {
+            String userId = "user1";
+            int partition = routerA.partitionOf(userId);
+            storeA.addEvent(userId, new LoadEvent(userId, new BigDecimal("100.00"), "USD"), 10000);
+            storeA.authorize(userId, new AuthorizationEvent(userId, new BigDecimal("30.00"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT), 3000);
+            storeA.authorize(userId, new AuthorizationEvent(userId, new BigDecimal("90.00"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT), 9000);
+            assertTrue(routerA.isLocal(partition));
+            assertFalse(routerB.isLocal(partition), "A node outside the membership owns nothing");
+
+            routerB.acceptPartition(partition, routerA.exportPartition(partition));
+
+            assertTrue(routerB.isLocal(partition));
+            assertEquals(7000, storeB.getBalance(userId));
+            List<Event> events = storeB.getEventsOfUser(userId);
+            assertEquals(3, events.size());
+            assertEquals(ResponseCode.DECLINED, ((AuthorizationEvent) events.get(2)).getResponseCode());
+            assertEquals(2, events.get(2).getSequence());
+
+            routerB.acceptPartition(partition, routerA.exportPartition(partition));
+            assertEquals(3, storeB.getEventsOfUser(userId).size(), "A repeated transfer is ignored");
+        }
+    }
+
+    @Test
+    void accountsOfOtherNodesAreDroppedOnStart() {
+        EventStore store = new EventStore();
+        for (int i = 0; i < 100; i++) {
+            store.addEvent("user" + i, new LoadEvent("user" + i, BigDecimal.ONE, "USD"), 100);
+        }
+        try (ClusterRouter router = new ClusterRouter(A, List.of(A, B), PARTITIONS, 8, store, HttpClient.newHttpClient())) {
+            router.start();
+            assertTrue(store.getAccountCount() > 0 && store.getAccountCount() < 100);
+            for (String userId : store.getUserIds()) {
+                assertTrue(router.isLocal(router.partitionOf(userId)));
+            }
+        }
+    }
+
+    @Test
+    void ownersOutliveARestartWhateverTheConfiguration() throws IOException {
+        Path stateFile = directory.resolve("state");
+        EventStore storeA = new EventStore();
+        storeA.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+        int partition;
+        try (ClusterRouter routerA = new ClusterRouter(A, List.of(A), PARTITIONS, 8, storeA, HttpClient.newHttpClient());
+             ClusterRouter routerB = new ClusterRouter(B, List.of(A), PARTITIONS, 8, new EventStore(), HttpClient.newHttpClient(), stateFile)) {
+            partition = routerA.partitionOf("user1");
+            routerB.acceptPartition(partition, routerA.exportPartition(partition));
+        }
+
+        EventStore recovered = new EventStore();
+        recovered.addEvent("user2", new LoadEvent("user2", BigDecimal.ONE, "USD"), 100);
+        try (ClusterRouter restarted = new ClusterRouter(B, List.of(A), PARTITIONS, 8, recovered, HttpClient.newHttpClient(), stateFile)) {
+            restarted.start();
+            assertTrue(restarted.isLocal(partition), "The partition taken over stays here");
+            assertEquals(1, restarted.getLocalPartitionCount());
+            assertEquals(restarted.isLocal(restarted.partitionOf("user2")), recovered.getAccountCount() == 1,
+                    "Recovered accounts of partitions owned elsewhere are dropped");
+        }
+    }
+}
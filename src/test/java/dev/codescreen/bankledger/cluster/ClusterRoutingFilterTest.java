@@ -0,0 +1,173 @@
+package dev.codescreen.bankledger.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import dev.codescreen.bankledger.store.EventStore;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ClusterRoutingFilterTest {
+
+    private static final String A = "http://localhost:9090";
+    private static final String B = "http://localhost:9091";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = mock(HttpClient.class);
+    private ClusterRouter router;
+    private String localUser;
+    private String remoteUser;
+
+    @BeforeEach
+    void setUp() {
+        router = new ClusterRouter(A, List.of(A, B), 16, 8, new EventStore(), httpClient);
+        for (int i = 0; localUser == null || remoteUser == null; i++) {
+            String userId = "user" + i;
+            if (router.isLocal(router.partitionOf(userId))) {
+                localUser = localUser == null ? userId : localUser;
+            } else {
+                remoteUser = remoteUser == null ? userId : remoteUser;
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+    }
+
+    @Test
+    void writesOwnedHereRunLocally() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter("forward").doFilter(load(localUser), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(localUser, objectMapper.readTree(chain.getRequest().getInputStream()).get("userId").asText(), "The body read for routing is handed on");
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void forwardModeProxiesToTheOwner() throws Exception {
+        stubOwner(201, "{\"userId\":\"" + remoteUser + "\"}");
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter("forward").doFilter(load(remoteUser), response, chain);
+
+        assertNull(chain.getRequest(), "Nothing runs here");
+        assertEquals(201, response.getStatus());
+        assertEquals(remoteUser, objectMapper.readTree(response.getContentAsByteArray()).get("userId").asText());
+        HttpRequest forwarded = sentRequest();
+        assertEquals(URI.create(B + "/load"), forwarded.uri());
+        assertEquals("1", forwarded.headers().firstValue(ClusterRouter.HOPS_HEADER).orElse(null));
+    }
+
+    @Test
+    void redirectModeSendsTheClientToTheOwner() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter("redirect").doFilter(load(remoteUser), response, new MockFilterChain());
+
+        assertEquals(307, response.getStatus());
+        assertEquals(B + "/load", response.getHeader("Location"));
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void batchOfMixedOwnersIsSplitAndPutBackInOrder() throws Exception {
+        stubOwner(200, "[{\"status\":201,\"body\":{\"node\":\"B\"}}]");
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/load/batch");
+        request.setContentType("application/json");
+        request.setContent(("[" + item(localUser, "m1") + "," + item(remoteUser, "m2") + "," + item(localUser, "m3") + "]").getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // answers each item of the local part with the messageId it was sent
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                ArrayNode results = objectMapper.createArrayNode();
+                for (JsonNode item : objectMapper.readTree(req.getInputStream())) {
+                    results.addObject().put("status", 201).putObject("body").put("node", "A").put("messageId", item.get("messageId").asText());
+                }
+                resp.setStatus(200);
+                resp.getOutputStream().write(objectMapper.writeValueAsBytes(results));
+            }
+        });
+        filter("redirect").doFilter(request, response, chain);
+
+        assertEquals(200, response.getStatus());
+        JsonNode results = objectMapper.readTree(response.getContentAsByteArray());
+        assertEquals(3, results.size());
+        assertEquals("m1", results.get(0).get("body").get("messageId").asText());
+        assertEquals("B", results.get(1).get("body").get("node").asText(), "Batches are proxied whatever the routing mode");
+        assertEquals("m3", results.get(2).get("body").get("messageId").asText());
+        assertEquals(URI.create(B + "/load/batch"), sentRequest().uri());
+    }
+
+    @Test
+    void hopsHeaderThatIsNotACountIsTakenAsNone() throws Exception {
+        stubOwner(201, "{}");
+        MockHttpServletRequest request = load(remoteUser);
+        request.addHeader(ClusterRouter.HOPS_HEADER, "not-a-number");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter("forward").doFilter(request, response, new MockFilterChain());
+
+        assertEquals(201, response.getStatus());
+        assertEquals("1", sentRequest().headers().firstValue(ClusterRouter.HOPS_HEADER).orElse(null));
+
+        MockHttpServletRequest looping = load(remoteUser);
+        looping.addHeader(ClusterRouter.HOPS_HEADER, "3");
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        filter("forward").doFilter(looping, refused, new MockFilterChain());
+        assertEquals(503, refused.getStatus());
+    }
+
+    private ClusterRoutingFilter filter(String routing) {
+        return new ClusterRoutingFilter(router, httpClient, objectMapper, routing, 100);
+    }
+
+    private MockHttpServletRequest load(String userId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/load");
+        request.setContentType("application/json");
+        request.setContent(item(userId, "m1").getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static String item(String userId, String messageId) {
+        return "{\"userId\": \"" + userId + "\", \"messageId\": \"" + messageId + "\", \"transactionAmount\": {\"amount\": \"1\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubOwner(int status, String body) throws Exception {
+        HttpResponse<byte[]> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("Content-Type", List.of("application/json")), (name, value) -> true));
+        doReturn(response).when(httpClient).send(any(HttpRequest.class), any());
+    }
+
+    private HttpRequest sentRequest() throws Exception {
+        ArgumentCaptor<HttpRequest> sent = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpClient, atLeastOnce()).send(sent.capture(), any());
+        return sent.getValue();
+    }
+}
@@ -0,0 +1,45 @@
+package dev.codescreen.bankledger.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+
+    private static final int PARTITIONS = 1024;
+
+    @Test
+    void partitionsSpreadOverAllNodes() {
+        HashRing ring = new HashRing(List.of("http://a", "http://b", "http://c"), 64);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            counts.merge(ring.ownerOf(partition), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > PARTITIONS / 6, "Roughly a third each, got " + counts));
+    }
+
+    @Test
+    void addingANodeOnlyMovesPartitionsToIt() {
+        HashRing before = new HashRing(List.of("http://a", "http://b", "http://c"), 64);
+        HashRing after = new HashRing(List.of("http://a", "http://b", "http://c", "http://d"), 64);
+        int moved = 0;
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (!before.ownerOf(partition).equals(after.ownerOf(partition))) {
+                assertEquals("http://d", after.ownerOf(partition));
+                moved++;
+            }
+        }
+        assertTrue(moved > PARTITIONS / 8 && moved < PARTITIONS / 2, "About a quarter moves, got " + moved);
+    }
+
+    @Test
+    void partitionOfIsStable() {
+        assertEquals(HashRing.partitionOf("user1", PARTITIONS), HashRing.partitionOf("user1", PARTITIONS));
+        assertTrue(HashRing.partitionOf("user1", PARTITIONS) >= 0);
+    }
+}
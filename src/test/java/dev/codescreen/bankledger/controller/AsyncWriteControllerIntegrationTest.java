@@ -0,0 +1,80 @@
+package dev.codescreen.bankledger.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "ledger.web.async=true")
+@AutoConfigureMockMvc
+public class AsyncWriteControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testLoadAndAuthorizationCompleteAsynchronously() throws Exception {
+        perform("/load", "{\"userId\": \"async1\", \"messageId\": \"a1\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}")
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("100.00"));
+        perform("/authorization", "{\"userId\": \"async1\", \"messageId\": \"a2\", \"transactionAmount\": {\"amount\": \"60\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}")
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.responseCode").value("APPROVED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("40.00"));
+        perform("/authorization", "{\"userId\": \"async1\", \"messageId\": \"a3\", \"transactionAmount\": {\"amount\": \"60\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}")
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.responseCode").value("DECLINED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("40.00"));
+    }
+
+    @Test
+    public void testRetriedMessageIdGetsTheOriginalResponse() throws Exception {
+        String load = "{\"userId\": \"async2\", \"messageId\": \"a4\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}";
+        String first = perform("/load", load).andExpect(MockMvcResultMatchers.status().isCreated()).andReturn().getResponse().getContentAsString();
+        String retry = perform("/load", load).andExpect(MockMvcResultMatchers.status().isCreated()).andReturn().getResponse().getContentAsString();
+        assertEquals(first, retry);
+
+        String debit = "{\"userId\": \"async2\", \"messageId\": \"a5\", \"transactionAmount\": {\"amount\": \"30\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}";
+        String approved = perform("/authorization", debit).andReturn().getResponse().getContentAsString();
+        assertEquals(approved, perform("/authorization", debit).andReturn().getResponse().getContentAsString());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/async2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("70.00"));
+    }
+
+    @Test
+    public void testRejectedWritesAreAnsweredAsynchronouslyToo() throws Exception {
+        perform("/load", "{\"userId\": \"async3\", \"messageId\": \"a6\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}")
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        for (int i = 0; i < 2; i++) {
+            perform("/load", "{\"userId\": \"async3\", \"messageId\": \"rich" + i + "\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}")
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+        perform("/load", "{\"userId\": \"async3\", \"messageId\": \"rich2\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}")
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        // invalid requests are refused before anything goes async
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"async3\"}"))
+                .andExpect(MockMvcResultMatchers.request().asyncNotStarted())
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    // The request goes async, and the response is the one written once its future completes
+    private ResultActions perform(String path, String body) throws Exception {
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders.put(path)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started));
+    }
+}
@@ -9,16 +9,20 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import java.math.BigDecimal;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
-@SpringBootTest
+@SpringBootTest(properties = "ledger.index.enabled=true")
 @AutoConfigureMockMvc
 
 public class TransactionControllerIntegrationTest {
@@ -143,6 +147,55 @@ public class TransactionControllerIntegrationTest {
                 .andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
+    @Test
+    public void testLoadWithOversizedFields() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"user1\", \"messageId\": \"oversized1\", \"transactionAmount\": {\"amount\": \"1\", \"currency\": \"" + "X".repeat(300) + "\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"" + "u".repeat(257) + "\", \"messageId\": \"oversized2\", \"transactionAmount\": {\"amount\": \"1\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void testLoadBeyondTheLargestBalanceIsRefused() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"userId\": \"richUser\", \"messageId\": \"rich" + i + "\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"richUser\", \"messageId\": \"rich3\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/richUser"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("80000000000000000.00"));
+    }
+
+    @Test
+    public void testLoadBatchBeyondTheLargestBalanceIsRefusedWhole() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"richBatch\", \"messageId\": \"rb0\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+        // the first load still fits, the second does not
+        String batch = "[{\"userId\": \"richBatch\", \"messageId\": \"rb1\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}},"
+                + "{\"userId\": \"richBatch\", \"messageId\": \"rb2\", \"transactionAmount\": {\"amount\": \"40000000000000000\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}]";
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/load/batch")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(batch))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(400))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value(400));
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/richBatch"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("40000000000000000.00"));
+    }
+
     @Test
     public void testLoadWithMissingFields() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.put("/load")
@@ -151,6 +204,251 @@ public class TransactionControllerIntegrationTest {
                 .andExpect(MockMvcResultMatchers.status().isBadRequest());
     }
 
+    @Test
+    public void testLoadBatchAppliesItemsInOrderPerUser() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"userId\": \"batch1\", \"messageId\": \"b1\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}},"
+                                + "{\"userId\": \"batch2\", \"messageId\": \"b2\", \"transactionAmount\": {\"amount\": \"10\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}},"
+                                + "{\"userId\": \"batch1\", \"messageId\": \"b3\", \"transactionAmount\": {\"amount\": \"50\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}},"
+                                + "{\"userId\": \"batch1\", \"messageId\": \"b4\", \"transactionAmount\": {\"amount\": \"50\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}},"
+                                + "{\"userId\": \"batch1\", \"messageId\": \"b1\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}},"
+                                + "{\"userId\": \"batch1\"}]"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(201))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].body.balance.amount").value("100.00"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].body.balance.amount").value("10.00"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].body.balance.amount").value("150.00"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[3].status").value(400))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[4].body.balance.amount").value("100.00")) // duplicate of the first item
+                .andExpect(MockMvcResultMatchers.jsonPath("$[5].status").value(400));
+    }
 
+    @Test
+    public void testAuthorizationBatchFromNdjson() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"batch3\", \"messageId\": \"b5\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"userId\": \"batch3\", \"messageId\": \"b6\", \"transactionAmount\": {\"amount\": \"60\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}\n"
+                                + "{\"userId\": \"batch3\", \"messageId\": \"b7\", \"transactionAmount\": {\"amount\": \"60\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}\n"
+                                + "{\"userId\": \"batch3\", \"messageId\": \"b8\", \"transactionAmount\": {\"amount\": \"40\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}\n"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].body.responseCode").value("APPROVED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].body.responseCode").value("DECLINED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].body.responseCode").value("APPROVED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].body.balance.amount").value("0.00"));
+
+        // a single request retrying a batch item gets the batch's response
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"batch3\", \"messageId\": \"b7\", \"transactionAmount\": {\"amount\": \"60\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.responseCode").value("DECLINED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("40.00"));
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void testAuthorizationBeyondTheLargestBalanceIsDeclined() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"hugeDebit\", \"messageId\": \"hd1\", \"transactionAmount\": {\"amount\": \"100\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"hugeDebit\", \"messageId\": \"hd2\", \"transactionAmount\": {\"amount\": \"99999999999999999999999\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.responseCode").value("DECLINED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("100.00"));
+
+        // in a batch only that item is declined
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"userId\": \"hugeDebit\", \"messageId\": \"hd3\", \"transactionAmount\": {\"amount\": \"30\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}},"
+                                + "{\"userId\": \"hugeDebit\", \"messageId\": \"hd4\", \"transactionAmount\": {\"amount\": \"99999999999999999999999\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}]"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value(201))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].body.responseCode").value("APPROVED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value(201))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].body.responseCode").value("DECLINED"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/hugeDebit"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("70.00"));
+    }
+
+    @Test
+    public void testMalformedBatch() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"userId\": "))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void testEventsArePagedByCursor() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"userId\": \"pager\", \"messageId\": \"page" + i + "\", \"transactionAmount\": {\"amount\": \"1\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/pager").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("X-Next-Cursor", "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].sequence").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/pager").param("cursor", "4").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+        // a filtered page keeps reading past windows without a match
+        String third = com.jayway.jsonpath.JsonPath.read(mockMvc.perform(MockMvcRequestBuilders.get("/events/pager").param("cursor", "3").param("limit", "1"))
+                .andReturn().getResponse().getContentAsString(), "$[0].timestamp");
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/pager").param("limit", "1").param("from", third))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].sequence").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/pager").param("from", "2999-01-01T00:00:00"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/nobody"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testEventsStreamAsNdjson() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"userId\": \"streamer\", \"messageId\": \"stream" + i + "\", \"transactionAmount\": {\"amount\": \"1\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+
+        MvcResult started = mockMvc.perform(MockMvcRequestBuilders.get("/events/streamer").param("cursor", "1").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.trim().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"sequence\":1"));
+        assertTrue(lines[1].contains("\"sequence\":2"));
+    }
+
+    @Test
+    public void testMetricsAreScrapeable() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"metered\", \"messageId\": \"metered1\", \"transactionAmount\": {\"amount\": \"5\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        String body = mockMvc.perform(MockMvcRequestBuilders.get("/metrics"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(body.contains("ledger_request_duration_seconds{method=\"PUT\",endpoint=\"/authorization\",quantile=\"0.99\"}"));
+        assertTrue(body.contains("ledger_request_duration_seconds_count{method=\"PUT\",endpoint=\"/authorization\"}"));
+        assertTrue(body.contains("ledger_authorizations_total{response_code=\"DECLINED\"}"));
+        assertTrue(body.contains("\nledger_accounts "));
+        assertTrue(body.contains("\nledger_rate_table_age_seconds "));
+    }
+
+    @Test
+    public void testReportsAcrossAccounts() throws Exception {
+        LocalDateTime from = LocalDateTime.now().minusMinutes(1);
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"userId\": \"reported" + i + "\", \"messageId\": \"report" + i + "\", \"transactionAmount\": {\"amount\": \"7\", \"currency\": \"GBP\", \"debitOrCredit\": \"DEBIT\"}}"))
+                    .andExpect(MockMvcResultMatchers.status().isCreated());
+        }
+        String to = LocalDateTime.now().plusMinutes(1).toString();
+
+        String cursor = mockMvc.perform(MockMvcRequestBuilders.get("/reports/events")
+                        .param("from", from.toString()).param("to", to).param("kind", "DECLINED").param("currency", "GBP").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+        mockMvc.perform(MockMvcRequestBuilders.get("/reports/events")
+                        .param("from", from.toString()).param("to", to).param("kind", "DECLINED").param("currency", "GBP").param("limit", "2")
+                        .param("cursor", cursor))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/reports/events")
+                        .param("from", from.toString()).param("to", to).param("cursor", "soon"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/reports/totals")
+                        .param("from", from.toString()).param("to", to).param("currency", "GBP"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].kind").value("DECLINED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].count").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].total").isNumber());
+        mockMvc.perform(MockMvcRequestBuilders.get("/reports/totals").param("from", to).param("to", from.toString()))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void testBalanceIsReadWithoutAppending() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"balanceUser\", \"messageId\": \"balance1\", \"transactionAmount\": {\"amount\": \"120\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/balanceUser"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userId").value("balanceUser"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("120.00"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.currency").value("USD"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/balanceUser").param("currency", "USD"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("120.00"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/events/balanceUser"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/nobody"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void testBalanceAsOfPastTime() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.put("/load")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"asOfUser\", \"messageId\": \"asOf1\", \"transactionAmount\": {\"amount\": \"40\", \"currency\": \"USD\", \"debitOrCredit\": \"CREDIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+        LocalDateTime between = LocalDateTime.now();
+        Thread.sleep(5);
+        mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"asOfUser\", \"messageId\": \"asOf2\", \"transactionAmount\": {\"amount\": \"15\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/asOfUser").param("at", between.toString()))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("40.00"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/asOfUser").param("at", between.minusHours(1).toString()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("0.00"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/balance/asOfUser"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("25.00"));
+    }
+
+    @Test
+    public void testTransactionIsFetchedById() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.put("/authorization")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"idUser\", \"messageId\": \"id1\", \"transactionAmount\": {\"amount\": \"5\", \"currency\": \"USD\", \"debitOrCredit\": \"DEBIT\"}}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn();
+        String transactionId = com.jayway.jsonpath.JsonPath.read(result.getResponse().getContentAsString(), "$.messageId");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/transactions/" + transactionId))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userId").value("idUser"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.transactionId").value(transactionId))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.responseCode").value("DECLINED"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/transactions/1"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/transactions/abc"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+}
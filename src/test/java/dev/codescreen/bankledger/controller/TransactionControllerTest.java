@@ -1,12 +1,14 @@
 package dev.codescreen.bankledger.controller;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.codescreen.bankledger.config.IdConfig;
 import dev.codescreen.bankledger.dto.AuthorizationRequest;
 import dev.codescreen.bankledger.dto.LoadRequest;
 import dev.codescreen.bankledger.dto.Amount;
@@ -15,8 +17,12 @@ import dev.codescreen.bankledger.enums.ResponseCode;
 import dev.codescreen.bankledger.event.AuthorizationEvent;
 import dev.codescreen.bankledger.event.Event;
 import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.metrics.LedgerMetrics;
+import dev.codescreen.bankledger.service.TransactionService;
 import dev.codescreen.bankledger.store.EventStore;
 import dev.codescreen.bankledger.util.CurrencyConverter;
+import dev.codescreen.bankledger.util.IdempotencyCache;
+import dev.codescreen.bankledger.util.Money;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -24,15 +30,20 @@ import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
 
-@WebMvcTest(TransactionController.class)
+@WebMvcTest(value = {TransactionController.class, WriteController.class}, properties = "ledger.events.max-page-size=2")
+@Import({TransactionService.class, IdempotencyCache.class, LedgerMetrics.class, IdConfig.class})
 public class TransactionControllerTest {
 
     @Autowired
@@ -47,7 +58,7 @@ public class TransactionControllerTest {
     @BeforeEach
     void setUp() {
         when(currencyConverter.convert(anyString(), anyString(), any(BigDecimal.class))).thenReturn(BigDecimal.ONE);
-        when(eventStore.getLatestSnapshotBalance(anyString())).thenReturn(BigDecimal.ZERO);
+        when(eventStore.getBalance(anyString())).thenReturn(0L);
     }
 
 
@@ -56,13 +67,10 @@ public class TransactionControllerTest {
     public void testUnitHandleLoad() throws Exception { // since we are unit testing all other services needs to be mocked
         // Prepare the request object
         LoadRequest request = new LoadRequest("user1", "message1",new Amount("100", "USD", DebitCredit.CREDIT));
-        when(eventStore.getLatestSnapshotBalance(anyString())).thenReturn(BigDecimal.ZERO);
-        List<Event> mockEvents = Arrays.asList(
-                new LoadEvent("user1", new BigDecimal("100.00"), "USD")
-        );
-        when(eventStore.getEventsSinceLastSnapshot("user1")).thenReturn(mockEvents);
-        when(currencyConverter.convert(anyString(), anyString(), any(BigDecimal.class)))
-                .thenAnswer(invocation -> invocation.getArgument(2, BigDecimal.class));
+        when(eventStore.getBalance(anyString())).thenReturn(0L);
+        when(eventStore.addEvent(eq("user1"), any(LoadEvent.class), anyLong())).thenReturn(10000L);
+        mockIdentityConversion();
+        when(currencyConverter.getRateVersion()).thenReturn(7L);
 
         mockMvc.perform(put("/load")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -71,21 +79,20 @@ public class TransactionControllerTest {
                 .andExpect(jsonPath("$.balance.amount").value("100.00"));
 
         // Verify that the correct methods were called on the mock objects
-        verify(eventStore, atLeastOnce()).getEventsSinceLastSnapshot("user1");
-        verify(currencyConverter, atLeastOnce()).convert(anyString(), anyString(), any(BigDecimal.class));
-        verify(eventStore).addEvent(anyString(), any());
+        verify(eventStore, never()).getEventsSinceLastSnapshot("user1"); // balance comes from the running total, not a replay
+        verify(currencyConverter, atLeastOnce()).convertToMoney(anyString(), anyString(), any(BigDecimal.class));
+        // the event carries the amount it was converted to once, and the version of the rates used
+        verify(eventStore).addEvent(eq("user1"), argThat(event -> event.getBaseAmount() == 10000L && event.getRateVersion() == 7L), eq(10000L));
     }
 
     @Test
     public void testUnitHandleAuthorization() throws Exception { // since we are unit testing all other services needs to be mocked
-        when(eventStore.getLatestSnapshotBalance("user1")).thenReturn(new BigDecimal("100.00"));
-        //since we already it to store the new authorization request, it will be in events after last snapshot authorization
-        List<Event> mockEvents = Arrays.asList(
-                new AuthorizationEvent("user1", new BigDecimal("50"), "USD", ResponseCode.APPROVED, DebitCredit.DEBIT)
-        );
-        when(eventStore.getEventsSinceLastSnapshot("user1")).thenReturn(mockEvents);
-        when(currencyConverter.convert(anyString(), anyString(), any(BigDecimal.class)))
-                .thenAnswer(invocation -> invocation.getArgument(2, BigDecimal.class));
+        // the store approves the debit against its running balance and returns the new balance
+        when(eventStore.authorize(eq("user1"), any(AuthorizationEvent.class), anyLong())).thenAnswer(invocation -> {
+            invocation.getArgument(1, AuthorizationEvent.class).setResponseCode(ResponseCode.APPROVED);
+            return 5000L;
+        });
+        mockIdentityConversion();
 
         // Prepare the request object
         AuthorizationRequest request = new AuthorizationRequest("user1", "message1", new Amount("50", "USD", DebitCredit.DEBIT));
@@ -95,14 +102,114 @@ public class TransactionControllerTest {
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(new ObjectMapper().writeValueAsString(request)))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.balance.amount").value("50.00")); // Check the resulting balance after the authorization
+                .andExpect(jsonPath("$.balance.amount").value("50.00")) // Check the resulting balance after the authorization
+                .andExpect(jsonPath("$.responseCode").value("APPROVED"));
 
         // Verify that the correct methods were called on the mock objects
-        verify(eventStore).addEvent(anyString(), any(AuthorizationEvent.class));
-        verify(eventStore, atLeastOnce()).getEventsSinceLastSnapshot("user1");
-        verify(currencyConverter, atLeastOnce()).convert(anyString(), anyString(), any(BigDecimal.class));// Called twice if used in updateSnapshot as well
+        verify(eventStore).authorize(eq("user1"), any(AuthorizationEvent.class), eq(5000L));
+        verify(eventStore, never()).getEventsSinceLastSnapshot("user1");
+        verify(currencyConverter, atLeastOnce()).convertToMoney(anyString(), anyString(), any(BigDecimal.class));
     }
 
+    @Test
+    public void testRetriedLoadReturnsOriginalResponse() throws Exception {
+        when(eventStore.addEvent(eq("user2"), any(LoadEvent.class), anyLong())).thenReturn(10000L, 20000L);
+        mockIdentityConversion();
+        String request = asJsonString(new LoadRequest("user2", "retried", new Amount("100", "USD", DebitCredit.CREDIT)));
+
+        String first = mockMvc.perform(put("/load").contentType(MediaType.APPLICATION_JSON).content(request))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String retry = mockMvc.perform(put("/load").contentType(MediaType.APPLICATION_JSON).content(request))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.balance.amount").value("100.00"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(first, retry);
+        verify(eventStore, times(1)).addEvent(eq("user2"), any(LoadEvent.class), anyLong());
+        mockMvc.perform(get("/idempotency/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits").value(1));
+    }
+
+    @Test
+    public void testEventsPageDefaultsToTheMaximumPageSize() throws Exception {
+        List<Event> events = new java.util.ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            LoadEvent event = new LoadEvent("user3", BigDecimal.ONE, "USD");
+            event.setSequence(i);
+            events.add(event);
+        }
+        when(eventStore.hasAccount("user3")).thenReturn(true);
+        when(eventStore.getEvents(eq("user3"), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(1);
+            long to = invocation.getArgument(2);
+            return events.subList((int) Math.min(from, events.size()), (int) Math.min(to, events.size()));
+        });
+
+        mockMvc.perform(get("/events/user3"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "2"))
+                .andExpect(jsonPath("$.length()").value(2));
+        mockMvc.perform(get("/events/user3").param("limit", "100"))
+                .andExpect(jsonPath("$.length()").value(2));
+        // only the window of the page, plus one to find the next cursor, is read
+        verify(eventStore, never()).getEvents(eq("user3"), anyLong(), eq(Long.MAX_VALUE));
+        verify(eventStore, never()).getEventsOfUser("user3");
+    }
+
+    @Test
+    public void testEventsStreamPastTheMaximumPageSize() throws Exception {
+        List<Event> events = new java.util.ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            LoadEvent event = new LoadEvent("user4", BigDecimal.ONE, "USD");
+            event.setSequence(i);
+            events.add(event);
+        }
+        when(eventStore.hasAccount("user4")).thenReturn(true);
+        when(eventStore.getEvents(eq("user4"), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(1);
+            long to = invocation.getArgument(2);
+            return events.subList((int) Math.min(from, events.size()), (int) Math.min(to, events.size()));
+        });
+
+        assertArrayEquals(new String[]{"0", "1", "2", "3", "4"}, streamedSequences(get("/events/user4")));
+        verify(eventStore, never()).getEvents(eq("user4"), anyLong(), eq(Long.MAX_VALUE));
+        // a limit that cuts the stream ends it with the cursor to continue from
+        assertArrayEquals(new String[]{"0", "1", "2", "next 3"}, streamedSequences(get("/events/user4").param("limit", "3")));
+        // the first event at or after `to` ends the stream without reading further
+        clearInvocations(eventStore);
+        assertArrayEquals(new String[0], streamedSequences(get("/events/user4").param("to", "2000-01-01T00:00:00")));
+        verify(eventStore, never()).getEvents("user4", 2, 4);
+    }
+
+    // Sequences of the streamed events, and the trailing cursor as "next n"
+    private String[] streamedSequences(MockHttpServletRequestBuilder query) throws Exception {
+        MvcResult started = mockMvc.perform(query.accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString();
+        return body.lines().map(line -> {
+            JsonNode node = uncheckedRead(line);
+            return node.has("nextCursor") ? "next " + node.get("nextCursor").asText() : node.get("sequence").asText();
+        }).toArray(String[]::new);
+    }
+
+    private JsonNode uncheckedRead(String line) {
+        try {
+            return new ObjectMapper().readTree(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Every currency converts at a rate of 1
+    private void mockIdentityConversion() {
+        when(currencyConverter.convertToMoney(anyString(), anyString(), any(BigDecimal.class)))
+                .thenAnswer(invocation -> Money.of(invocation.getArgument(2, BigDecimal.class), invocation.getArgument(1, String.class)));
+        when(currencyConverter.convert(any(Money.class), anyString()))
+                .thenAnswer(invocation -> Money.ofMinor(invocation.getArgument(0, Money.class).getMinorUnits(), invocation.getArgument(1, String.class)));
+    }
 
     // Helper to convert objects to JSON string for request bodies
     private String asJsonString(final Object obj) {
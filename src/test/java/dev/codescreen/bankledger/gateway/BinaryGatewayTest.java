@@ -0,0 +1,93 @@
+package dev.codescreen.bankledger.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = {"ledger.gateway.enabled=true", "ledger.gateway.port=0"})
+public class BinaryGatewayTest {
+
+    @Autowired
+    private BinaryGateway gateway;
+
+    @Test
+    public void pipelinedRequestsFollowTheHttpRules() throws IOException {
+        try (Socket socket = new Socket("localhost", gateway.getPort())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            writeRequest(out, GatewayCodec.LOAD, 1, "gatewayUser", "gw1", "100", "USD", 2);
+            writeRequest(out, GatewayCodec.AUTHORIZATION, 2, "gatewayUser", "gw2", "30", "USD", 1);
+            writeRequest(out, GatewayCodec.AUTHORIZATION, 3, "gatewayUser", "gw3", "500", "USD", 1);
+            writeRequest(out, GatewayCodec.LOAD, 4, "gatewayUser", "gw4", "-5", "USD", 2);
+            writeRequest(out, GatewayCodec.LOAD, 5, "gatewayUser", "gw1", "100", "USD", 2);
+            writeRequest(out, GatewayCodec.LOAD, 6, null, "gw6", "1", "USD", 2);
+            out.flush();
+
+            Map<Long, String> responses = new HashMap<>();
+            for (int i = 0; i < 6; i++) {
+                readResponse(in, responses);
+            }
+            assertEquals("201 0 100.00 USD", responses.get(1L));
+            assertEquals("201 1 70.00 USD", responses.get(2L));
+            assertEquals("201 2 70.00 USD", responses.get(3L));
+            assertEquals("400 Amount must be a positive number or zero", responses.get(4L));
+            assertEquals("201 0 100.00 USD", responses.get(5L), "A retried messageId gets the original response");
+            assertEquals("400", responses.get(6L).substring(0, 3));
+        }
+    }
+
+    private static void writeRequest(DataOutputStream out, byte type, long correlationId, String userId, String messageId,
+                                     String amount, String currency, int debitOrCredit) throws IOException {
+        byte[][] strings = {bytes(userId), bytes(messageId), bytes(amount), bytes(currency)};
+        int length = 1 + 8 + 1;
+        for (byte[] string : strings) {
+            length += 2 + (string == null ? 0 : string.length);
+        }
+        out.writeInt(length);
+        out.writeByte(type);
+        out.writeLong(correlationId);
+        for (byte[] string : strings) {
+            out.writeShort(string == null ? -1 : string.length);
+            if (string != null) {
+                out.write(string);
+            }
+        }
+        out.writeByte(debitOrCredit);
+    }
+
+    private static void readResponse(DataInputStream in, Map<Long, String> responses) throws IOException {
+        in.readInt();
+        long correlationId = in.readLong();
+        int status = in.readShort();
+        if (status / 100 == 2) {
+            int responseCode = in.readByte();
+            String amount = readString(in);
+            String currency = readString(in);
+            in.readByte();
+            responses.put(correlationId, status + " " + responseCode + " " + amount + " " + currency);
+        } else {
+            responses.put(correlationId, status + " " + readString(in));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,41 @@
+package dev.codescreen.bankledger.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreContiguousAndBounded() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 16; value++) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index == previous || index == previous + 1, "No gap at " + value);
+            assertTrue(LatencyHistogram.highestValueIn(index) >= value);
+            assertTrue(LatencyHistogram.highestValueIn(index) - value <= value / 32, "Bucket of " + value + " too wide");
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE, LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(LatencyHistogram.MAX_TRACKABLE)));
+    }
+
+    @Test
+    void percentilesFollowRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().valueAtPercentile(0.99), "Empty histogram");
+
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1002, snapshot.getCount());
+        long p50 = snapshot.valueAtPercentile(0.5);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 33 / 32, "p50 was " + p50);
+        long p99 = snapshot.valueAtPercentile(0.99);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 33 / 32, "p99 was " + p99);
+        assertEquals(LatencyHistogram.MAX_TRACKABLE, snapshot.valueAtPercentile(1.0), "Values above the range land in the last bucket");
+    }
+}
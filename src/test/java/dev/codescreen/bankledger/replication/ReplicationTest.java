@@ -0,0 +1,137 @@
+package dev.codescreen.bankledger.replication;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ReplicationRole;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import dev.codescreen.bankledger.util.IdempotencyCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void followerAppliesTheLeaderLogAndCanBePromoted() throws IOException, InterruptedException {
+        try (WriteAheadLog leaderWal = new WriteAheadLog(directory.resolve("leader"), 1 << 20, 1, 16);
+             WriteAheadLog followerWal = new WriteAheadLog(directory.resolve("follower"), 1 << 20, 1, 16)) {
+            EventStore leaderStore = new EventStore(leaderWal);
+            EventStore followerStore = new EventStore(followerWal);
+            for (int i = 0; i < 500; i++) {
+                leaderStore.addEvent("user" + i % 10, new LoadEvent("user" + i % 10, BigDecimal.ONE, "USD"), 100);
+            }
+            try (ReplicationNode leader = start(leaderStore, leaderWal, ReplicationRole.LEADER, null, null)) {
+                int port = (Integer) leader.status().get("port");
+                try (ReplicationNode follower = start(followerStore, followerWal, ReplicationRole.FOLLOWER, "localhost:" + port, null)) {
+                    leaderStore.authorize("user1", new AuthorizationEvent("user1", BigDecimal.TEN, "USD", ResponseCode.DECLINED, DebitCredit.DEBIT), 1000);
+                    awaitTrue(() -> followerStore.getEventsOfUser("user1").size() == 51);
+
+                    assertEquals(leaderStore.getBalance("user1"), followerStore.getBalance("user1"));
+                    assertEquals(4000, followerStore.getBalance("user1"));
+                    assertEquals(ResponseCode.APPROVED, ((AuthorizationEvent) followerStore.getEvent("user1", 50)).getResponseCode());
+                    assertEquals(10, followerStore.getAccountCount());
+                    awaitTrue(() -> follower.getLagBytes() == 0);
+
+                    follower.promote();
+                    assertFalse(follower.isFollower());
+                    followerStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+                    assertEquals(51, followerStore.getEvent("user1", 51).getSequence());
+                    assertEquals(4100, followerStore.getBalance("user1"));
+                }
+            }
+        }
+    }
+
+    @Test
+    void restartedFollowerResumesFromItsSavedPosition() throws IOException, InterruptedException {
+        Path positionFile = directory.resolve("position");
+        try (WriteAheadLog leaderWal = new WriteAheadLog(directory.resolve("leader"), 1 << 20, 1, 16)) {
+            EventStore leaderStore = new EventStore(leaderWal);
+            for (int i = 0; i < 100; i++) {
+                leaderStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+            }
+            try (ReplicationNode leader = start(leaderStore, leaderWal, ReplicationRole.LEADER, null, null)) {
+                String address = "localhost:" + leader.status().get("port");
+                long saved;
+                try (WriteAheadLog followerWal = new WriteAheadLog(directory.resolve("follower"), 1 << 20, 1, 16)) {
+                    EventStore followerStore = new EventStore(followerWal);
+                    try (ReplicationNode follower = start(followerStore, followerWal, ReplicationRole.FOLLOWER, address, positionFile)) {
+                        awaitTrue(() -> followerStore.getEventsOfUser("user1").size() == 100);
+                        saved = (Long) follower.status().get("appliedPosition");
+                    }
+                }
+                assertEquals(List.of(address, Long.toString(saved)), Files.readAllLines(positionFile), "Saved on close");
+
+                leaderStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+                try (WriteAheadLog followerWal = new WriteAheadLog(directory.resolve("follower"), 1 << 20, 1, 16)) {
+                    EventStore followerStore = new EventStore(followerWal);
+                    followerStore.recover();
+                    try (ReplicationNode follower = start(followerStore, followerWal, ReplicationRole.FOLLOWER, address, positionFile)) {
+                        assertTrue((Long) follower.status().get("appliedPosition") >= saved, "Resumed rather than streamed from the start");
+                        awaitTrue(() -> followerStore.getEventsOfUser("user1").size() == 101);
+                        assertEquals(10100, followerStore.getBalance("user1"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void retryAfterPromotionIsAppliedAgain() throws IOException, InterruptedException {
+        try (WriteAheadLog leaderWal = new WriteAheadLog(directory.resolve("leader"), 1 << 20, 1, 16);
+             WriteAheadLog followerWal = new WriteAheadLog(directory.resolve("follower"), 1 << 20, 1, 16)) {
+            EventStore leaderStore = new EventStore(leaderWal);
+            EventStore followerStore = new EventStore(followerWal);
+            IdempotencyCache leaderCache = new IdempotencyCache(100, 600);
+            IdempotencyCache followerCache = new IdempotencyCache(100, 600);
+            try (ReplicationNode leader = start(leaderStore, leaderWal, ReplicationRole.LEADER, null, null);
+                 ReplicationNode follower = start(followerStore, followerWal, ReplicationRole.FOLLOWER, "localhost:" + leader.status().get("port"), null)) {
+                leaderCache.execute("load", "user1", "message1", () -> {
+                    leaderStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+                    return ResponseEntity.status(HttpStatus.CREATED).build();
+                });
+                awaitTrue(() -> followerStore.getEventsOfUser("user1").size() == 1);
+                follower.promote();
+
+                // the idempotency cache stays with the old leader, the new one applies the retry
+                followerCache.execute("load", "user1", "message1", () -> {
+                    followerStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+                    return ResponseEntity.status(HttpStatus.CREATED).build();
+                });
+                assertEquals(2, followerStore.getEventsOfUser("user1").size());
+                assertEquals(200, followerStore.getBalance("user1"));
+            }
+        }
+    }
+
+    private static ReplicationNode start(EventStore eventStore, WriteAheadLog writeAheadLog, ReplicationRole role, String leader,
+                                         Path positionFile) throws IOException {
+        ReplicationNode node = new ReplicationNode(eventStore, writeAheadLog, role, leader, 0, positionFile);
+        node.start();
+        return node;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the follower");
+            Thread.sleep(10);
+        }
+    }
+}
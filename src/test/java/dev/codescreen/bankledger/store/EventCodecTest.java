@@ -0,0 +1,52 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventCodecTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123456789);
+
+    @Test
+    void fieldsAtTheirLongestRoundTrip() {
+        String userId = "u".repeat(0xFFFF);
+        String currency = "C".repeat(0xFF);
+        // 255 bytes of two's complement, the top bit clear so the value stays positive
+        BigDecimal amount = new BigDecimal(BigInteger.ONE.shiftLeft(255 * 8 - 1).subtract(BigInteger.ONE), 2);
+        AuthorizationEvent event = new AuthorizationEvent(userId, amount, currency, ResponseCode.APPROVED, TIMESTAMP);
+        event.setSequence(42);
+
+        EventRecord record = EventCodec.decode(EventCodec.encode(userId, event, -1234));
+
+        assertEquals(userId, record.getUserId());
+        assertEquals(-1234, record.getBalanceEffect());
+        Event decoded = record.getEvent();
+        assertEquals(currency, decoded.getCurrency());
+        assertEquals(amount, decoded.getAmount());
+        assertEquals(TIMESTAMP, decoded.getTimestamp());
+        assertEquals(42, decoded.getSequence());
+        assertEquals(ResponseCode.APPROVED, ((AuthorizationEvent) decoded).getResponseCode());
+    }
+
+    @Test
+    void fieldsBeyondTheirLengthPrefixAreRejected() {
+        LoadEvent longCurrency = new LoadEvent("user1", BigDecimal.ONE, "C".repeat(0x100), TIMESTAMP);
+        assertThrows(IllegalArgumentException.class, () -> EventCodec.encode("user1", longCurrency, 100));
+
+        LoadEvent longUser = new LoadEvent("user1", BigDecimal.ONE, "USD", TIMESTAMP);
+        assertThrows(IllegalArgumentException.class, () -> EventCodec.encode("u".repeat(0x10000), longUser, 100));
+
+        BigDecimal wide = new BigDecimal(BigInteger.ONE.shiftLeft(255 * 8), 0);
+        LoadEvent longAmount = new LoadEvent("user1", wide, "USD", TIMESTAMP);
+        assertThrows(IllegalArgumentException.class, () -> EventCodec.encode("user1", longAmount, 100));
+    }
+}
@@ -0,0 +1,171 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+
+    @Test
+    void appendAcrossChunksKeepsPositions() {
+        EventLog log = new EventLog();
+        int count = EventLog.CHUNK_SIZE * 3 + 7;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, log.append(new LoadEvent("user1", BigDecimal.valueOf(i), "USD")));
+        }
+
+        assertEquals(count, log.size());
+        assertEquals(BigDecimal.valueOf(EventLog.CHUNK_SIZE), log.get(EventLog.CHUNK_SIZE).getAmount(), "First event of the second chunk");
+        assertEquals(BigDecimal.valueOf(count - 1), log.get(count - 1).getAmount());
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(count));
+    }
+
+    @Test
+    void chunkStorageDoublesAsSlotsAreWritten() {
+        EventChunk.OnHeap chunk = new EventChunk.OnHeap();
+        assertEquals(EventChunk.MIN_CAPACITY, chunk.capacity());
+        for (int i = 0; i < EventChunk.MIN_CAPACITY * 2 + 1; i++) {
+            chunk.set(i, new LoadEvent("user1", BigDecimal.valueOf(i), "USD"));
+        }
+        assertEquals(EventChunk.MIN_CAPACITY * 4, chunk.capacity());
+        assertEquals(BigDecimal.valueOf(EventChunk.MIN_CAPACITY), chunk.get(EventChunk.MIN_CAPACITY).getAmount());
+
+        // a log rebuilt in the middle of a chunk starts writing at that offset
+        EventLog log = new EventLog(EventLog.CHUNK_SIZE + 100);
+        log.append(new LoadEvent("user1", BigDecimal.ONE, "USD"));
+        assertEquals(BigDecimal.ONE, log.get(EventLog.CHUNK_SIZE + 100).getAmount());
+    }
+
+    @Test
+    void forEachVisitsRequestedRange() {
+        EventLog log = new EventLog();
+        for (int i = 0; i < EventLog.CHUNK_SIZE * 2; i++) {
+            log.append(new LoadEvent("user1", BigDecimal.valueOf(i), "USD"));
+        }
+
+        List<Event> visited = new ArrayList<>();
+        log.forEach(EventLog.CHUNK_SIZE - 2, EventLog.CHUNK_SIZE + 2, visited::add);
+        assertEquals(4, visited.size(), "Range spanning a chunk boundary");
+        assertEquals(BigDecimal.valueOf(EventLog.CHUNK_SIZE - 2), visited.get(0).getAmount());
+        assertEquals(BigDecimal.valueOf(EventLog.CHUNK_SIZE + 1), visited.get(3).getAmount());
+    }
+
+    @Test
+    void viewIsStableWhileWriterAppends() {
+        EventLog log = new EventLog();
+        log.append(new LoadEvent("user1", BigDecimal.ONE, "USD"));
+        List<Event> view = log.view();
+        log.append(new LoadEvent("user1", BigDecimal.TEN, "USD"));
+
+        assertEquals(1, view.size(), "A view only covers events published when it was taken");
+        assertEquals(2, log.view().size());
+        assertEquals(BigDecimal.TEN, log.view(1, 5).get(0).getAmount());
+    }
+
+    @Test
+    void readersSeePublishedEventsWithoutLocking() throws InterruptedException {
+        EventLog log = new EventLog();
+        int count = EventLog.CHUNK_SIZE * 20;
+        AtomicBoolean sawGap = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            while (log.size() < count) {
+                log.forEach(0, log.size(), event -> {
+                    if (event == null) {
+                        sawGap.set(true);
+                    }
+                });
+            }
+        });
+        reader.start();
+        for (int i = 0; i < count; i++) {
+            log.append(new LoadEvent("user1", BigDecimal.ONE, "USD"));
+        }
+        reader.join();
+
+        assertFalse(sawGap.get(), "Readers must never observe an unpublished slot");
+    }
+
+    @Test
+    void evictionDropsWholeChunksOnly() {
+        EventLog log = new EventLog();
+        for (int i = 0; i < EventLog.CHUNK_SIZE * 3; i++) {
+            log.append(new LoadEvent("user1", BigDecimal.valueOf(i), "USD"));
+        }
+        List<Event> before = log.view();
+
+        assertEquals(0, log.evictBefore(EventLog.CHUNK_SIZE - 1), "No whole chunk below the sequence");
+        assertEquals(EventLog.CHUNK_SIZE * 2, log.evictBefore(EventLog.CHUNK_SIZE * 2 + 5));
+        assertEquals(EventLog.CHUNK_SIZE * 2, log.firstResident());
+        assertEquals(EventLog.CHUNK_SIZE, log.view().size());
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(0));
+        assertEquals(BigDecimal.ZERO, before.get(0).getAmount(), "Views taken before the eviction stay readable");
+    }
+
+    @Test
+    void columnarChunkKeepsItsSlotsAsItGrows() {
+        ColumnarEventChunk chunk = new ColumnarEventChunk("user1", 0);
+        assertEquals(EventChunk.MIN_CAPACITY, chunk.capacity());
+        chunk.set(0, new LoadEvent("user1", new BigDecimal("1e40"), "USD"));
+        for (int i = 1; i < EventChunk.MIN_CAPACITY * 2 + 1; i++) {
+            chunk.set(i, new LoadEvent("user1", BigDecimal.valueOf(i), "USD"));
+        }
+        chunk.set(EventChunk.MIN_CAPACITY * 2 + 1, new LoadEvent("user1", BigDecimal.ONE, "usdt"));
+
+        assertEquals(EventChunk.MIN_CAPACITY * 4, chunk.capacity());
+        assertEquals(new BigDecimal("1e40"), chunk.get(0).getAmount(), "Kept on the heap before the first growth");
+        assertEquals(BigDecimal.valueOf(EventChunk.MIN_CAPACITY - 1), chunk.get(EventChunk.MIN_CAPACITY - 1).getAmount());
+        assertEquals(BigDecimal.valueOf(EventChunk.MIN_CAPACITY * 2), chunk.get(EventChunk.MIN_CAPACITY * 2).getAmount());
+        assertEquals("usdt", chunk.get(EventChunk.MIN_CAPACITY * 2 + 1).getCurrency());
+    }
+
+    @Test
+    void offHeapLogMaterializesEqualEvents() {
+        EventLog log = EventLog.offHeap("user1", 0);
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123456789);
+        int count = EventLog.CHUNK_SIZE + 10;
+        for (int i = 0; i < count; i++) {
+            log.append(new LoadEvent("user1", BigDecimal.valueOf(i, 2), "EUR", timestamp.plusSeconds(i)));
+        }
+        AuthorizationEvent declined = new AuthorizationEvent("user1", new BigDecimal("12.345"), "JPY", ResponseCode.DECLINED, timestamp);
+        declined.setTransactionId(Long.MAX_VALUE - 1);
+        declined.setBaseAmount(8, 1714564800000L);
+        log.append(declined);
+        BigDecimal huge = new BigDecimal("123456789012345678901234567890.12");
+        log.append(new LoadEvent("user1", huge, "usdt", timestamp));
+
+        Event load = log.get(EventLog.CHUNK_SIZE + 1);
+        assertInstanceOf(LoadEvent.class, load);
+        assertEquals("user1", load.getUserId());
+        assertEquals(BigDecimal.valueOf(EventLog.CHUNK_SIZE + 1, 2), load.getAmount());
+        assertEquals("EUR", load.getCurrency());
+        assertEquals(timestamp.plusSeconds(EventLog.CHUNK_SIZE + 1), load.getTimestamp());
+        assertEquals(EventLog.CHUNK_SIZE + 1, load.getSequence());
+
+        AuthorizationEvent authorization = (AuthorizationEvent) log.get(count);
+        assertEquals(new BigDecimal("12.345"), authorization.getAmount());
+        assertEquals(ResponseCode.DECLINED, authorization.getResponseCode());
+        assertEquals(DebitCredit.DEBIT, authorization.getType());
+        assertEquals(Long.MAX_VALUE - 1, authorization.getTransactionId());
+        assertEquals(8, authorization.getBaseAmount());
+        assertEquals(1714564800000L, authorization.getRateVersion());
+        assertFalse(load.hasBaseAmount());
+        assertEquals(huge, log.get(count + 1).getAmount(), "Kept on the heap when it does not fit the columns");
+        assertEquals("usdt", log.get(count + 1).getCurrency());
+
+        List<Event> view = log.view(EventLog.CHUNK_SIZE - 1, EventLog.CHUNK_SIZE + 1);
+        assertEquals(EventLog.CHUNK_SIZE, view.get(1).getSequence());
+        assertEquals(EventLog.CHUNK_SIZE, log.evictBefore(EventLog.CHUNK_SIZE));
+        assertEquals(count + 2 - EventLog.CHUNK_SIZE, log.view().size());
+    }
+}
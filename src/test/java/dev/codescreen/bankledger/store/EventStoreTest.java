@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -36,6 +37,81 @@ class EventStoreTest {
         assertTrue(events.stream().anyMatch(e -> e.getAmount().equals(new BigDecimal("50"))));
     }
 
+    @Test
+    void testSequenceNumbers() {
+        for (int i = 0; i < 5; i++) {
+            eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.valueOf(i), "USD"));
+        }
+
+        assertEquals(3, eventStore.getEvent("user1", 3).getSequence());
+        assertEquals(BigDecimal.valueOf(3), eventStore.getEvent("user1", 3).getAmount());
+        assertEquals(2, eventStore.getEvents("user1", 3, 10).size(), "Range is clamped to the stored events");
+    }
+
+    @Test
+    void testRunningBalance() {
+        assertEquals(10000, eventStore.addEvent("user1", new LoadEvent("user1", new BigDecimal("100.00"), "USD"), 10000));
+        assertEquals(5000, eventStore.addEvent("user1", new AuthorizationEvent("user1", new BigDecimal("50"), "USD", ResponseCode.APPROVED, DebitCredit.DEBIT), -5000));
+        eventStore.addEvent("user1", new AuthorizationEvent("user1", new BigDecimal("80"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT), 0);
+
+        assertEquals(5000, eventStore.getBalance("user1"), "Balance should only reflect the load and the approved debit");
+        assertEquals(3, eventStore.getEventsOfUser("user1").size());
+        assertEquals(0, eventStore.getBalance("user2"), "Unknown users start with a zero balance");
+    }
+
+    @Test
+    void testBalanceNeverWraps() {
+        eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), Long.MAX_VALUE - 1);
+        assertThrows(ArithmeticException.class, () -> eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 2));
+
+        assertEquals(Long.MAX_VALUE - 1, eventStore.getBalance("user1"), "A refused effect leaves the balance as it was");
+        assertEquals(1, eventStore.getEventsOfUser("user1").size(), "and records no event");
+    }
+
+    @Test
+    void testBatchThatOverflowsPartwayRecordsNothing() {
+        eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), Long.MAX_VALUE - 10);
+        List<LoadEvent> loads = Arrays.asList(new LoadEvent("user1", BigDecimal.ONE, "USD"), new LoadEvent("user1", BigDecimal.ONE, "USD"), new LoadEvent("user1", BigDecimal.ONE, "USD"));
+        assertThrows(ArithmeticException.class, () -> eventStore.addEvents("user1", loads, new long[]{5, 5, 5}));
+
+        assertEquals(Long.MAX_VALUE - 10, eventStore.getBalance("user1"), "The loads that fit are not applied either");
+        assertEquals(1, eventStore.getEventsOfUser("user1").size());
+        assertTrue(loads.stream().allMatch(load -> load.getSequence() == 0), "No sequence is handed out");
+    }
+
+    @Test
+    void testReplicatedEventsAreSkippedOnlyWhenTheSameTransactionIsHeld() {
+        LoadEvent held = new LoadEvent("user1", BigDecimal.ONE, "USD");
+        held.setTransactionId(7);
+        eventStore.addEvent("user1", held, 100);
+
+        LoadEvent resent = new LoadEvent("user1", BigDecimal.ONE, "USD");
+        resent.setTransactionId(7);
+        resent.setSequence(0);
+        assertFalse(eventStore.applyReplicated(new EventRecord("user1", resent, 100)), "A record applied before is skipped");
+
+        LoadEvent other = new LoadEvent("user1", BigDecimal.TEN, "USD");
+        other.setTransactionId(8);
+        other.setSequence(0);
+        assertThrows(IllegalStateException.class, () -> eventStore.applyReplicated(new EventRecord("user1", other, 1000)));
+        assertEquals(100, eventStore.getBalance("user1"));
+        assertEquals(1, eventStore.getEventsOfUser("user1").size());
+    }
+
+    @Test
+    void testEventsNotHeldAreNull() {
+        LoadEvent load = new LoadEvent("user1", BigDecimal.ONE, "USD");
+        load.setTransactionId(42);
+        eventStore.addEvent("user1", load, 100);
+
+        assertEquals(load, eventStore.getEventByTransactionId(42));
+        assertEquals(42, eventStore.highestTransactionId());
+        assertNull(eventStore.getEvent("user1", 1), "Past the log");
+        assertNull(eventStore.getEvent("nobody", 0));
+        eventStore.removeAccount("user1");
+        assertNull(eventStore.getEventByTransactionId(42));
+    }
+
     @Test
     void testLatestSnapshotBalance() {
         eventStore.updateSnapshot("user1", new BigDecimal("150.00"), LocalDateTime.now());
@@ -74,6 +150,60 @@ class EventStoreTest {
         assertEquals(numberOfThreads, eventStore.getEventsOfUser("user1").size(), "Should have " + numberOfThreads + " events for user1");
     }
 
+    @Test
+    void testAuthorizeDeclinesWhenBalanceIsShort() {
+        eventStore.addEvent("user1", new LoadEvent("user1", new BigDecimal("100.00"), "USD"), 10000);
+
+        AuthorizationEvent approved = new AuthorizationEvent("user1", new BigDecimal("60"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT);
+        assertEquals(4000, eventStore.authorize("user1", approved, 6000));
+        assertEquals(ResponseCode.APPROVED, approved.getResponseCode());
+
+        AuthorizationEvent declined = new AuthorizationEvent("user1", new BigDecimal("60"), "USD", ResponseCode.APPROVED, DebitCredit.DEBIT);
+        assertEquals(4000, eventStore.authorize("user1", declined, 6000));
+        assertEquals(ResponseCode.DECLINED, declined.getResponseCode());
+        assertEquals(3, eventStore.getEventsOfUser("user1").size(), "Declined authorizations are recorded too");
+    }
+
+    @Test
+    void testBatchesApplyInOrder() {
+        List<LoadEvent> loads = Arrays.asList(new LoadEvent("user1", new BigDecimal("10"), "USD"), new LoadEvent("user1", new BigDecimal("20"), "USD"));
+        assertArrayEquals(new long[]{1000, 3000}, eventStore.addEvents("user1", loads, new long[]{1000, 2000}));
+
+        List<AuthorizationEvent> debits = Arrays.asList(
+                new AuthorizationEvent("user1", new BigDecimal("25"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT),
+                new AuthorizationEvent("user1", new BigDecimal("10"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT),
+                new AuthorizationEvent("user1", new BigDecimal("5"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT));
+        assertArrayEquals(new long[]{500, 500, 0}, eventStore.authorizeAll("user1", debits, new long[]{2500, 1000, 500}));
+        assertEquals(ResponseCode.APPROVED, debits.get(0).getResponseCode());
+        assertEquals(ResponseCode.DECLINED, debits.get(1).getResponseCode());
+        assertEquals(ResponseCode.APPROVED, debits.get(2).getResponseCode());
+        assertEquals(4, eventStore.getEvent("user1", 4).getSequence());
+    }
+
+    @Test
+    void testConcurrentAuthorizationsNeverOverdraw() throws InterruptedException {
+        int numberOfThreads = 100;
+        eventStore.addEvent("user1", new LoadEvent("user1", new BigDecimal("500.00"), "USD"), 50000);
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            executorService.submit(() -> {
+                eventStore.authorize("user1", new AuthorizationEvent("user1", new BigDecimal("10"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT), 1000);
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        executorService.shutdown();
+
+        long approved = eventStore.getEventsOfUser("user1").stream()
+                .filter(e -> e instanceof AuthorizationEvent && ((AuthorizationEvent) e).getResponseCode() == ResponseCode.APPROVED)
+                .count();
+        assertEquals(50, approved, "Exactly the funded authorizations should be approved");
+        assertEquals(0, eventStore.getBalance("user1"));
+    }
+
     @Test
     void testConcurrencyOnUpdateSnapshot() throws InterruptedException {
         int numberOfThreads = 50; // Number of threads to use for the test
@@ -99,4 +229,19 @@ class EventStoreTest {
 
         assertEquals(expectedBalance, eventStore.getLatestSnapshotBalance("user1"), "Latest snapshot balance should match the last update");
     }
+
+    @Test
+    void testCheckpointAsOfIsWithinOneIntervalOfTheTime() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD", start.plusSeconds(i)), 100);
+        }
+
+        BalanceCheckpoint checkpoint = eventStore.getCheckpointAsOf("user1", start.plusSeconds(600));
+        assertEquals(512, checkpoint.getNextSequence());
+        assertEquals(512 * 100, checkpoint.getBalance());
+        assertEquals(start.plusSeconds(511), checkpoint.getTimestamp());
+        assertEquals(0, eventStore.getCheckpointAsOf("user1", start.minusDays(1)).getBalance(), "Before the first event the balance is zero");
+        assertNull(eventStore.getCheckpointAsOf("user2", start));
+    }
 }
@@ -0,0 +1,95 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestPipelineTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentWritesKeepEveryAccountConsistent() throws InterruptedException {
+        EventStore eventStore = new EventStore();
+        IngestPipeline pipeline = new IngestPipeline(eventStore, 2, 16, 8);
+        AtomicInteger approved = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String userId = "user" + (i % 4);
+                    if (i % 2 == 0) {
+                        pipeline.addEvent(userId, new LoadEvent(userId, BigDecimal.ONE, "USD"), 100);
+                    } else {
+                        AuthorizationEvent event = new AuthorizationEvent(userId, new BigDecimal("1.50"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT);
+                        long balance = pipeline.authorize(userId, event, 150);
+                        assertTrue(balance >= 0, "An authorization never overdraws");
+                        if (event.getResponseCode() == ResponseCode.APPROVED) {
+                            approved.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        pipeline.close();
+
+        long total = 0;
+        for (int u = 0; u < 4; u++) {
+            List<Event> events = eventStore.getEventsOfUser("user" + u);
+            assertEquals(1000, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i, events.get(i).getSequence(), "Sequences follow the order events were applied");
+            }
+            total += eventStore.getBalance("user" + u);
+        }
+        assertEquals(2000 * 100 - approved.get() * 150L, total);
+    }
+
+    @Test
+    void batchedWritesAreDurableWhenAnswered() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 50, 1024)) {
+            EventStore eventStore = new EventStore(wal);
+            IngestPipeline pipeline = new IngestPipeline(eventStore, 1, 16, 16);
+            List<LoadEvent> loads = Arrays.asList(new LoadEvent("user1", BigDecimal.ONE, "USD"), new LoadEvent("user1", BigDecimal.TEN, "USD"));
+            assertArrayEquals(new long[]{100, 1100}, pipeline.addEvents("user1", loads, new long[]{100, 1000}));
+            assertEquals(wal.getWritePosition(), wal.getDurablePosition(), "Answered only once the batch was synced");
+
+            List<AuthorizationEvent> debits = Arrays.asList(
+                    new AuthorizationEvent("user1", BigDecimal.TEN, "USD", ResponseCode.DECLINED, DebitCredit.DEBIT),
+                    new AuthorizationEvent("user1", BigDecimal.TEN, "USD", ResponseCode.DECLINED, DebitCredit.DEBIT));
+            assertArrayEquals(new long[]{100, 100}, pipeline.authorizeAll("user1", debits, new long[]{1000, 1000}));
+            assertEquals(ResponseCode.APPROVED, debits.get(0).getResponseCode());
+            assertEquals(ResponseCode.DECLINED, debits.get(1).getResponseCode());
+            pipeline.close();
+
+            assertThrows(IllegalStateException.class, () -> pipeline.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100));
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 50, 1024)) {
+            EventStore recovered = new EventStore(wal);
+            recovered.recover();
+            assertEquals(100, recovered.getBalance("user1"));
+            assertEquals(4, recovered.getEventsOfUser("user1").size());
+        }
+    }
+}
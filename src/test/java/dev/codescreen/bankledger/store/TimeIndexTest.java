@@ -0,0 +1,133 @@
+package dev.codescreen.bankledger.store;
+
+import dev.codescreen.bankledger.dto.EventTotals;
+import dev.codescreen.bankledger.enums.EventKind;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private final Map<String, Event> stored = new HashMap<>();
+
+    // Stands in for the store: numbers the event, keeps it to be read back and indexes it
+    private void add(TimeIndex index, Event event, long baseAmount) {
+        event.setSequence(stored.size());
+        event.setBaseAmount(baseAmount, 1);
+        stored.put(event.getUserId() + "#" + event.getSequence(), event);
+        index.add(event);
+    }
+
+    private Event read(String userId, long sequence) {
+        return stored.get(userId + "#" + sequence);
+    }
+
+    @Test
+    void findsEventsOfOneKindAcrossAccounts() {
+        TimeIndex index = new TimeIndex(1440);
+        for (int second = 0; second < 600; second++) {
+            String userId = "user" + (second % 7);
+            LocalDateTime timestamp = START.plusSeconds(second);
+            add(index, new LoadEvent(userId, BigDecimal.ONE, second % 2 == 0 ? "USD" : "EUR", timestamp), 100);
+            if (second % 10 == 0) {
+                add(index, new AuthorizationEvent(userId, BigDecimal.TEN, "USD", ResponseCode.DECLINED, timestamp.plusNanos(1)), 1000);
+            }
+        }
+
+        List<Event> declined = index.find(START.plusSeconds(90), START.plusSeconds(300), EventKind.DECLINED, null, null, 100, this::read);
+        assertEquals(21, declined.size());
+        assertEquals(START.plusSeconds(90).plusNanos(1), declined.get(0).getTimestamp());
+        for (int i = 1; i < declined.size(); i++) {
+            assertTrue(declined.get(i - 1).getTimestamp().isBefore(declined.get(i).getTimestamp()), "Oldest first");
+        }
+
+        assertEquals(5, index.find(START, START.plusMinutes(10), EventKind.LOAD, "EUR", null, 5, this::read).size(), "Capped at the limit");
+        assertEquals(300, index.find(START, START.plusMinutes(10), EventKind.LOAD, "EUR", null, 1000, this::read).size());
+        assertTrue(index.find(START.minusHours(1), START, null, null, null, 10, this::read).isEmpty());
+    }
+
+    @Test
+    void totalsAddUpWholeAndPartialMinutes() {
+        TimeIndex index = new TimeIndex(1440);
+        for (int second = 0; second < 300; second++) {
+            LocalDateTime timestamp = START.plusSeconds(second);
+            add(index, new LoadEvent("user1", new BigDecimal("1.50"), "USD", timestamp), 150);
+            add(index, new AuthorizationEvent("user2", BigDecimal.ONE, "EUR", ResponseCode.APPROVED, timestamp), 108);
+        }
+
+        // 30 seconds of the first minute, two whole minutes, 15 seconds of the fourth
+        List<EventTotals> totals = index.totals(START.plusSeconds(30), START.plusSeconds(195), null);
+        assertEquals(2, totals.size());
+        assertEquals("EUR", totals.get(0).getCurrency());
+        assertEquals(EventKind.APPROVED, totals.get(0).getKind());
+        assertEquals(165, totals.get(0).getCount());
+        assertEquals(new BigDecimal("178.20"), totals.get(0).getTotal(), "Totals are in the base currency");
+        assertEquals("USD", totals.get(1).getCurrency());
+        assertEquals(EventKind.LOAD, totals.get(1).getKind());
+        assertEquals(new BigDecimal("247.50"), totals.get(1).getTotal());
+
+        assertEquals(1, index.totals(START, START.plusMinutes(5), "USD").size());
+    }
+
+    @Test
+    void eventsTheStoreNoLongerHoldsAreLeftOut() {
+        TimeIndex index = new TimeIndex(1440);
+        for (int second = 0; second < 10; second++) {
+            add(index, new LoadEvent("user1", BigDecimal.ONE, "USD", START.plusSeconds(second)), 100);
+        }
+        stored.remove("user1#3");
+
+        List<Event> found = index.find(START, START.plusMinutes(1), null, null, null, 100, this::read);
+        assertEquals(9, found.size());
+        assertTrue(found.stream().noneMatch(event -> event.getSequence() == 3));
+        assertEquals(10, index.totals(START, START.plusMinutes(1), null).get(0).getCount(), "Totals keep counting it");
+    }
+
+    @Test
+    void pagesThroughEventsStampedAlikeWithoutRepeatsOrGaps() {
+        TimeIndex index = new TimeIndex(1440);
+        for (int i = 0; i < 25; i++) {
+            add(index, new LoadEvent("user" + (i % 4), BigDecimal.ONE, "USD", START), 100);
+        }
+
+        Set<Event> seen = new HashSet<>();
+        TimeIndex.Position after = null;
+        for (int pages = 0; pages < 25; pages++) {
+            List<Event> page = index.find(START, START.plusMinutes(1), null, null, after, 3, this::read);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Event event : page) {
+                assertTrue(seen.add(event), "Event " + event.getUserId() + "#" + event.getSequence() + " is returned once");
+            }
+            after = TimeIndex.Position.parse(TimeIndex.Position.of(page.get(page.size() - 1)).toString());
+        }
+        assertEquals(25, seen.size());
+        assertNull(TimeIndex.Position.parse("12:user1"));
+    }
+
+    @Test
+    void bucketsOlderThanRetentionAreDropped() {
+        TimeIndex index = new TimeIndex(60);
+        add(index, new LoadEvent("user1", BigDecimal.ONE, "USD", START), 100);
+        add(index, new LoadEvent("user1", BigDecimal.ONE, "USD", START.plusHours(2)), 100);
+        add(index, new LoadEvent("user1", BigDecimal.ONE, "USD", START.plusMinutes(1)), 100);
+
+        assertTrue(index.find(START, START.plusMinutes(5), null, null, null, 10, this::read).isEmpty());
+        assertEquals(1, index.find(START, START.plusHours(3), null, null, null, 10, this::read).size());
+    }
+}
@@ -0,0 +1,44 @@
+package dev.codescreen.bankledger.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionIndexTest {
+
+    @Test
+    void resolvesEveryIndexedIdThroughGrowthAndRemoval() {
+        TransactionIndex index = new TransactionIndex();
+        Map<Long, String> expected = new HashMap<>();
+        for (long id = 1; id <= 100_000; id++) {
+            index.put(id * 4099, "user" + (id % 13), id);
+            expected.put(id * 4099, "user" + (id % 13) + "#" + id);
+        }
+        for (long id = 1; id <= 100_000; id += 3) {
+            index.remove(id * 4099);
+            expected.remove(id * 4099);
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (long id = 1; id <= 100_000; id++) {
+            assertEquals(expected.get(id * 4099), index.resolve(id * 4099, (userId, sequence) -> userId + "#" + sequence));
+        }
+        assertNull(index.resolve(7, (userId, sequence) -> userId));
+    }
+
+    @Test
+    void idsOfARemovedAccountResolveToNothing() {
+        TransactionIndex index = new TransactionIndex();
+        index.put(1, "user1", 0);
+        index.put(2, "user2", 0);
+        index.removeAccount("user1");
+
+        assertNull(index.resolve(1, (userId, sequence) -> userId));
+        assertEquals("user2", index.resolve(2, (userId, sequence) -> userId));
+        index.put(3, "user1", 5);
+        assertEquals("user1#5", index.resolve(3, (userId, sequence) -> userId + "#" + sequence), "A returning account gets a new number");
+    }
+}
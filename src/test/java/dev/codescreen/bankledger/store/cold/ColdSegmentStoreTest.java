@@ -0,0 +1,109 @@
+package dev.codescreen.bankledger.store.cold;
+
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.snapshot.SnapshotStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColdSegmentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blocksAreReadBackAfterReopening() throws IOException {
+        ColdSegmentStore store = new ColdSegmentStore(directory);
+        try (ColdSegmentStore.Writer writer = store.open(10)) {
+            writer.write("user1", events("user1", 100, 2500));
+            writer.write("user2", events("user2", 0, 3));
+            writer.commit();
+        }
+        try (ColdSegmentStore.Writer writer = store.open(20)) {
+            writer.write("user1", events("user1", 5000, 10));
+            // never committed
+        }
+
+        ColdSegmentStore reopened = new ColdSegmentStore(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "Uncommitted segment is dropped");
+        }
+        assertEquals(2600, reopened.coveredUntil("user1", 100));
+        assertEquals(2600, reopened.coveredUntil("user1", 1500));
+        assertEquals(50, reopened.coveredUntil("user1", 50), "Nothing archived below sequence 100");
+        assertEquals(3, reopened.coveredUntil("user2", 0));
+
+        List<Event> all = reopened.view("user1", 0, Long.MAX_VALUE);
+        assertEquals(2500, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(100 + i, all.get(i).getSequence());
+        }
+        List<Event> range = reopened.view("user1", 1020, 1030);
+        assertEquals(10, range.size(), "Range spanning a block boundary");
+        assertEquals(1029, range.get(9).getSequence());
+        assertEquals(BigDecimal.valueOf(1029), range.get(9).getAmount());
+        assertTrue(reopened.view("user3", 0, 10).isEmpty());
+    }
+
+    @Test
+    void snapshotMovesCoveredEventsOutOfMemory() throws IOException {
+        Path walDirectory = directory.resolve("wal");
+        Path snapshotDirectory = directory.resolve("snapshots");
+        Path coldDirectory = directory.resolve("cold");
+        try (WriteAheadLog wal = new WriteAheadLog(walDirectory, 1 << 20, 1, 64)) {
+            EventStore eventStore = new EventStore(wal, new SnapshotStore(snapshotDirectory, 2), new ColdSegmentStore(coldDirectory), 2);
+            for (int i = 0; i < 3000; i++) {
+                eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+            }
+            eventStore.takeSnapshot();
+            assertEquals(3000 - 2048, eventStore.getEventCount(), "Whole chunks below the snapshot are dropped");
+            assertEquals(300000, eventStore.getBalance("user1"));
+            assertSequences(eventStore.getEventsOfUser("user1"), 0, 3000);
+            assertSequences(eventStore.getEvents("user1", 2040, 2060), 2040, 2060);
+            assertEquals(5, eventStore.getEvent("user1", 5).getSequence());
+
+            for (int i = 0; i < 100; i++) {
+                eventStore.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+            }
+            eventStore.takeSnapshot();
+            assertSequences(eventStore.getEventsOfUser("user1"), 0, 3100);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(walDirectory, 1 << 20, 1, 64)) {
+            EventStore recovered = new EventStore(wal, new SnapshotStore(snapshotDirectory, 2), new ColdSegmentStore(coldDirectory), 2);
+            recovered.recover();
+            recovered.addEvent("user1", new LoadEvent("user1", BigDecimal.ONE, "USD"), 100);
+            assertEquals(310100, recovered.getBalance("user1"));
+            assertSequences(recovered.getEventsOfUser("user1"), 0, 3101);
+        }
+    }
+
+    private static void assertSequences(List<Event> events, long from, long to) {
+        assertEquals(to - from, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(from + i, events.get(i).getSequence());
+        }
+    }
+
+    private static List<Event> events(String userId, long from, int count) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Event event = new LoadEvent(userId, BigDecimal.valueOf(from + i), "USD");
+            event.setSequence(from + i);
+            events.add(event);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,113 @@
+package dev.codescreen.bankledger.store.snapshot;
+
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import dev.codescreen.bankledger.store.wal.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheLatestSnapshotAndPrunesOldOnes() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory, 2);
+        for (long position = 100; position <= 300; position += 100) {
+            try (SnapshotStore.Writer writer = store.open(position)) {
+                writer.write(new AccountSnapshot("user1", position, position / 100, LocalDateTime.of(2024, 1, 1, 0, 0)));
+                writer.commit();
+            }
+        }
+
+        List<AccountSnapshot> loaded = new ArrayList<>();
+        assertEquals(300, store.loadLatest(loaded::add));
+        assertEquals(1, loaded.size());
+        assertEquals(300, loaded.get(0).getBalance());
+        assertEquals(3, loaded.get(0).getNextSequence());
+        assertEquals(2, snapshotFiles().size());
+    }
+
+    @Test
+    void skipsDamagedAndUncommittedSnapshots() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory, 2);
+        try (SnapshotStore.Writer writer = store.open(100)) {
+            writer.write(new AccountSnapshot("user1", 10, 1, LocalDateTime.of(2024, 1, 1, 0, 0)));
+            writer.commit();
+        }
+        try (SnapshotStore.Writer writer = store.open(200)) {
+            writer.write(new AccountSnapshot("user1", 1, 2, LocalDateTime.of(2024, 1, 1, 0, 0)));
+            writer.commit();
+        }
+        try (SnapshotStore.Writer writer = store.open(300)) {
+            writer.write(new AccountSnapshot("user1", 0, 3, LocalDateTime.of(2024, 1, 1, 0, 0)));
+            // never committed
+        }
+        Path latest = snapshotFiles().get(1);
+        try (FileChannel channel = FileChannel.open(latest, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        List<AccountSnapshot> loaded = new ArrayList<>();
+        assertEquals(100, new SnapshotStore(directory, 2).loadLatest(loaded::add));
+        assertEquals(10, loaded.get(0).getBalance());
+    }
+
+    @Test
+    void eventStoreRecoversFromSnapshotAndLogTail() throws IOException {
+        Path walDirectory = directory.resolve("wal");
+        Path snapshotDirectory = directory.resolve("snapshots");
+        try (WriteAheadLog wal = new WriteAheadLog(walDirectory, 4096, 1, 16)) {
+            EventStore eventStore = new EventStore(wal, new SnapshotStore(snapshotDirectory, 2), 4);
+            for (int i = 0; i < 50; i++) {
+                String userId = "user" + (i % 5);
+                eventStore.addEvent(userId, new LoadEvent(userId, BigDecimal.ONE, "USD"), 100);
+            }
+            eventStore.takeSnapshot();
+            for (int i = 0; i < 20; i++) {
+                String userId = "user" + (i % 7);
+                eventStore.addEvent(userId, new LoadEvent(userId, BigDecimal.TEN, "USD"), 1000);
+            }
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(walDirectory, 4096, 1, 16)) {
+            EventStore recovered = new EventStore(wal, new SnapshotStore(snapshotDirectory, 2), 4);
+            recovered.recover();
+
+            // user0 got 10 loads of 1 before the snapshot and 3 loads of 10 after it
+            assertEquals(4000, recovered.getBalance("user0"));
+            assertEquals(2000, recovered.getBalance("user6"));
+            assertEquals(new BigDecimal("10.00"), recovered.getLatestSnapshotBalance("user0"));
+            // only the tail is held in memory, sequence numbers continue from the snapshot
+            List<Event> events = recovered.getEventsOfUser("user0");
+            assertEquals(3, events.size());
+            assertEquals(10, events.get(0).getSequence());
+            assertEquals(12, recovered.getEvent("user0", 12).getSequence());
+
+            recovered.addEvent("user0", new LoadEvent("user0", BigDecimal.ONE, "USD"), 100);
+            assertEquals(13, recovered.getEvent("user0", 13).getSequence());
+        }
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(".snap")).sorted().collect(Collectors.toList());
+        }
+    }
+}
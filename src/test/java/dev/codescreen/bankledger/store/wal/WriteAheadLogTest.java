@@ -0,0 +1,196 @@
+package dev.codescreen.bankledger.store.wal;
+
+import dev.codescreen.bankledger.enums.DebitCredit;
+import dev.codescreen.bankledger.enums.ResponseCode;
+import dev.codescreen.bankledger.event.AuthorizationEvent;
+import dev.codescreen.bankledger.event.Event;
+import dev.codescreen.bankledger.event.LoadEvent;
+import dev.codescreen.bankledger.store.EventStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedRecordsBecomeDurableAndReplayInOrder() throws IOException {
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 1, 16)) {
+            long last = 0;
+            for (int i = 0; i < 10; i++) {
+                last = wal.append(ByteBuffer.wrap(("record-" + i).getBytes()));
+            }
+            wal.awaitDurable(last);
+            assertTrue(wal.getDurablePosition() >= last);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 1, 16)) {
+            wal.replay(0, (position, payload) -> replayed.add(new String(payload.array())));
+        }
+        assertEquals(10, replayed.size());
+        assertEquals("record-0", replayed.get(0));
+        assertEquals("record-9", replayed.get(9));
+    }
+
+    @Test
+    void rollsSegmentsAndReplaysFromPosition() throws IOException {
+        List<Long> positions = new ArrayList<>();
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 64, 0, 1)) {
+            for (int i = 0; i < 20; i++) {
+                positions.add(wal.append(ByteBuffer.wrap(("record-" + i).getBytes())));
+            }
+            wal.awaitDurable(positions.get(19));
+            wal.replay(positions.get(14), (position, payload) -> replayed.add(new String(payload.array())));
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1, "Small segments should have been rolled");
+        }
+        assertEquals(5, replayed.size(), "Only records after the given position are replayed");
+        assertEquals("record-15", replayed.get(0));
+    }
+
+    @Test
+    void tailerFollowsDurableRecordsAcrossSegments() throws IOException, InterruptedException {
+        List<Long> positions = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 64, 0, 1)) {
+            for (int i = 0; i < 10; i++) {
+                positions.add(wal.append(ByteBuffer.wrap(("record-" + i).getBytes())));
+            }
+            wal.awaitDurable(positions.get(9));
+            try (WriteAheadLog.Tailer tailer = wal.tail(positions.get(2))) {
+                for (int i = 3; i < 10; i++) {
+                    assertEquals("record-" + i, new String(tailer.next().array()));
+                    assertEquals(positions.get(i), tailer.position());
+                }
+                assertNull(tailer.next(), "Nothing past the durable position");
+
+                long last = 0;
+                for (int i = 10; i < 15; i++) {
+                    last = wal.append(ByteBuffer.wrap(("record-" + i).getBytes()));
+                }
+                assertTrue(wal.awaitDurableAfter(positions.get(9), 5000) > positions.get(9));
+                wal.awaitDurable(last);
+                for (int i = 10; i < 15; i++) {
+                    assertEquals("record-" + i, new String(tailer.next().array()));
+                }
+                assertEquals(last, tailer.position());
+            }
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnOpen() throws IOException {
+        long end;
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 0, 1)) {
+            wal.append(ByteBuffer.wrap("complete".getBytes()));
+            end = wal.append(ByteBuffer.wrap("torn".getBytes()));
+            wal.awaitDurable(end);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(end - 2); // simulate a crash in the middle of the last write
+        }
+
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 0, 1)) {
+            wal.replay(0, (position, payload) -> replayed.add(new String(payload.array())));
+            long next = wal.append(ByteBuffer.wrap("after".getBytes()));
+            wal.awaitDurable(next);
+        }
+        assertEquals(List.of("complete"), replayed);
+    }
+
+    @Test
+    void eventStoreRecoversBalancesAndEvents() throws IOException, InterruptedException {
+        int numberOfThreads = 20;
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 2, 8)) {
+            EventStore eventStore = new EventStore(wal);
+            eventStore.addEvent("user1", new LoadEvent("user1", new BigDecimal("100.00"), "USD"), 10000);
+            ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+            CountDownLatch latch = new CountDownLatch(numberOfThreads);
+            for (int i = 0; i < numberOfThreads; i++) {
+                executorService.submit(() -> {
+                    eventStore.authorize("user1", new AuthorizationEvent("user1", new BigDecimal("9"), "EUR", ResponseCode.DECLINED, DebitCredit.DEBIT), 1000);
+                    latch.countDown();
+                });
+            }
+            latch.await();
+            executorService.shutdown();
+            LoadEvent converted = new LoadEvent("user2", new BigDecimal("5.5"), "GBP");
+            converted.setBaseAmount(688, 1714564800000L);
+            eventStore.addEvent("user2", converted, 688);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 2, 8)) {
+            EventStore recovered = new EventStore(wal);
+            recovered.recover();
+
+            assertEquals(0, recovered.getBalance("user1"));
+            assertEquals(688, recovered.getBalance("user2"));
+            List<Event> events = recovered.getEventsOfUser("user1");
+            assertEquals(numberOfThreads + 1, events.size());
+            assertEquals(10, events.stream()
+                    .filter(e -> e instanceof AuthorizationEvent && ((AuthorizationEvent) e).getResponseCode() == ResponseCode.APPROVED)
+                    .count());
+            Event load = recovered.getEvent("user2", 0);
+            assertEquals(new BigDecimal("5.5"), load.getAmount());
+            assertEquals("GBP", load.getCurrency());
+            assertEquals(DebitCredit.CREDIT, load.getType());
+            assertEquals(688, load.getBaseAmount());
+            assertEquals(1714564800000L, load.getRateVersion());
+            assertFalse(recovered.getEvent("user1", 0).hasBaseAmount(), "Records without a base amount still decode");
+
+            // the recovered store keeps appending after the replayed history
+            recovered.addEvent("user2", new LoadEvent("user2", BigDecimal.ONE, "USD"), 100);
+            assertEquals(1, recovered.getEvent("user2", 1).getSequence());
+        }
+    }
+
+    @Test
+    void whenDurableCompletesOnceTheRecordIsSynced() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 200, 1000)) {
+            long position = wal.append(ByteBuffer.wrap("record".getBytes()));
+            CompletableFuture<Void> durable = wal.whenDurable(position);
+            assertFalse(durable.isDone(), "The sync interval has not passed yet");
+            durable.get(5, TimeUnit.SECONDS);
+            assertTrue(wal.getDurablePosition() >= position);
+            assertTrue(wal.whenDurable(position).isDone());
+        }
+    }
+
+    @Test
+    void eventStoreCompletesAsyncWritesWithTheirBalance() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1 << 20, 1, 16)) {
+            EventStore store = new EventStore(wal);
+            assertEquals(10000L, store.addEventAsync("user1", new LoadEvent("user1", new BigDecimal("100"), "USD"), 10000).get(5, TimeUnit.SECONDS));
+            AuthorizationEvent debit = new AuthorizationEvent("user1", new BigDecimal("300"), "USD", ResponseCode.DECLINED, DebitCredit.DEBIT);
+            assertEquals(10000L, store.authorizeAsync("user1", debit, 30000).get(5, TimeUnit.SECONDS));
+            assertEquals(ResponseCode.DECLINED, debit.getResponseCode());
+        }
+    }
+}
@@ -35,15 +35,13 @@ public class CurrencyConverterIntegrationTest {
 
     @Test
     public void testLoadInOneCurrencyAuthorizationInDifferentCurrency() throws Exception {
-        when(currencyConverter.convert(anyString(), anyString(), any(BigDecimal.class))).thenAnswer(i -> {
-            String sourceCurrency = i.getArgument(0);
+        when(currencyConverter.convert(anyString(), anyString(), any(BigDecimal.class))).thenAnswer(i -> fixedRate(i.getArgument(0), i.getArgument(1), i.getArgument(2)));
+        when(currencyConverter.convertToMoney(anyString(), anyString(), any(BigDecimal.class)))
+                .thenAnswer(i -> Money.of(fixedRate(i.getArgument(0), i.getArgument(1), i.getArgument(2)), i.getArgument(1)));
+        when(currencyConverter.convert(any(Money.class), anyString())).thenAnswer(i -> {
+            Money amount = i.getArgument(0);
             String targetCurrency = i.getArgument(1);
-            BigDecimal amount = i.getArgument(2);
-            if (sourceCurrency.equals("USD") && targetCurrency.equals("EUR"))
-                return amount.multiply(BigDecimal.valueOf(0.9)).setScale(2, RoundingMode.HALF_EVEN); // Fixed rate for the test
-            else if(sourceCurrency.equals("EUR") && targetCurrency.equals("USD"))
-                return amount.divide(BigDecimal.valueOf(0.9), BigDecimal.ROUND_HALF_UP); // Convert and round
-            return amount; // Default fallback
+            return Money.of(fixedRate(amount.getCurrency(), targetCurrency, amount.toBigDecimal()), targetCurrency);
         });
 
         // Act: Load in USD
@@ -59,4 +57,12 @@ public class CurrencyConverterIntegrationTest {
                 .andExpect(MockMvcResultMatchers.status().isCreated())
                 .andExpect(MockMvcResultMatchers.jsonPath("$.balance.amount").value("360.00")); // Expected after converting 100 EUR to 90 USD
     }
+
+    private static BigDecimal fixedRate(String sourceCurrency, String targetCurrency, BigDecimal amount) {
+        if (sourceCurrency.equals("USD") && targetCurrency.equals("EUR"))
+            return amount.multiply(BigDecimal.valueOf(0.9)).setScale(2, RoundingMode.HALF_EVEN); // Fixed rate for the test
+        else if(sourceCurrency.equals("EUR") && targetCurrency.equals("USD"))
+            return amount.divide(BigDecimal.valueOf(0.9), BigDecimal.ROUND_HALF_UP); // Convert and round
+        return amount; // Default fallback
+    }
 }
@@ -1,4 +1,5 @@
 import dev.codescreen.bankledger.util.CurrencyConverter;
+import dev.codescreen.bankledger.util.Money;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -15,8 +16,11 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
@@ -41,6 +45,9 @@ class CurrencyConverterTest {
         rates.put("USD", 1.0);
         rates.put("EUR", 0.9);
         rates.put("GBP", 0.8);
+        rates.put("JPY", 151.37);
+        rates.put("KWD", 0.3074);
+        rates.put("IDR", 15678.9);
         Map<String, Object> responseBody = new HashMap<>();
         responseBody.put("conversion_rates", rates);
         ResponseEntity<Map> responseEntity = new ResponseEntity<>(responseBody, HttpStatus.OK);
@@ -82,6 +89,64 @@ class CurrencyConverterTest {
         assertEquals(expected, result, "Conversion with non-existing currency should return the same amount");
     }
 
+    @Test
+    void testMoneyConversionRoundsLikeBigDecimal() {
+        String[] currencies = {"USD", "EUR", "GBP", "JPY", "KWD", "IDR", "XXX"};
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String from = currencies[random.nextInt(currencies.length)];
+            String to = currencies[random.nextInt(currencies.length)];
+            BigDecimal amount = BigDecimal.valueOf(random.nextInt(100_000_000), random.nextInt(5));
+            BigDecimal expected = currencyConverter.convert(from, to, amount);
+
+            Money converted = currencyConverter.convertToMoney(from, to, amount);
+            assertEquals(0, expected.compareTo(converted.toBigDecimal()), amount + " " + from + " to " + to);
+            Money balance = Money.ofMinor(random.nextInt(100_000_000), from);
+            assertEquals(0, currencyConverter.convert(from, to, balance.toBigDecimal()).compareTo(currencyConverter.convert(balance, to).toBigDecimal()));
+        }
+        // a product beyond 63 bits takes the BigDecimal path and still agrees
+        BigDecimal large = new BigDecimal("1000000000000.00");
+        assertEquals(0, currencyConverter.convert("USD", "IDR", large).compareTo(currencyConverter.convertToMoney("USD", "IDR", large).toBigDecimal()));
+    }
+
+    @Test
+    void testConcurrentRefreshNeverExposesPartialRates() throws InterruptedException {
+        AtomicBoolean done = new AtomicBoolean();
+        Thread refresher = new Thread(() -> {
+            while (!done.get()) {
+                currencyConverter.fetchConversionRates();
+            }
+        });
+        refresher.start();
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals(new BigDecimal("112.50"), currencyConverter.convert("EUR", "GBP", new BigDecimal("126.56")));
+            }
+        } finally {
+            done.set(true);
+            refresher.join();
+        }
+    }
+
+    @Test
+    void testEveryRefreshInstallsANewRateVersion() {
+        long first = currencyConverter.getRateVersion();
+        currencyConverter.fetchConversionRates();
+        long second = currencyConverter.getRateVersion();
+        assertTrue(first > 0);
+        assertTrue(second > first, "Refreshes within the same millisecond still get distinct versions");
+        currencyConverter.updateRates(Map.of("EUR", new BigDecimal("0.8")));
+        assertTrue(currencyConverter.getRateVersion() > second);
+    }
+
+    @Test
+    void testMoneyKeepsTwoDecimalsAtLeast() {
+        assertEquals("1234.50", Money.ofMinor(123450, "USD").toString());
+        assertEquals("1234.50", Money.ofMinor(123450, "JPY").toString(), "Converted amounts keep two decimals like before");
+        assertEquals("1.234", Money.ofMinor(1234, "KWD").toString());
+        assertEquals(Money.ofMinor(1050, "EUR"), Money.of(new BigDecimal("10.5"), "EUR"));
+    }
+
     @Test
     void testAPIConnection() {
         ResponseEntity<Map> responseEntity = new ResponseEntity<>(new HashMap<>(), HttpStatus.OK);
@@ -0,0 +1,37 @@
+package dev.codescreen.bankledger.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    @Test
+    void slowRequestDoesNotExpireBeforeItsResponseIsStored() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(100, 1);
+        IdempotencyCache.Claim owner = cache.claim("load", "user1", "message1");
+        assertTrue(owner.isOwner());
+
+        Thread.sleep(1200); // longer than the time to live while the request is still running
+        assertFalse(cache.claim("load", "user1", "message1").isOwner(), "A retry waits for the running request");
+
+        ResponseEntity<?> response = ResponseEntity.ok("done");
+        cache.complete(owner, response);
+        IdempotencyCache.Claim retry = cache.claim("load", "user1", "message1");
+        assertFalse(retry.isOwner(), "The time to live starts when the response is stored");
+        assertSame(response, retry.await());
+
+        Thread.sleep(1200);
+        assertTrue(cache.claim("load", "user1", "message1").isOwner(), "and the response expires after it");
+    }
+
+    @Test
+    void failedRequestReleasesItsClaim() {
+        IdempotencyCache cache = new IdempotencyCache(100, 600);
+        IdempotencyCache.Claim owner = cache.claim("load", "user1", "message1");
+        cache.fail(owner, new IllegalStateException("failed"));
+        assertThrows(IllegalStateException.class, owner::await);
+        assertTrue(cache.claim("load", "user1", "message1").isOwner());
+    }
+}
@@ -0,0 +1,96 @@
+package dev.codescreen.bankledger.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedIdGeneratorTest {
+
+    @Test
+    void idsGrowAndCarryTheirNodeAndTime() {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(513);
+        Instant before = Instant.now().minusMillis(1);
+        long previous = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "Ids increase, also past 4096 in one millisecond");
+            previous = id;
+        }
+        assertFalse(TimeOrderedIdGenerator.timestampOf(previous).isAfter(Instant.now().plusMillis(1)), "Borrowed milliseconds stay within one of the clock");
+        assertEquals(513, TimeOrderedIdGenerator.nodeOf(previous));
+        assertTrue(Duration.between(before, TimeOrderedIdGenerator.timestampOf(previous)).toSeconds() < 60);
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(1024));
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws InterruptedException {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(8 * 20_000, ids.size());
+    }
+
+    @Test
+    void shortLivedThreadsNeitherRepeatIdsNorRunAheadOfTheClock() throws InterruptedException {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(2);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        AtomicLong highest = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2000; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    long id = generator.nextId();
+                    ids.add(id);
+                    highest.accumulateAndGet(id, Math::max);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Instant end = Instant.now();
+        assertEquals(2000 * 100, ids.size());
+        assertFalse(TimeOrderedIdGenerator.timestampOf(highest.get()).isAfter(end.plusMillis(1)), "Ids are at most a millisecond ahead of the clock");
+    }
+
+    @Test
+    void seededGeneratorMovesPastRecoveredIds() {
+        TimeOrderedIdGenerator recovered = new TimeOrderedIdGenerator(3);
+        long ahead = new TimeOrderedIdGenerator(3).nextId() + (3_600_000L << (TimeOrderedIdGenerator.NODE_BITS + 12));
+        recovered.seed(ahead);
+        long id = recovered.nextId();
+        assertTrue(id > ahead, "Ids of a clock an hour ahead before the restart are not handed out again");
+        assertEquals(3, TimeOrderedIdGenerator.nodeOf(id));
+    }
+}